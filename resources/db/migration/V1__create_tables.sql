@@ -0,0 +1,71 @@
+-- Baseline schema for the VGB invoice system.
+-- Surrogate integer keys are used for joins; UUIDs are the external identifiers.
+
+CREATE TABLE IF NOT EXISTS Person (
+    personId    INT          NOT NULL AUTO_INCREMENT,
+    person_uuid VARCHAR(36)  NOT NULL,
+    first_name  VARCHAR(255) NOT NULL,
+    last_name   VARCHAR(255) NOT NULL,
+    phone       VARCHAR(255),
+    PRIMARY KEY (personId)
+);
+
+CREATE TABLE IF NOT EXISTS Email (
+    emailId       INT          NOT NULL AUTO_INCREMENT,
+    person_uuid   VARCHAR(36)  NOT NULL,
+    email_address VARCHAR(255) NOT NULL,
+    PRIMARY KEY (emailId)
+);
+
+CREATE TABLE IF NOT EXISTS Address (
+    addressId   INT          NOT NULL AUTO_INCREMENT,
+    street      VARCHAR(255) NOT NULL,
+    city        VARCHAR(255) NOT NULL,
+    state       VARCHAR(255) NOT NULL,
+    postal_code VARCHAR(20)  NOT NULL,
+    PRIMARY KEY (addressId)
+);
+
+CREATE TABLE IF NOT EXISTS Company (
+    companyId    INT          NOT NULL AUTO_INCREMENT,
+    company_uuid VARCHAR(36)  NOT NULL,
+    company_name VARCHAR(255) NOT NULL,
+    contactId    INT          NOT NULL,
+    addressId    INT          NOT NULL,
+    PRIMARY KEY (companyId)
+);
+
+CREATE TABLE IF NOT EXISTS Item (
+    itemId        INT           NOT NULL AUTO_INCREMENT,
+    item_uuid     VARCHAR(36)   NOT NULL,
+    type          CHAR(1)       NOT NULL,
+    name          VARCHAR(255)  NOT NULL,
+    model_no      VARCHAR(255),
+    retail_price  DECIMAL(12,2),
+    unit          VARCHAR(255),
+    unit_cost     DECIMAL(12,2),
+    contract_fee  DECIMAL(12,2),
+    servicer_uuid VARCHAR(36),
+    PRIMARY KEY (itemId)
+);
+
+CREATE TABLE IF NOT EXISTS Invoice (
+    invoiceId    INT         NOT NULL AUTO_INCREMENT,
+    invoice_uuid VARCHAR(36) NOT NULL,
+    companyId    INT         NOT NULL,
+    personId     INT         NOT NULL,
+    invoice_date DATE        NOT NULL,
+    PRIMARY KEY (invoiceId)
+);
+
+CREATE TABLE IF NOT EXISTS InvoiceItems (
+    invoiceItemId    INT         NOT NULL AUTO_INCREMENT,
+    invoiceId        INT         NOT NULL,
+    item_uuid        VARCHAR(36) NOT NULL,
+    purchase_type    CHAR(1)     NOT NULL,
+    quantity         INT,
+    lease_start_date DATE,
+    lease_end_date   DATE,
+    rental_hours     DOUBLE,
+    PRIMARY KEY (invoiceItemId)
+);
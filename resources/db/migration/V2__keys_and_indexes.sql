@@ -0,0 +1,33 @@
+-- Unique constraints, foreign keys and the secondary indexes used by
+-- DBReaderUtil joins and the InvoiceData UUID -> id lookups.
+
+ALTER TABLE Person ADD CONSTRAINT uq_person_uuid UNIQUE (person_uuid);
+ALTER TABLE Company ADD CONSTRAINT uq_company_uuid UNIQUE (company_uuid);
+ALTER TABLE Item ADD CONSTRAINT uq_item_uuid UNIQUE (item_uuid);
+ALTER TABLE Invoice ADD CONSTRAINT uq_invoice_uuid UNIQUE (invoice_uuid);
+ALTER TABLE Email ADD CONSTRAINT uq_email_person_address UNIQUE (person_uuid, email_address);
+
+CREATE INDEX ix_company_contact ON Company (contactId);
+CREATE INDEX ix_company_address ON Company (addressId);
+CREATE INDEX ix_item_servicer ON Item (servicer_uuid);
+CREATE INDEX ix_invoice_company ON Invoice (companyId);
+CREATE INDEX ix_invoice_person ON Invoice (personId);
+CREATE INDEX ix_invoiceitems_invoice ON InvoiceItems (invoiceId);
+CREATE INDEX ix_invoiceitems_item ON InvoiceItems (item_uuid);
+
+ALTER TABLE Email ADD CONSTRAINT fk_email_person
+    FOREIGN KEY (person_uuid) REFERENCES Person (person_uuid);
+ALTER TABLE Company ADD CONSTRAINT fk_company_contact
+    FOREIGN KEY (contactId) REFERENCES Person (personId);
+ALTER TABLE Company ADD CONSTRAINT fk_company_address
+    FOREIGN KEY (addressId) REFERENCES Address (addressId);
+ALTER TABLE Item ADD CONSTRAINT fk_item_servicer
+    FOREIGN KEY (servicer_uuid) REFERENCES Company (company_uuid);
+ALTER TABLE Invoice ADD CONSTRAINT fk_invoice_company
+    FOREIGN KEY (companyId) REFERENCES Company (companyId);
+ALTER TABLE Invoice ADD CONSTRAINT fk_invoice_person
+    FOREIGN KEY (personId) REFERENCES Person (personId);
+ALTER TABLE InvoiceItems ADD CONSTRAINT fk_invoiceitems_invoice
+    FOREIGN KEY (invoiceId) REFERENCES Invoice (invoiceId);
+ALTER TABLE InvoiceItems ADD CONSTRAINT fk_invoiceitems_item
+    FOREIGN KEY (item_uuid) REFERENCES Item (item_uuid);
@@ -0,0 +1,6 @@
+-- Composite indexes for DBReaderUtil.queryInvoices: equality on the filter
+-- column, then (invoice_date, invoice_uuid) for the range and keyset order.
+
+CREATE INDEX ix_invoice_company_date ON Invoice (companyId, invoice_date, invoice_uuid);
+CREATE INDEX ix_invoice_person_date ON Invoice (personId, invoice_date, invoice_uuid);
+CREATE INDEX ix_invoice_date ON Invoice (invoice_date, invoice_uuid);
@@ -0,0 +1,30 @@
+-- Invoice totals per company, salesperson and day, maintained by InvoiceData,
+-- BulkLoader and InvoiceItemIngester as invoices and line items are added
+-- (see SummaryTables). Amounts are in cents.
+
+CREATE TABLE IF NOT EXISTS CompanyTotals (
+    companyId      INT    NOT NULL,
+    invoice_count  INT    NOT NULL DEFAULT 0,
+    item_count     INT    NOT NULL DEFAULT 0,
+    subtotal_cents BIGINT NOT NULL DEFAULT 0,
+    tax_cents      BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (companyId)
+);
+
+CREATE TABLE IF NOT EXISTS SalespersonTotals (
+    personId       INT    NOT NULL,
+    invoice_count  INT    NOT NULL DEFAULT 0,
+    item_count     INT    NOT NULL DEFAULT 0,
+    subtotal_cents BIGINT NOT NULL DEFAULT 0,
+    tax_cents      BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (personId)
+);
+
+CREATE TABLE IF NOT EXISTS DailyTotals (
+    invoice_date   DATE   NOT NULL,
+    invoice_count  INT    NOT NULL DEFAULT 0,
+    item_count     INT    NOT NULL DEFAULT 0,
+    subtotal_cents BIGINT NOT NULL DEFAULT 0,
+    tax_cents      BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (invoice_date)
+);
@@ -0,0 +1,256 @@
+package com.vgb;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+
+/**
+ * BulkLoader resets the database and reloads it from the CSV data files using
+ * <code>LOAD DATA LOCAL INFILE</code>. Each table is rendered to an in-memory
+ * tab-separated stream and handed to the driver in a single statement, which
+ * is far cheaper than the row-at-a-time inserts in {@link InvoiceData}.
+ *
+ * Surrogate keys (personId, addressId, companyId, invoiceId) are assigned here
+ * so child tables can reference them without a lookup per row. This is only
+ * valid on freshly truncated tables.
+ *
+ * The summary tables (see {@link SummaryTables}) are filled from the same
+ * object graph in the same transaction.
+ *
+ * Backends without LOAD DATA (see {@link DatabaseBackend#supportsLoadData()})
+ * receive the same rows as one JDBC batch per table.
+ */
+public class BulkLoader {
+
+    /**
+     * Truncates all tables and bulk-loads the CSV files, printing the time
+     * spent in each phase.
+     */
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        InvoiceData.truncateDatabase();
+        printPhase("truncate", -1, start);
+
+        start = System.nanoTime();
+        Map<UUID, Person> persons = CSVReaderUtil.readPersons("data/Persons.csv");
+        Map<UUID, Company> companies = CSVReaderUtil.readCompanies("data/Companies.csv", persons);
+        Map<UUID, Item> items = CSVReaderUtil.readItems("data/Items.csv", companies);
+        Map<UUID, Invoice> invoices = CSVReaderUtil.loadInvoices("data/Invoices.csv", persons, companies);
+        CSVReaderUtil.readInvoiceItems("data/InvoiceItems.csv", invoices, items);
+        printPhase("parse csv", persons.size() + companies.size() + items.size() + invoices.size(), start);
+
+        load(persons, companies, items, invoices);
+        Metrics.dump();
+        JdbcTracer.printReport();
+    }
+
+    /**
+     * Loads the given object graph into empty tables in one transaction with
+     * foreign key and unique checks disabled.
+     *
+     * @param persons   persons to load (with emails)
+     * @param companies companies to load (with addresses)
+     * @param items     items to load
+     * @param invoices  invoices to load (with their line items)
+     * @return whether the load committed
+     */
+    public static boolean load(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                            Map<UUID, Item> items, Map<UUID, Invoice> invoices) {
+        Map<UUID, Integer> personIds = new HashMap<>();
+        Map<UUID, Integer> companyIds = new HashMap<>();
+        Map<UUID, Integer> invoiceIds = new HashMap<>();
+        boolean committed = false;
+
+        try (Connection conn = ConnectionFactory.getBulkConnection();
+             Statement stmt = conn.createStatement()) {
+            DatabaseBackend backend = ConnectionFactory.getBackend();
+            conn.setAutoCommit(false);
+            stmt.execute(backend.getDisableForeignKeys());
+            if (backend == DatabaseBackend.MYSQL) {
+                stmt.execute("SET UNIQUE_CHECKS = 0");
+            }
+            try {
+                TableRows person = new TableRows();
+                TableRows email = new TableRows();
+                for (Person p : persons.values()) {
+                    int id = personIds.size() + 1;
+                    personIds.put(p.getUuid(), id);
+                    person.row(id, p.getUuid(), p.getFirstName(), p.getLastName(), p.getPhone());
+                    for (String address : p.getEmails()) {
+                        email.row(p.getUuid(), address);
+                    }
+                }
+                loadTable(stmt, "Person", "(personId, person_uuid, first_name, last_name, phone)", person);
+                loadTable(stmt, "Email", "(person_uuid, email_address)", email);
+
+                TableRows address = new TableRows();
+                TableRows company = new TableRows();
+                for (Company c : companies.values()) {
+                    int id = companyIds.size() + 1;
+                    companyIds.put(c.getUuid(), id);
+                    // Each company owns exactly one address, so it shares the company's id
+                    Address a = c.getAddress();
+                    address.row(id, a.getStreet(), a.getCity(), a.getState(), a.getZip());
+                    company.row(id, c.getUuid(), c.getName(), personIds.get(c.getCustomer().getUuid()), id);
+                }
+                loadTable(stmt, "Address", "(addressId, street, city, state, postal_code)", address);
+                loadTable(stmt, "Company", "(companyId, company_uuid, company_name, contactId, addressId)", company);
+
+                TableRows item = new TableRows();
+                for (Item i : items.values()) {
+                    if (i instanceof Equipment e) {
+                        item.row(i.getUuid(), "E", i.getName(), e.getModelNumber(), e.getRetailPrice(), null, null, null, null);
+                    } else if (i instanceof Material m) {
+                        item.row(i.getUuid(), "M", i.getName(), null, null, m.getUnit(), m.getCostPerUnit(), null, null);
+                    } else if (i instanceof Contract c) {
+                        item.row(i.getUuid(), "C", i.getName(), null, null, null, null, c.getContractAmount(),
+                                c.getCompany() == null ? null : c.getCompany().getUuid());
+                    }
+                }
+                loadTable(stmt, "Item",
+                        "(item_uuid, type, name, model_no, retail_price, unit, unit_cost, contract_fee, servicer_uuid)", item);
+
+                TableRows invoice = new TableRows();
+                TableRows invoiceItem = new TableRows();
+                SummaryTables.Delta totals = new SummaryTables.Delta();
+                for (Invoice inv : invoices.values()) {
+                    int id = invoiceIds.size() + 1;
+                    invoiceIds.put(inv.getInvoiceId(), id);
+                    SummaryTables.InvoiceKey key = new SummaryTables.InvoiceKey(id,
+                            companyIds.get(inv.getCompany().getUuid()), personIds.get(inv.getSalesperson().getUuid()),
+                            inv.getDate());
+                    invoice.row(id, inv.getInvoiceId(), key.companyId, key.personId, inv.getDate());
+                    totals.invoice(key);
+                    for (InvoiceItem ii : inv.getItems()) {
+                        invoiceItem.row(InvoiceItemIngester.row(id, ii));
+                        totals.item(key, ii);
+                    }
+                }
+                loadTable(stmt, "Invoice", "(invoiceId, invoice_uuid, companyId, personId, invoice_date)", invoice);
+                loadTable(stmt, "InvoiceItems", InvoiceItemIngester.COLUMNS, invoiceItem);
+
+                long start = System.nanoTime();
+                totals.apply(conn);
+                printPhase("summary tables", -1, start);
+
+                start = System.nanoTime();
+                conn.commit();
+                committed = true;
+                printPhase("commit", -1, start);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                if (backend == DatabaseBackend.MYSQL) {
+                    stmt.execute("SET UNIQUE_CHECKS = 1");
+                }
+                stmt.execute(backend.getEnableForeignKeys());
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        ReferenceDataCache.invalidateAll();
+        return committed;
+    }
+
+    /**
+     * Streams one table's rows to the server with LOAD DATA LOCAL INFILE, or
+     * as a single insert batch when the backend has no LOAD DATA.
+     */
+    private static void loadTable(Statement stmt, String table, String columns, TableRows data) throws SQLException {
+        long start = System.nanoTime();
+        if (ConnectionFactory.getBackend().supportsLoadData()) {
+            loadData(stmt, table, columns, data);
+        } else if (!data.rows.isEmpty()) {
+            int width = data.rows.get(0).length;
+            String sql = "INSERT INTO " + table + " " + columns
+                    + " VALUES (" + "?, ".repeat(width - 1) + "?)";
+            try (PreparedStatement ps = stmt.getConnection().prepareStatement(sql)) {
+                for (Object[] row : data.rows) {
+                    for (int i = 0; i < width; i++) {
+                        Object field = row[i];
+                        ps.setObject(i + 1, field instanceof UUID ? field.toString() : field);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        printPhase("load " + table, data.rows.size(), start);
+    }
+
+    /**
+     * Streams the rows to the server in one LOAD DATA LOCAL INFILE statement.
+     * The statement's connection must come from
+     * {@link ConnectionFactory#getBulkConnection()}.
+     */
+    static void loadData(Statement stmt, String table, String columns, TableRows data) throws SQLException {
+        stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(data.toTsv()));
+        stmt.execute("LOAD DATA LOCAL INFILE 'stream' INTO TABLE " + table
+                + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n' " + columns);
+    }
+
+    private static void printPhase(String phase, int rows, long startNanos) {
+        String metric = "bulk." + phase.replace(' ', '.');
+        Metrics.record(metric, startNanos);
+        if (rows >= 0) {
+            Metrics.add(metric + ".rows", rows);
+        }
+        double millis = (System.nanoTime() - startNanos) / 1_000_000.0;
+        if (rows < 0) {
+            System.out.printf("%-20s %10s %10.2f ms\n", phase, "", millis);
+        } else {
+            System.out.printf("%-20s %10d %10.2f ms\n", phase, rows, millis);
+        }
+    }
+
+    /**
+     * Accumulates the rows of one table. For LOAD DATA they are rendered in
+     * MySQL's default text format: tab-separated fields, newline-terminated
+     * rows, backslash escapes and \N for NULL.
+     */
+    static class TableRows {
+        final List<Object[]> rows = new ArrayList<>();
+
+        void row(Object... fields) {
+            rows.add(fields);
+        }
+
+        byte[] toTsv() {
+            StringBuilder sb = new StringBuilder();
+            for (Object[] fields : rows) {
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) sb.append('\t');
+                    Object field = fields[i];
+                    if (field == null) {
+                        sb.append("\\N");
+                        continue;
+                    }
+                    String value = field.toString();
+                    for (int j = 0; j < value.length(); j++) {
+                        char ch = value.charAt(j);
+                        switch (ch) {
+                            case '\\': sb.append("\\\\"); break;
+                            case '\t': sb.append("\\t"); break;
+                            case '\n': sb.append("\\n"); break;
+                            case '\r': sb.append("\\r"); break;
+                            default: sb.append(ch);
+                        }
+                    }
+                }
+                sb.append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads the Persons, Companies, Items, Invoices and InvoiceItems CSV files of
+ * one directory with {@link CSVReaderUtil}. Every call re-reads its file.
+ *
+ * If the directory has been split into {@link MonthPartitions}, invoices and
+ * line items are read from the partitions instead, and a date range read
+ * skips the months outside the range without opening them. Partitions left
+ * behind by a change to Invoices.csv or InvoiceItems.csv are not used; the
+ * flat files are read, with a warning, until they are partitioned again. The
+ * <code>csv.partitions.read</code> and <code>csv.partitions.pruned</code>
+ * metrics count both.
+ */
+public class CSVInvoiceRepository implements InvoiceRepository {
+
+    private final String dataDir;
+    private boolean warnedStale;
+
+    public CSVInvoiceRepository(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    @Override
+    public Map<UUID, Person> readPersons() {
+        return CSVReaderUtil.readPersons(dataDir + "/Persons.csv");
+    }
+
+    @Override
+    public Map<UUID, Company> readCompanies(Map<UUID, Person> persons) {
+        return CSVReaderUtil.readCompanies(dataDir + "/Companies.csv", persons);
+    }
+
+    @Override
+    public Map<UUID, Item> readItems(Map<UUID, Company> companies) {
+        return CSVReaderUtil.readItems(dataDir + "/Items.csv", companies);
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items) {
+        return readInvoices(persons, companies, items, null, null);
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items, LocalDate from, LocalDate to) {
+        if (!MonthPartitions.isCurrent(dataDir)) {
+            if (MonthPartitions.exists(dataDir) && !warnedStale) {
+                warnedStale = true;
+                System.err.println("Month partitions of " + dataDir + " are out of date; reading the flat files."
+                        + " Run MonthPartitions to rewrite them.");
+            }
+            Map<UUID, Invoice> invoices = CSVReaderUtil.loadInvoices(dataDir + "/Invoices.csv", persons, companies,
+                    from, to);
+            CSVReaderUtil.readInvoiceItems(dataDir + "/InvoiceItems.csv", invoices, items, from == null && to == null);
+            return invoices;
+        }
+
+        List<YearMonth> months = MonthPartitions.months(dataDir, from, to);
+        Metrics.add("csv.partitions.read", months.size());
+        Metrics.add("csv.partitions.pruned", MonthPartitions.months(dataDir).size() - months.size());
+        Map<UUID, Invoice> invoices = new HashMap<>();
+        for (YearMonth month : months) {
+            Map<UUID, Invoice> partition = CSVReaderUtil.loadInvoices(
+                    MonthPartitions.path(dataDir, month, MonthPartitions.INVOICES), persons, companies, from, to);
+            CSVReaderUtil.readInvoiceItems(MonthPartitions.path(dataDir, month, MonthPartitions.INVOICE_ITEMS),
+                    partition, items, from == null && to == null);
+            invoices.putAll(partition);
+        }
+        return invoices;
+    }
+
+    @Override
+    public String toString() {
+        return "csv";
+    }
+}
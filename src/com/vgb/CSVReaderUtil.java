@@ -3,7 +3,9 @@ package com.vgb;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -15,6 +17,12 @@ import java.util.ArrayList;
  * them into in-memory Java objects (Person, Company, Item, Invoice, InvoiceItem).
  *
  * This class helps load the initial data into the system before inserting into a database.
+ *
+ * Rows are validated as they are parsed, in the same pass: a row that is
+ * short, malformed or refers to a record that was not loaded is skipped and
+ * sent with the reason to the reject file (see {@link CsvRejects}), and
+ * counted in <code>csv.&lt;reader&gt;.rejected</code>. Blank lines are
+ * ignored.
  */
 public class CSVReaderUtil {
 
@@ -26,29 +34,47 @@ public class CSVReaderUtil {
      */
     public static Map<UUID, Person> readPersons(String filePath) {
         Map<UUID, Person> persons = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("csv", "readPersons");
+        long lineNumber = 1;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             scanner.nextLine();  // Skip header
             while (scanner.hasNextLine()) {
-                String[] tokens = scanner.nextLine().trim().split(",", -1);
-                if (tokens.length < 4 || tokens[0].isEmpty()) continue;
-
-                UUID uuid = UUID.fromString(tokens[0]);
-                String firstName = tokens[1];
-                String lastName = tokens[2];
-                String phone = tokens[3];
-
-                List<String> emails = new ArrayList<>();
-                for (int i = 4; i < tokens.length; i++) {
-                    if (!tokens[i].isEmpty()) {
-                        emails.add(tokens[i]);
-                    }
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split(",", -1);
+                if (tokens.length < 4) {
+                    reject(filePath, "readPersons", lineNumber, "expected at least 4 columns", line);
+                    continue;
                 }
 
-                persons.put(uuid, new Person(uuid, firstName, lastName, phone, emails));
+                try {
+                    UUID uuid = UUID.fromString(tokens[0]);
+                    String firstName = tokens[1];
+                    String lastName = tokens[2];
+                    String phone = tokens[3];
+
+                    List<String> emails = new ArrayList<>();
+                    for (int i = 4; i < tokens.length; i++) {
+                        if (!tokens[i].isEmpty()) {
+                            emails.add(tokens[i]);
+                        }
+                    }
+
+                    persons.put(uuid, new Person(uuid, firstName, lastName, phone, emails));
+                } catch (IllegalArgumentException e) {
+                    reject(filePath, "readPersons", lineNumber, "malformed: " + e.getMessage(), line);
+                }
             }
         } catch (FileNotFoundException e) {
             System.err.println("Persons file not found: " + e.getMessage());
+        } finally {
+            Metrics.record("csv.readPersons", start);
+            event.end(persons.size(), new File(filePath).length());
+            CsvRejects.flush();
         }
+        Metrics.add("csv.readPersons.rows", persons.size());
         return persons;
     }
 
@@ -61,31 +87,50 @@ public class CSVReaderUtil {
      */
     public static Map<UUID, Company> readCompanies(String filePath, Map<UUID, Person> persons) {
         Map<UUID, Company> companies = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("csv", "readCompanies");
+        long lineNumber = 1;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             scanner.nextLine();  // Skip header
             while (scanner.hasNextLine()) {
-                String[] tokens = scanner.nextLine().trim().split(",", -1);
-                if (tokens.length < 7 || tokens[0].isEmpty()) continue;
-
-                UUID uuid = UUID.fromString(tokens[0]);
-                UUID contactId = UUID.fromString(tokens[1]);
-                String name = tokens[2];
-                String street = tokens[3];
-                String city = tokens[4];
-                String state = tokens[5];
-                String zip = tokens[6];
-
-                Person contact = persons.get(contactId);
-                if (contact == null) {
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split(",", -1);
+                if (tokens.length < 7) {
+                    reject(filePath, "readCompanies", lineNumber, "expected 7 columns", line);
                     continue;
                 }
 
-                Address address = new Address(street, city, state, zip);
-                companies.put(uuid, new Company(uuid, contact, name, address));
+                try {
+                    UUID uuid = UUID.fromString(tokens[0]);
+                    UUID contactId = UUID.fromString(tokens[1]);
+                    String name = tokens[2];
+                    String street = tokens[3];
+                    String city = tokens[4];
+                    String state = tokens[5];
+                    String zip = tokens[6];
+
+                    Person contact = persons.get(contactId);
+                    if (contact == null) {
+                        reject(filePath, "readCompanies", lineNumber, "unknown contact " + contactId, line);
+                        continue;
+                    }
+
+                    Address address = new Address(street, city, state, zip);
+                    companies.put(uuid, new Company(uuid, contact, name, address));
+                } catch (IllegalArgumentException e) {
+                    reject(filePath, "readCompanies", lineNumber, "malformed: " + e.getMessage(), line);
+                }
             }
         } catch (FileNotFoundException e) {
             System.err.println("Companies file not found: " + e.getMessage());
+        } finally {
+            Metrics.record("csv.readCompanies", start);
+            event.end(companies.size(), new File(filePath).length());
+            CsvRejects.flush();
         }
+        Metrics.add("csv.readCompanies.rows", companies.size());
         return companies;
     }
 
@@ -98,46 +143,72 @@ public class CSVReaderUtil {
      */
     public static Map<UUID, Item> readItems(String filePath, Map<UUID, Company> companies) {
         Map<UUID, Item> items = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("csv", "readItems");
+        long lineNumber = 1;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             scanner.nextLine();  // Skip header
             while (scanner.hasNextLine()) {
-                String[] tokens = scanner.nextLine().trim().split(",", -1);
-                if (tokens.length < 4 || tokens[0].isEmpty()) continue;
-
-                UUID uuid = UUID.fromString(tokens[0]);
-                char type = tokens[1].charAt(0);
-                String name = tokens[2];
-
-                switch (type) {
-                    case 'E': {
-                        String modelNumber = tokens[3];
-                        double retailPrice = Double.parseDouble(tokens[4]);
-                        items.put(uuid, new Equipment(uuid, name, modelNumber, retailPrice));
-                        break;
-                    }
-                    case 'M': {
-                        String unit = tokens[3];
-                        double costPerUnit = Double.parseDouble(tokens[4]);
-                        items.put(uuid, new Material(uuid, name, unit, costPerUnit));
-                        break;
-                    }
-                    case 'C': {
-                        UUID companyUuid = UUID.fromString(tokens[3]);
-                        Company company = companies.get(companyUuid);
-                        if (company == null) {
-                            continue;
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split(",", -1);
+                if (tokens.length < 4) {
+                    reject(filePath, "readItems", lineNumber, "expected at least 4 columns", line);
+                    continue;
+                }
+
+                try {
+                    UUID uuid = UUID.fromString(tokens[0]);
+                    String type = tokens[1];
+                    String name = tokens[2];
+
+                    Item item;
+                    switch (type) {
+                        case "E":
+                            if (tokens.length < 5) {
+                                reject(filePath, "readItems", lineNumber, "expected a retail price", line);
+                                continue;
+                            }
+                            item = RowMappers.item(uuid, type, name, tokens[3], Double.parseDouble(tokens[4]), null, 0, null, 0);
+                            break;
+                        case "M":
+                            if (tokens.length < 5) {
+                                reject(filePath, "readItems", lineNumber, "expected a unit price", line);
+                                continue;
+                            }
+                            item = RowMappers.item(uuid, type, name, null, 0, tokens[3], Double.parseDouble(tokens[4]), null, 0);
+                            break;
+                        case "C": {
+                            Company company = companies.get(UUID.fromString(tokens[3]));
+                            if (company == null) {
+                                reject(filePath, "readItems", lineNumber, "unknown servicer " + tokens[3], line);
+                                continue;
+                            }
+                            // The fee is set by the invoice items that bill the contract,
+                            // unless the row gives one in a fifth column
+                            double contractAmount = tokens.length > 4 && !tokens[4].isEmpty()
+                                    ? Double.parseDouble(tokens[4]) : 0;
+                            item = RowMappers.item(uuid, type, name, null, 0, null, 0, company, contractAmount);
+                            break;
                         }
-                        double defaultContractAmount = 10500.0;
-                        items.put(uuid, new Contract(uuid, name, company, defaultContractAmount));
-                        break;
+                        default:
+                            reject(filePath, "readItems", lineNumber, "unknown item type " + type, line);
+                            continue;
                     }
-                    default:
-                        // Unknown item type, skip
+                    items.put(uuid, item);
+                } catch (IllegalArgumentException e) {
+                    reject(filePath, "readItems", lineNumber, "malformed: " + e.getMessage(), line);
                 }
             }
         } catch (FileNotFoundException e) {
             System.err.println("Items file not found: " + e.getMessage());
+        } finally {
+            Metrics.record("csv.readItems", start);
+            event.end(items.size(), new File(filePath).length());
+            CsvRejects.flush();
         }
+        Metrics.add("csv.readItems.rows", items.size());
         return items;
     }
 
@@ -149,57 +220,92 @@ public class CSVReaderUtil {
      * @param items    Map of loaded Item objects.
      */
     public static void readInvoiceItems(String filePath, Map<UUID, Invoice> invoices, Map<UUID, Item> items) {
+        readInvoiceItems(filePath, invoices, items, true);
+    }
+
+    /**
+     * Reads InvoiceItem records and attaches them to the corresponding Invoices.
+     *
+     * @param filePath    Path to the InvoiceItems CSV file.
+     * @param invoices    Map of loaded Invoice objects.
+     * @param items       Map of loaded Item objects.
+     * @param allInvoices Whether <code>invoices</code> holds every invoice of
+     *                    the data set; if not (e.g. a date range was read),
+     *                    rows of other invoices are skipped without a reject.
+     */
+    public static void readInvoiceItems(String filePath, Map<UUID, Invoice> invoices, Map<UUID, Item> items,
+                                        boolean allInvoices) {
+        long rows = 0;
+        // Collected per invoice first, so each invoice's item list is copied once
+        Map<Invoice, List<InvoiceItem>> added = new LinkedHashMap<>();
+        long startNanos = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("csv", "readInvoiceItems");
+        long lineNumber = 1;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             scanner.nextLine();  // Skip header
             while (scanner.hasNextLine()) {
-                String[] tokens = scanner.nextLine().trim().split(",", -1);
-                if (tokens.length < 3 || tokens[0].isEmpty() || tokens[1].isEmpty()) continue;
-
-                UUID invoiceId = UUID.fromString(tokens[0]);
-                UUID itemId = UUID.fromString(tokens[1]);
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) continue;
 
-                Invoice invoice = invoices.get(invoiceId);
-                Item item = items.get(itemId);
-                if (invoice == null || item == null) {
-                    continue;
-                }
-
-                InvoiceItem invoiceItem = new InvoiceItem(invoiceId, item);
-
-                if (item instanceof Material) {
-                    int quantity = Integer.parseInt(tokens[2]);
-                    invoiceItem.setQuantity(quantity);
+                try {
+                    String[] tokens = line.split(",", -1);
+                    String problem = checkInvoiceItem(tokens, items);
+                    if (problem != null) {
+                        reject(filePath, "readInvoiceItems", lineNumber, problem, line);
+                        continue;
+                    }
 
-                } else if (item instanceof Contract contract) {
-                    double amount = Double.parseDouble(tokens[2]);
-                    invoiceItem.setContractAmount(amount);
-                    contract.setContractAmount(amount);
+                    UUID invoiceId = UUID.fromString(tokens[0]);
+                    Item item = items.get(UUID.fromString(tokens[1]));
+                    Invoice invoice = invoices.get(invoiceId);
+                    if (invoice == null) {
+                        if (allInvoices) {
+                            reject(filePath, "readInvoiceItems", lineNumber, "unknown invoice " + invoiceId, line);
+                        }
+                        continue;
+                    }
 
-                } else if (item instanceof Equipment equipment) {
-                    String usageType = tokens[2];
+                    // The third column is the quantity, the contract amount or the
+                    // equipment purchase type, followed by lease dates or rental hours
+                    InvoiceItem invoiceItem;
+                    if (item instanceof Material) {
+                        invoiceItem = RowMappers.invoiceItem(invoiceId, item, "P", Integer.parseInt(tokens[2]), null, null, 0);
 
-                    if ("L".equalsIgnoreCase(usageType)) {
-                        LocalDate start = LocalDate.parse(tokens[3]);
-                        LocalDate end = LocalDate.parse(tokens[4]);
-                        Lease lease = new Lease(itemId, equipment.getName(), equipment.getModelNumber(), equipment.getRetailPrice(), start, end);
-                        invoiceItem = new InvoiceItem(invoiceId, lease);
-                        invoiceItem.setLeaseDates(start, end);
+                    } else if (item instanceof Contract contract) {
+                        double amount = Double.parseDouble(tokens[2]);
+                        invoiceItem = RowMappers.invoiceItem(invoiceId, item, "P", 0, null, null, 0);
+                        invoiceItem.setContractAmount(amount);
+                        contract.setContractAmount(amount);
 
-                    } else if ("R".equalsIgnoreCase(usageType)) {
-                        double hours = Double.parseDouble(tokens[3]);
-                        Rental rental = new Rental(itemId, equipment.getName(), equipment.getModelNumber(), equipment.getRetailPrice(), hours);
-                        invoiceItem = new InvoiceItem(invoiceId, rental);
-                        invoiceItem.setRentalHours(hours);
+                    } else {
+                        String usageType = tokens[2];
+                        LocalDate start = null, end = null;
+                        double hours = 0;
+                        if ("L".equalsIgnoreCase(usageType)) {
+                            start = LocalDate.parse(tokens[3]);
+                            end = LocalDate.parse(tokens[4]);
+                        } else if ("R".equalsIgnoreCase(usageType)) {
+                            hours = Double.parseDouble(tokens[3]);
+                        }
+                        invoiceItem = RowMappers.invoiceItem(invoiceId, item, usageType, 0, start, end, hours);
                     }
-                }
 
-                if (invoiceItem != null) {
-                    invoice.addItem(invoiceItem);
+                    added.computeIfAbsent(invoice, k -> new ArrayList<>()).add(invoiceItem);
+                    rows++;
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    reject(filePath, "readInvoiceItems", lineNumber, "malformed: " + e.getMessage(), line);
                 }
             }
+            added.forEach(Invoice::addItems);
         } catch (FileNotFoundException e) {
             System.err.println("InvoiceItems file not found: " + e.getMessage());
+        } finally {
+            Metrics.record("csv.readInvoiceItems", startNanos);
+            event.end(rows, new File(filePath).length());
+            CsvRejects.flush();
         }
+        Metrics.add("csv.readInvoiceItems.rows", rows);
     }
 
     /**
@@ -211,27 +317,105 @@ public class CSVReaderUtil {
      * @return Map of UUID to Invoice objects.
      */
     public static Map<UUID, Invoice> loadInvoices(String filePath, Map<UUID, Person> persons, Map<UUID, Company> companies) {
+        return loadInvoices(filePath, persons, companies, null, null);
+    }
+
+    /**
+     * Reads the Invoice records dated within a range from the given CSV file.
+     *
+     * @param filePath  Path to the Invoices CSV file.
+     * @param persons   Map of loaded Person objects for linking salespersons.
+     * @param companies Map of loaded Company objects for linking customers.
+     * @param from      First date included, or null for no lower bound.
+     * @param to        Last date included, or null for no upper bound.
+     * @return Map of UUID to Invoice objects.
+     */
+    public static Map<UUID, Invoice> loadInvoices(String filePath, Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                                  LocalDate from, LocalDate to) {
         Map<UUID, Invoice> invoices = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("csv", "loadInvoices");
+        long lineNumber = 1;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             scanner.nextLine();  // Skip header
             while (scanner.hasNextLine()) {
-                String[] tokens = scanner.nextLine().trim().split(",", -1);
-                if (tokens.length < 4 || tokens[0].isEmpty()) continue;
-
-                UUID invoiceId = UUID.fromString(tokens[0]);
-                UUID customerId = UUID.fromString(tokens[1]);
-                UUID salespersonId = UUID.fromString(tokens[2]);
-                LocalDate date = LocalDate.parse(tokens[3]);
-
-                Company customer = companies.get(customerId);
-                Person salesperson = persons.get(salespersonId);
-                if (customer != null && salesperson != null) {
-                    invoices.put(invoiceId, new Invoice(invoiceId, customer, salesperson, date));
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] tokens = line.split(",", -1);
+                if (tokens.length < 4) {
+                    reject(filePath, "loadInvoices", lineNumber, "expected 4 columns", line);
+                    continue;
+                }
+
+                try {
+                    UUID invoiceId = UUID.fromString(tokens[0]);
+                    UUID customerId = UUID.fromString(tokens[1]);
+                    UUID salespersonId = UUID.fromString(tokens[2]);
+                    LocalDate date = LocalDate.parse(tokens[3]);
+                    if ((from != null && date.isBefore(from)) || (to != null && date.isAfter(to))) {
+                        continue;
+                    }
+
+                    Company customer = companies.get(customerId);
+                    Person salesperson = persons.get(salespersonId);
+                    if (customer == null) {
+                        reject(filePath, "loadInvoices", lineNumber, "unknown customer " + customerId, line);
+                    } else if (salesperson == null) {
+                        reject(filePath, "loadInvoices", lineNumber, "unknown salesperson " + salespersonId, line);
+                    } else {
+                        invoices.put(invoiceId, new Invoice(invoiceId, customer, salesperson, date));
+                    }
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    reject(filePath, "loadInvoices", lineNumber, "malformed: " + e.getMessage(), line);
                 }
             }
         } catch (FileNotFoundException e) {
             System.err.println("Invoices file not found: " + e.getMessage());
+        } finally {
+            Metrics.record("csv.loadInvoices", start);
+            event.end(invoices.size(), new File(filePath).length());
+            CsvRejects.flush();
         }
+        Metrics.add("csv.loadInvoices.rows", invoices.size());
         return invoices;
     }
+
+    /**
+     * Checks the columns of an InvoiceItems row that can be checked without
+     * the invoices: the column count for the item's kind and that the item
+     * exists. Shared with {@link CsvImporter}, which streams the rows without
+     * loading invoices.
+     *
+     * @return why the row is rejected, or null if it passes
+     */
+    static String checkInvoiceItem(String[] tokens, Map<UUID, Item> items) {
+        if (tokens.length < 3) {
+            return "expected at least 3 columns";
+        }
+        UUID itemId = UUID.fromString(tokens[1]);
+        Item item = items.get(itemId);
+        if (item == null) {
+            return "unknown item " + itemId;
+        }
+        if (item instanceof Material || item instanceof Contract) {
+            return null;
+        }
+        String usageType = tokens[2];
+        if ("L".equalsIgnoreCase(usageType)) {
+            return tokens.length < 5 ? "expected lease start and end dates" : null;
+        } else if ("R".equalsIgnoreCase(usageType)) {
+            return tokens.length < 4 ? "expected rental hours" : null;
+        }
+        return "P".equalsIgnoreCase(usageType) ? null : "unknown equipment usage " + usageType;
+    }
+
+    /**
+     * Sends a row that failed validation to the reject file and counts it
+     * against the reader.
+     */
+    private static void reject(String filePath, String reader, long lineNumber, String reason, String line) {
+        Metrics.increment("csv." + reader + ".rejected");
+        CsvRejects.reject(filePath, "line " + lineNumber, reason, line);
+    }
 }
@@ -0,0 +1,116 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decorator that remembers the last result of each read, so repeated report
+ * runs in one process hit the underlying files or database once.
+ *
+ * A cached result is only reused when the read is called with the same map
+ * instances it was built from (normally the maps this repository returned),
+ * so graphs from different sources are never mixed. Call {@link #invalidate()}
+ * after the underlying data changes. Hits and misses are counted in the
+ * <code>repository.cache.hits</code> and <code>repository.cache.misses</code>
+ * metrics.
+ */
+public class CachingInvoiceRepository implements InvoiceRepository {
+
+    private final InvoiceRepository delegate;
+
+    private Map<UUID, Person> persons;
+    private Map<UUID, Company> companies;
+    private Map<UUID, Person> companiesFrom;
+    private Map<UUID, Item> items;
+    private Map<UUID, Company> itemsFrom;
+    private Map<UUID, Invoice> invoices;
+    private Object[] invoicesFrom;
+
+    public CachingInvoiceRepository(InvoiceRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized Map<UUID, Person> readPersons() {
+        if (hit(persons != null)) {
+            return persons;
+        }
+        persons = delegate.readPersons();
+        return persons;
+    }
+
+    @Override
+    public synchronized Map<UUID, Company> readCompanies(Map<UUID, Person> persons) {
+        if (hit(companies != null && companiesFrom == persons)) {
+            return companies;
+        }
+        companies = delegate.readCompanies(persons);
+        companiesFrom = persons;
+        return companies;
+    }
+
+    @Override
+    public synchronized Map<UUID, Item> readItems(Map<UUID, Company> companies) {
+        if (hit(items != null && itemsFrom == companies)) {
+            return items;
+        }
+        items = delegate.readItems(companies);
+        itemsFrom = companies;
+        return items;
+    }
+
+    @Override
+    public synchronized Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                                        Map<UUID, Item> items) {
+        if (hit(invoices != null && invoicesFrom[0] == persons && invoicesFrom[1] == companies
+                && invoicesFrom[2] == items)) {
+            return invoices;
+        }
+        invoices = delegate.readInvoices(persons, companies, items);
+        invoicesFrom = new Object[] {persons, companies, items};
+        return invoices;
+    }
+
+    /**
+     * Not cached: passed straight to the underlying repository, which only
+     * reads the requested range.
+     */
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items, LocalDate from, LocalDate to) {
+        return delegate.readInvoices(persons, companies, items, from, to);
+    }
+
+    /**
+     * Not cached: passed straight to the underlying repository.
+     */
+    @Override
+    public List<CompanySummary> readCompanySummaries(Map<UUID, Company> companies, Map<UUID, Invoice> invoices) {
+        return delegate.readCompanySummaries(companies, invoices);
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public synchronized void invalidate() {
+        persons = null;
+        companies = null;
+        companiesFrom = null;
+        items = null;
+        itemsFrom = null;
+        invoices = null;
+        invoicesFrom = null;
+    }
+
+    private static boolean hit(boolean hit) {
+        Metrics.increment(hit ? "repository.cache.hits" : "repository.cache.misses");
+        return hit;
+    }
+
+    @Override
+    public String toString() {
+        return "cached " + delegate;
+    }
+}
@@ -0,0 +1,71 @@
+package com.vgb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Number of invoices and their grand total for one company.
+ */
+public class CompanySummary {
+
+    /** Smallest total first, ties broken by company name. */
+    public static final Comparator<CompanySummary> BY_TOTAL = Comparator
+            .comparingLong(CompanySummary::getTotalCents)
+            .thenComparing(s -> s.getCompany().getName());
+
+    /** Largest total first, ties broken by company name. */
+    public static final Comparator<CompanySummary> BY_TOTAL_DESC = Comparator
+            .comparingLong(CompanySummary::getTotalCents).reversed()
+            .thenComparing(s -> s.getCompany().getName());
+
+    private final Company company;
+    private int numInvoices;
+    private long totalCents;
+
+    public CompanySummary(Company company, int numInvoices, long totalCents) {
+        this.company = company;
+        this.numInvoices = numInvoices;
+        this.totalCents = totalCents;
+    }
+
+    /**
+     * Summarizes priced invoices per company in one pass. Every company in
+     * <code>companies</code> gets a summary, including ones with no invoices.
+     */
+    public static List<CompanySummary> summarize(Collection<PricedInvoice> invoices, Collection<Company> companies) {
+        Map<UUID, CompanySummary> summaries = new LinkedHashMap<>();
+        for (Company company : companies) {
+            summaries.put(company.getUuid(), new CompanySummary(company, 0, 0));
+        }
+        for (PricedInvoice priced : invoices) {
+            Company company = priced.getInvoice().getCompany();
+            CompanySummary summary = summaries.get(company.getUuid());
+            if (summary != null) {
+                summary.numInvoices++;
+                summary.totalCents += priced.getTotalCents();
+            }
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    public Company getCompany() {
+        return company;
+    }
+
+    public int getNumInvoices() {
+        return numInvoices;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public double getTotalAmount() {
+        return PricedInvoice.toDollars(totalCents);
+    }
+}
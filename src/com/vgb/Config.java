@@ -0,0 +1,61 @@
+package com.vgb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Application settings. Values are read from <code>resources/db.properties</code>
+ * when present and can be overridden by system properties of the same name
+ * (all keys start with <code>vgb.</code>).
+ */
+public class Config {
+
+    static final String CONFIG_FILE = "resources/db.properties";
+
+    private static final Properties SETTINGS = load();
+
+    /**
+     * @return the setting, or <code>defaultValue</code> if it is not set
+     */
+    public static String get(String name, String defaultValue) {
+        String value = SETTINGS.getProperty(name, defaultValue);
+        return value == null ? null : value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, Integer.toString(defaultValue)));
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        return Long.parseLong(get(name, Long.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(get(name, Boolean.toString(defaultValue)));
+    }
+
+    /**
+     * Reads the optional config file, then lets <code>vgb.*</code> system properties override it.
+     */
+    private static Properties load() {
+        Properties props = new Properties();
+        Path file = Paths.get(CONFIG_FILE);
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file)) {
+                props.load(in);
+            } catch (IOException e) {
+                System.err.println("Error reading " + CONFIG_FILE + ": " + e.getMessage());
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("vgb.")) {
+                props.setProperty(name, System.getProperty(name));
+            }
+        }
+        return props;
+    }
+}
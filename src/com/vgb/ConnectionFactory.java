@@ -3,18 +3,53 @@ package com.vgb;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 /**
- * Factory class for establishing and closing MySQL database connections.
+ * Factory class for establishing and closing database connections.
  * Uses static methods to simplify JDBC access.
  *
+ * The backend and connection settings come from {@link Config}:
+ * <ul>
+ * <li><code>vgb.db.backend</code> - <code>mysql</code> (default) or <code>h2</code></li>
+ * <li><code>vgb.db.url</code>, <code>vgb.db.user</code>, <code>vgb.db.password</code> -
+ * default to the backend's own defaults</li>
+ * <li><code>vgb.db.migrate</code> - whether to apply schema migrations on the
+ * first connection; defaults to <code>true</code> on H2 and <code>false</code>
+ * on MySQL, whose schema is normally migrated deliberately, not by whichever
+ * process connects first</li>
+ * <li><code>vgb.db.useServerPrepStmts</code>, <code>vgb.db.cachePrepStmts</code>,
+ * <code>vgb.db.prepStmtCacheSize</code>, <code>vgb.db.prepStmtCacheSqlLimit</code> -
+ * Connector/J statement caching (MySQL only, all on by default)</li>
+ * </ul>
+ *
  * @author Shelton
  */
 public class ConnectionFactory {
 
-    private static final String URL = "jdbc:mysql://nuros.unl.edu/sbumhe2";
-    private static final String USER = "sbumhe2";
-    private static final String PASS = "Uuxoo9Yeikoh";
+    private static final DatabaseBackend BACKEND =
+            DatabaseBackend.valueOf(Config.get("vgb.db.backend", "mysql").toUpperCase());
+    private static final String URL = Config.get("vgb.db.url", BACKEND.getDefaultUrl());
+    private static final String USER = Config.get("vgb.db.user", BACKEND.getDefaultUser());
+    private static final String PASS = Config.get("vgb.db.password", BACKEND.getDefaultPassword());
+
+    // Schema migrations are attempted at most once per JVM, on the first connection
+    private static volatile boolean migrated =
+            !Config.getBoolean("vgb.db.migrate", BACKEND == DatabaseBackend.H2);
+
+    /**
+     * @return the database engine connections are opened against
+     */
+    public static DatabaseBackend getBackend() {
+        return BACKEND;
+    }
+
+    /**
+     * @return the JDBC URL connections are opened against
+     */
+    public static String getUrl() {
+        return URL;
+    }
 
     /**
      * Opens and returns a new database connection.
@@ -23,7 +58,83 @@ public class ConnectionFactory {
      * @throws SQLException if connection fails
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASS);
+        long start = Metrics.start();
+        try {
+            return JdbcTracer.wrap(migrated(DriverManager.getConnection(URL, connectionProperties())));
+        } catch (SQLException e) {
+            Metrics.increment("db.connection.errors");
+            throw e;
+        } finally {
+            Metrics.record("db.connection.open", start);
+        }
+    }
+
+    /**
+     * Opens a connection that is allowed to stream client-side data with
+     * <code>LOAD DATA LOCAL INFILE</code>. Only bulk import code should use this.
+     *
+     * @return a JDBC Connection object with local infile enabled
+     * @throws SQLException if connection fails
+     */
+    public static Connection getBulkConnection() throws SQLException {
+        Properties props = connectionProperties();
+        if (BACKEND.supportsLoadData()) {
+            props.setProperty("allowLoadLocalInfile", "true");
+        }
+        long start = Metrics.start();
+        try {
+            return JdbcTracer.wrap(migrated(DriverManager.getConnection(URL, props)));
+        } catch (SQLException e) {
+            Metrics.increment("db.connection.errors");
+            throw e;
+        } finally {
+            Metrics.record("db.connection.openBulk", start);
+        }
+    }
+
+    /**
+     * Returns the credentials and driver settings every connection is opened
+     * with. On MySQL this turns on server-side prepared statements and the
+     * driver's per-connection statement cache, so a statement prepared again
+     * on the same connection is neither re-parsed by the server nor
+     * re-prepared by the driver.
+     */
+    static Properties connectionProperties() {
+        Properties props = new Properties();
+        props.setProperty("user", USER);
+        props.setProperty("password", PASS);
+        if (BACKEND == DatabaseBackend.MYSQL) {
+            props.setProperty("useServerPrepStmts", Config.get("vgb.db.useServerPrepStmts", "true"));
+            props.setProperty("cachePrepStmts", Config.get("vgb.db.cachePrepStmts", "true"));
+            props.setProperty("prepStmtCacheSize", Config.get("vgb.db.prepStmtCacheSize", "250"));
+            props.setProperty("prepStmtCacheSqlLimit", Config.get("vgb.db.prepStmtCacheSqlLimit", "2048"));
+        }
+        return props;
+    }
+
+    /**
+     * Applies pending schema migrations the first time a connection is opened.
+     * A failed migration fails that connection only; later connections are
+     * opened against the schema as it is rather than retrying it.
+     */
+    private static Connection migrated(Connection conn) throws SQLException {
+        if (!migrated) {
+            synchronized (ConnectionFactory.class) {
+                if (!migrated) {
+                    migrated = true;
+                    try {
+                        SchemaMigrator.migrate(conn);
+                    } catch (SQLException e) {
+                        System.err.println(e.getMessage());
+                        System.err.println("Schema migration is not retried in this process; fix the schema"
+                                + " and restart, or set vgb.db.migrate=false to skip it");
+                        closeConnection(conn);
+                        throw e;
+                    }
+                }
+            }
+        }
+        return conn;
     }
 
     /**
@@ -0,0 +1,337 @@
+package com.vgb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resumable CSV to database import for data sets too large to reload after
+ * every failure. Progress is checkpointed in an {@link ImportJournal}
+ * (<code>vgb.import.journal</code>, default <code>import.journal</code>), so
+ * running the import again after it died continues from the last committed
+ * batch instead of starting over from an empty database.
+ *
+ * The import runs in two stages:
+ * <ol>
+ * <li>persons, companies, items and invoices are loaded into emptied tables
+ * by {@link BulkLoader#load} in one transaction, and the journal records
+ * that they are loaded; if it does not, a resumed import empties the tables
+ * and loads them again,</li>
+ * <li>InvoiceItems.csv is streamed from the journal's byte offset through an
+ * {@link InvoiceItemIngester}, one <code>vgb.ingest.batchSize</code> batch
+ * per transaction. The batch's byte range is journaled before the commit and
+ * marked committed after it.</li>
+ * </ol>
+ * A batch begun but not marked committed is taken as committed if
+ * InvoiceItems holds rows past the high-water mark journaled with it, and
+ * is replayed otherwise. That check assumes nothing else writes line items
+ * while an import is unfinished.
+ *
+ * An import resumes only if InvoiceItems.csv has the same path and size as
+ * when it started; otherwise, and after a finished import, it starts over.
+ *
+ * Rows of InvoiceItems.csv that fail validation or that the ingester skips
+ * for an unknown invoice go to the reject file (see {@link CsvRejects}), in
+ * file order, once their batch has committed, so replayed rows are
+ * not recorded twice. A resumed import adds to the reject file of the run it
+ * resumes, and if that run had loaded the reference data, reads the
+ * reference files again without recording their rejects a second time.
+ *
+ * Usage: <code>CsvImporter [dataDir]</code> (default
+ * <code>vgb.repository.dataDir</code>, data)
+ */
+public class CsvImporter {
+
+    public static void main(String[] args) {
+        String dataDir = args.length > 0 ? args[0] : Config.get("vgb.repository.dataDir", "data");
+        Path journalPath = Paths.get(Config.get("vgb.import.journal", "import.journal"));
+        long start = System.nanoTime();
+        try (ImportJournal journal = ImportJournal.open(journalPath)) {
+            if (run(Paths.get(dataDir), journal, InvoiceItemIngester.DEFAULT_BATCH_SIZE)) {
+                System.out.printf("Import finished in %.2f s\n", (System.nanoTime() - start) / 1e9);
+            } else {
+                System.err.println("Import stopped at byte " + journal.getOffset()
+                        + " of InvoiceItems.csv; run again to resume");
+            }
+        } catch (IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+        Metrics.dump();
+    }
+
+    /**
+     * Imports the CSV files of a data directory, resuming the import recorded
+     * in the journal if there is one.
+     *
+     * @return true if the import finished, false if a batch failed to commit
+     */
+    public static boolean run(Path dataDir, ImportJournal journal, int batchSize) throws IOException {
+        Path invoiceItems = dataDir.resolve("InvoiceItems.csv");
+        long size = Files.size(invoiceItems);
+        if (journal.canResume(invoiceItems.toString(), size)) {
+            System.out.println("Resuming import at byte " + journal.getOffset() + " of " + invoiceItems);
+            Metrics.increment("import.resumed");
+            CsvRejects.append();
+        } else {
+            journal.start(invoiceItems.toString(), size);
+        }
+
+        // Reference data is read again on resume; the line items need the item types.
+        // Once it is loaded, the run that loaded it has recorded its rejects.
+        Map<UUID, Person> persons;
+        Map<UUID, Company> companies;
+        Map<UUID, Item> items;
+        CsvRejects.setMuted(journal.isLoaded());
+        try {
+            persons = CSVReaderUtil.readPersons(dataDir.resolve("Persons.csv").toString());
+            companies = CSVReaderUtil.readCompanies(dataDir.resolve("Companies.csv").toString(), persons);
+            items = CSVReaderUtil.readItems(dataDir.resolve("Items.csv").toString(), companies);
+        } finally {
+            CsvRejects.setMuted(false);
+        }
+        if (!journal.isLoaded()) {
+            Map<UUID, Invoice> invoices = CSVReaderUtil.loadInvoices(dataDir.resolve("Invoices.csv").toString(),
+                    persons, companies);
+            InvoiceData.truncateDatabase();
+            if (!BulkLoader.load(persons, companies, items, invoices)) {
+                return false;
+            }
+            journal.loaded();
+        }
+
+        ImportJournal.Pending pending = journal.getPending();
+        if (pending != null) {
+            long highWater = maxInvoiceItemId();
+            if (highWater < 0) {
+                return false;
+            }
+            if (highWater > pending.getHighWater()) {
+                journal.commit(pending.getTo());
+            }
+        }
+        return importInvoiceItems(invoiceItems, journal, items, batchSize);
+    }
+
+    /**
+     * Streams the line items after the journal's offset into the database,
+     * checkpointing after every batch.
+     */
+    private static boolean importInvoiceItems(Path file, ImportJournal journal, Map<UUID, Item> items, int batchSize)
+            throws IOException {
+        long startNanos = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("import", "invoiceItems");
+        long offset = journal.getOffset();
+        long rows = 0;
+        InvoiceItemIngester ingester = new InvoiceItemIngester(Integer.MAX_VALUE);
+        // Rows of the current batch handed to the ingester, and those rejected,
+        // recorded once it commits
+        List<Row> added = new ArrayList<>();
+        List<Row> rejects = new ArrayList<>();
+        ingester.setRejectListener((index, reason) -> reject(rejects, added.get(index), reason));
+        try (FileChannel channel = FileChannel.open(file)) {
+            LineReader reader = new LineReader(Channels.newInputStream(channel.position(offset)), offset);
+            if (offset == 0) {
+                reader.readLine();  // Skip header
+            }
+            long batchStart = reader.getPosition();
+            long lineStart = batchStart;
+            int batchRows = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addInvoiceItem(ingester, added, rejects, new Row(lineStart, line.trim()), items);
+                lineStart = reader.getPosition();
+                if (++batchRows == batchSize) {
+                    if (!commitBatch(ingester, added, rejects, file.toString(), journal, batchStart, reader.getPosition())) {
+                        return false;
+                    }
+                    rows += batchRows;
+                    batchStart = reader.getPosition();
+                    batchRows = 0;
+                }
+            }
+            if (batchRows > 0 && !commitBatch(ingester, added, rejects, file.toString(), journal, batchStart, reader.getPosition())) {
+                return false;
+            }
+            rows += batchRows;
+            journal.done();
+            return true;
+        } finally {
+            // Rows not journaled yet must not be written by close()
+            ingester.clear();
+            ingester.close();
+            Metrics.record("import.invoiceItems", startNanos);
+            Metrics.add("import.invoiceItems.rows", rows);
+            CsvRejects.flush();
+            event.end(rows, journal.getOffset() - offset);
+        }
+    }
+
+    /**
+     * Commits the ingester's buffered rows, journaling the byte range before
+     * and the commit after, and records the batch's rejected rows in between.
+     */
+    private static boolean commitBatch(InvoiceItemIngester ingester, List<Row> added, List<Row> rejects, String file,
+                                       ImportJournal journal, long from, long to) throws IOException {
+        long highWater = maxInvoiceItemId();
+        if (highWater < 0) {
+            return false;
+        }
+        journal.begin(from, to, highWater);
+        if (!ingester.flush()) {
+            return false;
+        }
+        rejects.sort(Comparator.comparingLong(row -> row.position));
+        for (Row reject : rejects) {
+            CsvRejects.reject(file, "byte " + reject.position, reject.reason, reject.line);
+        }
+        added.clear();
+        rejects.clear();
+        CsvRejects.flush();
+        journal.commit(to);
+        return true;
+    }
+
+    /**
+     * Hands one InvoiceItems.csv row to the ingester, reading its columns as
+     * {@link CSVReaderUtil#readInvoiceItems} does. Rows that fail its checks
+     * are added to <code>rejects</code>, the others to <code>added</code>,
+     * where the ingester's listener finds those of unknown invoices.
+     */
+    private static void addInvoiceItem(InvoiceItemIngester ingester, List<Row> added, List<Row> rejects, Row row,
+                                       Map<UUID, Item> items) {
+        if (row.line.isEmpty()) return;
+        try {
+            String[] tokens = row.line.split(",", -1);
+            String problem = CSVReaderUtil.checkInvoiceItem(tokens, items);
+            if (problem != null) {
+                reject(rejects, row, problem);
+                return;
+            }
+
+            UUID invoiceId = UUID.fromString(tokens[0]);
+            UUID itemId = UUID.fromString(tokens[1]);
+            Item item = items.get(itemId);
+            if (item instanceof Material) {
+                ingester.addMaterial(invoiceId, itemId, Integer.parseInt(tokens[2]));
+            } else if (item instanceof Contract) {
+                ingester.addContract(invoiceId, itemId, Double.parseDouble(tokens[2]));
+            } else if ("L".equalsIgnoreCase(tokens[2])) {
+                ingester.addEquipmentLease(invoiceId, itemId, LocalDate.parse(tokens[3]), LocalDate.parse(tokens[4]));
+            } else if ("R".equalsIgnoreCase(tokens[2])) {
+                ingester.addEquipmentRental(invoiceId, itemId, Double.parseDouble(tokens[3]));
+            } else {
+                ingester.addEquipmentPurchase(invoiceId, itemId);
+            }
+            added.add(row);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            reject(rejects, row, "malformed: " + e.getMessage());
+        }
+    }
+
+    private static void reject(List<Row> rejects, Row row, String reason) {
+        Metrics.increment("import.invoiceItems.rejected");
+        rejects.add(new Row(row.position, row.line, reason));
+    }
+
+    /**
+     * The largest invoiceItemId in the table, 0 if it is empty, or -1 if the
+     * query failed.
+     */
+    private static long maxInvoiceItemId() {
+        try (Connection conn = ConnectionFactory.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(invoiceItemId), 0) FROM InvoiceItems")) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * One InvoiceItems.csv row, where it starts, and why it was rejected, if it was.
+     */
+    private static class Row {
+        final long position;
+        final String line;
+        final String reason;
+
+        Row(long position, String line) {
+            this(position, line, null);
+        }
+
+        Row(long position, String line, String reason) {
+            this.position = position;
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Reads UTF-8 lines while keeping the byte offset of the next one, which
+     * line readers over a decoded stream cannot report.
+     */
+    private static class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int next;
+        private int limit;
+        private long position;
+        private byte[] line = new byte[256];
+
+        LineReader(InputStream in, long position) {
+            this.in = in;
+            this.position = position;
+        }
+
+        /**
+         * Returns the next line without its terminator, or null at the end.
+         */
+        String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (next == limit) {
+                    limit = in.read(buffer);
+                    next = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length == 0 ? null : new String(line, 0, length, StandardCharsets.UTF_8);
+                    }
+                }
+                byte b = buffer[next++];
+                position++;
+                if (b == '\n') {
+                    return new String(line, 0, length, StandardCharsets.UTF_8);
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+
+        long getPosition() {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.vgb;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reject file for CSV rows that fail validation while they are parsed (see
+ * {@link CSVReaderUtil}), imported ({@link CsvImporter}) or partitioned
+ * ({@link MonthPartitions}). Each rejected row becomes one line:
+ * <pre>
+ *   file,position,reason,row
+ * </pre>
+ * where the position is <code>line N</code> or <code>byte N</code> and the
+ * row comes last, exactly as read, so it may contain commas itself.
+ *
+ * The file (<code>vgb.csv.rejectFile</code>, default <code>rejects.csv</code>;
+ * empty to only count) is created on the first reject of a run and replaces
+ * the previous run's, so clean inputs never touch it, unless the run resumes
+ * an earlier one (see {@link #append()}). Every reject is counted in the
+ * <code>csv.rejected</code> metric, including muted ones.
+ */
+public class CsvRejects {
+
+    private static Path path = pathFromConfig();
+    private static BufferedWriter out;
+    private static boolean failed;
+    private static boolean append;
+    private static boolean muted;
+
+    /**
+     * Records a rejected row.
+     *
+     * @param file     the CSV file the row was read from
+     * @param position where the row is in the file, e.g. <code>line 12</code>
+     * @param reason   why the row was rejected
+     * @param row      the row as read
+     */
+    public static synchronized void reject(String file, String position, String reason, String row) {
+        Metrics.increment("csv.rejected");
+        if (path == null || failed || muted) {
+            return;
+        }
+        try {
+            if (out == null && append && Files.exists(path)) {
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            } else if (out == null) {
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+                out.write("file,position,reason,row\n");
+            }
+            out.write(file + "," + position + "," + reason.replace(',', ';').replace('\n', ' ') + "," + row + "\n");
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Cannot write rejected rows to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds this run's rejects to the existing reject file instead of replacing
+     * it, for a run that resumes one whose rejects must be kept. Has no effect
+     * once the file is open.
+     */
+    public static synchronized void append() {
+        append = true;
+    }
+
+    /**
+     * Only counts the rejects that follow until unmuted, for reading input
+     * again whose rejects are already in the file.
+     */
+    public static synchronized void setMuted(boolean mute) {
+        muted = mute;
+    }
+
+    /**
+     * Writes buffered rejects to the file; readers call this when they finish.
+     */
+    public static synchronized void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Closes the current reject file and sends later rejects to another, or
+     * only counts them if <code>file</code> is null.
+     */
+    static synchronized void redirect(Path file) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        out = null;
+        failed = false;
+        append = false;
+        muted = false;
+        path = file;
+    }
+
+    private static Path pathFromConfig() {
+        String file = Config.get("vgb.csv.rejectFile", "rejects.csv");
+        return file.isEmpty() ? null : Paths.get(file);
+    }
+}
@@ -18,111 +18,276 @@ import java.util.*;
  */
 public class DBReaderUtil {
 
+    // Queries are package-private so tests can check their plans with EXPLAIN
+    static final String PERSON_SQL = "SELECT * FROM Person";
+    static final String EMAIL_SQL = "SELECT * FROM Email";
+
+    static final String COMPANY_SQL = """
+        SELECT c.company_uuid, c.company_name, p.person_uuid, a.street, a.city, a.state, a.postal_code
+        FROM Company c
+        JOIN Person p ON c.contactId = p.personId
+        JOIN Address a ON c.addressId = a.addressId
+    """;
+
+    static final String PERSON_BY_UUID_SQL = "SELECT * FROM Person WHERE person_uuid = ?";
+    static final String EMAIL_BY_PERSON_SQL = "SELECT email_address FROM Email WHERE person_uuid = ?";
+    static final String COMPANY_BY_UUID_SQL = COMPANY_SQL + " WHERE c.company_uuid = ?";
+
+    static final String ITEM_SQL = "SELECT * FROM Item";
+    static final String ITEM_BY_UUID_SQL = ITEM_SQL + " WHERE item_uuid = ?";
+
+    static final String INVOICE_SQL = """
+        SELECT i.invoice_uuid, i.invoice_date, c.company_uuid, p.person_uuid
+        FROM Invoice i
+        JOIN Company c ON i.companyId = c.companyId
+        JOIN Person p ON i.personId = p.personId
+    """;
+
+    static final String INVOICE_ITEM_SQL = """
+        SELECT ii.*, i.item_uuid, inv.invoice_uuid
+        FROM InvoiceItems ii
+        JOIN Item i ON ii.item_uuid = i.item_uuid
+        JOIN Invoice inv ON ii.invoiceId = inv.invoiceId
+    """;
+
+    static final String INVOICE_ITEM_COUNT_SQL = """
+        SELECT inv.invoice_uuid, COUNT(*) AS item_count
+        FROM InvoiceItems ii
+        JOIN Invoice inv ON ii.invoiceId = inv.invoiceId
+        GROUP BY inv.invoice_uuid
+    """;
+
+    static final String COMPANY_TOTALS_SQL = """
+        SELECT c.company_uuid, t.invoice_count, t.item_count, t.subtotal_cents, t.tax_cents
+        FROM CompanyTotals t
+        JOIN Company c ON t.companyId = c.companyId
+    """;
+
+    static final String SALESPERSON_TOTALS_SQL = """
+        SELECT p.person_uuid, t.invoice_count, t.item_count, t.subtotal_cents, t.tax_cents
+        FROM SalespersonTotals t
+        JOIN Person p ON t.personId = p.personId
+    """;
+
+    static final String DAILY_TOTALS_SQL = """
+        SELECT invoice_date, invoice_count, item_count, subtotal_cents, tax_cents
+        FROM DailyTotals
+        WHERE invoice_date BETWEEN ? AND ?
+        ORDER BY invoice_date
+    """;
+
+    // Maximum number of ids bound into one IN (...) list
+    static final int IN_BATCH_SIZE = 500;
+
     /**
      * Reads all Person records and their associated emails from the database.
+     * Served from {@link ReferenceDataCache} when it holds a valid copy.
      *
      * @return a map of person UUIDs to Person objects
      */
     public static Map<UUID, Person> readPersons() {
-        Map<UUID, Person> persons = new HashMap<>();
+        Map<UUID, Person> persons = ReferenceDataCache.PERSONS.snapshot();
+        if (persons != null) {
+            return persons;
+        }
+        long generation = ReferenceDataCache.PERSONS.generation();
+        persons = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "readPersons");
         try (Connection conn = ConnectionFactory.getConnection()) {
             Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM Person");
-
+            ResultSet rs = stmt.executeQuery(PERSON_SQL);
+            RowMapper<Person> mapper = RowMappers.person(rs);
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("person_uuid"));
-                Person p = new Person(uuid, rs.getString("first_name"), rs.getString("last_name"),
-                        rs.getString("phone"), new ArrayList<>());
-                persons.put(uuid, p);
+                Person p = mapper.map(rs);
+                persons.put(p.getUuid(), p);
             }
 
-            rs = stmt.executeQuery("SELECT * FROM Email");
+            rs = stmt.executeQuery(EMAIL_SQL);
+            int personColumn = rs.findColumn("person_uuid");
+            int emailColumn = rs.findColumn("email_address");
             while (rs.next()) {
-                UUID personUUID = UUID.fromString(rs.getString("person_uuid"));
-                Person p = persons.get(personUUID);
+                Person p = persons.get(UUID.fromString(rs.getString(personColumn)));
                 if (p != null) {
-                    p.getEmails().add(rs.getString("email_address"));
+                    p.getEmails().add(rs.getString(emailColumn));
                 }
             }
+            ReferenceDataCache.PERSONS.putAll(persons, generation);
         } catch (SQLException e) {
+            Metrics.increment("db.errors");
             e.printStackTrace();
+        } finally {
+            Metrics.record("db.readPersons", start);
+            event.end(persons.size(), 0);
         }
         return persons;
     }
 
     /**
      * Reads all Company records, joining with related Person and Address details.
+     * Served from {@link ReferenceDataCache} when it holds a valid copy, in
+     * which case the contacts are the Person objects the copy was built with.
      *
      * @param persons a map of person UUIDs to Person objects
      * @return a map of company UUIDs to Company objects
      */
     public static Map<UUID, Company> readCompanies(Map<UUID, Person> persons) {
-        Map<UUID, Company> companies = new HashMap<>();
-        String sql = """
-            SELECT c.company_uuid, c.company_name, p.person_uuid, a.street, a.city, a.state, a.postal_code
-            FROM Company c
-            JOIN Person p ON c.contactId = p.personId
-            JOIN Address a ON c.addressId = a.addressId
-        """;
-
+        Map<UUID, Company> companies = ReferenceDataCache.COMPANIES.snapshot();
+        if (companies != null) {
+            return companies;
+        }
+        long generation = ReferenceDataCache.COMPANIES.generation();
+        companies = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "readCompanies");
         try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
+             PreparedStatement ps = conn.prepareStatement(COMPANY_SQL);
              ResultSet rs = ps.executeQuery()) {
 
+            RowMapper<Company> mapper = RowMappers.company(rs, persons::get);
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("company_uuid"));
-                Person contact = persons.get(UUID.fromString(rs.getString("person_uuid")));
-                Address address = new Address(rs.getString("street"), rs.getString("city"),
-                        rs.getString("state"), rs.getString("postal_code"));
-                companies.put(uuid, new Company(uuid, contact, rs.getString("company_name"), address));
+                Company c = mapper.map(rs);
+                companies.put(c.getUuid(), c);
             }
+            ReferenceDataCache.COMPANIES.putAll(companies, generation);
         } catch (SQLException e) {
+            Metrics.increment("db.errors");
             e.printStackTrace();
+        } finally {
+            Metrics.record("db.readCompanies", start);
+            event.end(companies.size(), 0);
         }
         return companies;
     }
 
     /**
      * Reads all Item records from the database and maps them to specific item types.
+     * Served from {@link ReferenceDataCache} when it holds a valid copy.
      *
      * @param companies a map of company UUIDs to Company objects (for contracts)
      * @return a map of item UUIDs to Item objects
      */
     public static Map<UUID, Item> readItems(Map<UUID, Company> companies) {
-        Map<UUID, Item> items = new HashMap<>();
-        String sql = "SELECT * FROM Item";
-
+        Map<UUID, Item> items = ReferenceDataCache.ITEMS.snapshot();
+        if (items != null) {
+            return items;
+        }
+        long generation = ReferenceDataCache.ITEMS.generation();
+        items = new HashMap<>();
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "readItems");
         try (Connection conn = ConnectionFactory.getConnection();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             ResultSet rs = stmt.executeQuery(ITEM_SQL)) {
 
+            RowMapper<Item> mapper = RowMappers.item(rs, companies::get);
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("item_uuid"));
-                String type = rs.getString("type");
-                String name = rs.getString("name");
-
-                if ("E".equals(type)) {
-                    String modelNo = rs.getString("model_no");
-                    double retailPrice = rs.getDouble("retail_price");
-                    items.put(uuid, new Equipment(uuid, name, modelNo, retailPrice));
-
-                } else if ("M".equals(type)) {
-                    String unit = rs.getString("weight_desc");
-                    double unitCost = rs.getDouble("unit_cost");
-                    items.put(uuid, new Material(uuid, name, unit, unitCost));
-
-                } else if ("C".equals(type)) {
-                    double fee = rs.getDouble("contract_fee");
-                    Company subcontractor = companies.values().stream().findFirst().orElse(null);
-                    items.put(uuid, new Contract(uuid, name, subcontractor, fee));
+                Item item = mapper.map(rs);
+                if (item != null) {
+                    items.put(item.getUuid(), item);
                 }
             }
+            ReferenceDataCache.ITEMS.putAll(items, generation);
         } catch (SQLException e) {
+            Metrics.increment("db.errors");
             e.printStackTrace();
+        } finally {
+            Metrics.record("db.readItems", start);
+            event.end(items.size(), 0);
         }
         return items;
     }
 
+    /**
+     * Looks up a single person and their emails, reading through the cache.
+     *
+     * @param personUuid the person to find
+     * @return the Person, or null if there is no such person
+     */
+    public static Person readPerson(UUID personUuid) {
+        return ReferenceDataCache.PERSONS.get(personUuid, uuid -> {
+            long start = Metrics.start();
+            try (Connection conn = ConnectionFactory.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(PERSON_BY_UUID_SQL);
+                 PreparedStatement emails = conn.prepareStatement(EMAIL_BY_PERSON_SQL)) {
+                ps.setString(1, uuid.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Person p = RowMappers.person(rs).map(rs);
+                    emails.setString(1, uuid.toString());
+                    try (ResultSet ers = emails.executeQuery()) {
+                        while (ers.next()) {
+                            p.getEmails().add(ers.getString(1));
+                        }
+                    }
+                    return p;
+                }
+            } catch (SQLException e) {
+                Metrics.increment("db.errors");
+                e.printStackTrace();
+                return null;
+            } finally {
+                Metrics.record("db.readPerson", start);
+            }
+        });
+    }
+
+    /**
+     * Looks up a single company with its address and contact, reading through the cache.
+     *
+     * @param companyUuid the company to find
+     * @return the Company, or null if there is no such company
+     */
+    public static Company readCompany(UUID companyUuid) {
+        return ReferenceDataCache.COMPANIES.get(companyUuid, uuid -> {
+            long start = Metrics.start();
+            try (Connection conn = ConnectionFactory.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(COMPANY_BY_UUID_SQL)) {
+                ps.setString(1, uuid.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    return RowMappers.company(rs, DBReaderUtil::readPerson).map(rs);
+                }
+            } catch (SQLException e) {
+                Metrics.increment("db.errors");
+                e.printStackTrace();
+                return null;
+            } finally {
+                Metrics.record("db.readCompany", start);
+            }
+        });
+    }
+
+    /**
+     * Looks up a single item, reading through the cache. A contract's
+     * servicer is looked up with {@link #readCompany(UUID)}.
+     *
+     * @param itemUuid the item to find
+     * @return the Item, or null if there is no such item
+     */
+    public static Item readItem(UUID itemUuid) {
+        return ReferenceDataCache.ITEMS.get(itemUuid, uuid -> {
+            long start = Metrics.start();
+            try (Connection conn = ConnectionFactory.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(ITEM_BY_UUID_SQL)) {
+                ps.setString(1, uuid.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? RowMappers.item(rs, DBReaderUtil::readCompany).map(rs) : null;
+                }
+            } catch (SQLException e) {
+                Metrics.increment("db.errors");
+                e.printStackTrace();
+                return null;
+            } finally {
+                Metrics.record("db.readItem", start);
+            }
+        });
+    }
+
     /**
      * Loads all invoices from the database, including associated companies and salespersons.
      *
@@ -131,31 +296,154 @@ public class DBReaderUtil {
      * @return a map of invoice UUIDs to Invoice objects
      */
     public static Map<UUID, Invoice> loadInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies) {
-        Map<UUID, Invoice> invoices = new HashMap<>();
-        String sql = """
-            SELECT i.invoice_uuid, i.invoice_date, c.company_uuid, p.person_uuid
-            FROM Invoice i
-            JOIN Company c ON i.companyId = c.companyId
-            JOIN Person p ON i.personId = p.personId
-        """;
+        return loadInvoices(persons, companies, null, null);
+    }
 
+    /**
+     * Loads the invoices dated within a range. The range is a predicate on
+     * the invoice date index, so only the invoices in it are read.
+     *
+     * @param persons a map of person UUIDs to Person objects
+     * @param companies a map of company UUIDs to Company objects
+     * @param from first date included, or null for no lower bound
+     * @param to last date included, or null for no upper bound
+     * @return a map of invoice UUIDs to Invoice objects
+     */
+    public static Map<UUID, Invoice> loadInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                                  LocalDate from, LocalDate to) {
+        Map<UUID, Invoice> invoices = new HashMap<>();
+        List<Object> params = new ArrayList<>();
+        String sql = INVOICE_SQL + dateRangeSql("i.invoice_date", from, to, params);
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "loadInvoices");
         try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("invoice_uuid"));
-                Company company = companies.get(UUID.fromString(rs.getString("company_uuid")));
-                Person salesperson = persons.get(UUID.fromString(rs.getString("person_uuid")));
-                LocalDate date = rs.getDate("invoice_date").toLocalDate();
-                invoices.put(uuid, new Invoice(uuid, company, salesperson, date));
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<Invoice> mapper = RowMappers.invoice(rs, persons, companies);
+                while (rs.next()) {
+                    Invoice invoice = mapper.map(rs);
+                    invoices.put(invoice.getInvoiceId(), invoice);
+                }
             }
         } catch (SQLException e) {
+            Metrics.increment("db.errors");
             e.printStackTrace();
+        } finally {
+            Metrics.record("db.loadInvoices", start);
+            event.end(invoices.size(), 0);
         }
         return invoices;
     }
 
+    /**
+     * Runs a filtered, paged invoice query. Only the invoices on the requested
+     * page are read; line items are not attached (see {@link #loadInvoiceItems}).
+     *
+     * The SQL only contains predicates for the filters that are set, and all
+     * of them are bound parameters, so each filter combination maps to one
+     * statement shape served by the (companyId | personId | -, invoice_date,
+     * invoice_uuid) indexes.
+     *
+     * @param query the filters, page size and starting cursor
+     * @param persons a map of person UUIDs to Person objects
+     * @param companies a map of company UUIDs to Company objects
+     * @return the page of invoices and the cursor of the next page
+     */
+    public static InvoicePage queryInvoices(InvoiceQuery query, Map<UUID, Person> persons, Map<UUID, Company> companies) {
+        List<Object> params = new ArrayList<>();
+        String sql = invoiceQuerySql(query, params);
+
+        List<Invoice> invoices = new ArrayList<>();
+        boolean more = false;
+        long start = Metrics.start();
+        try (Connection conn = ConnectionFactory.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<Invoice> mapper = RowMappers.invoice(rs, persons, companies);
+                while (rs.next()) {
+                    if (invoices.size() == query.getPageSize()) {
+                        more = true;
+                        break;
+                    }
+                    invoices.add(mapper.map(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+        } finally {
+            Metrics.record("db.queryInvoices", start);
+        }
+
+        InvoiceQuery.Cursor next = null;
+        if (more) {
+            Invoice last = invoices.get(invoices.size() - 1);
+            next = new InvoiceQuery.Cursor(last.getDate(), last.getInvoiceId());
+        }
+        return new InvoicePage(invoices, next);
+    }
+
+    /**
+     * Builds the SQL for an invoice query, appending its bind values to <code>params</code>.
+     */
+    static String invoiceQuerySql(InvoiceQuery query, List<Object> params) {
+        StringBuilder sql = new StringBuilder(INVOICE_SQL).append(" WHERE 1 = 1");
+        if (query.getCompanyUuid() != null) {
+            sql.append(" AND c.company_uuid = ?");
+            params.add(query.getCompanyUuid().toString());
+        }
+        if (query.getSalespersonUuid() != null) {
+            sql.append(" AND p.person_uuid = ?");
+            params.add(query.getSalespersonUuid().toString());
+        }
+        if (query.getFromDate() != null) {
+            sql.append(" AND i.invoice_date >= ?");
+            params.add(Date.valueOf(query.getFromDate()));
+        }
+        if (query.getToDate() != null) {
+            sql.append(" AND i.invoice_date <= ?");
+            params.add(Date.valueOf(query.getToDate()));
+        }
+        InvoiceQuery.Cursor after = query.getAfter();
+        if (after != null) {
+            // The leading >= gives the optimizer a plain range to seek on
+            Date afterDate = Date.valueOf(after.getDate());
+            sql.append(" AND i.invoice_date >= ? AND (i.invoice_date > ? OR i.invoice_uuid > ?)");
+            params.add(afterDate);
+            params.add(afterDate);
+            params.add(after.getInvoiceUuid().toString());
+        }
+        // Fetch one extra row to learn whether another page follows
+        sql.append(" ORDER BY i.invoice_date, i.invoice_uuid LIMIT ?");
+        params.add(query.getPageSize() + 1);
+        return sql.toString();
+    }
+
+    /**
+     * Appends a WHERE clause restricting a date column to a range, or nothing
+     * if both bounds are null, adding its bind values to <code>params</code>.
+     */
+    static String dateRangeSql(String column, LocalDate from, LocalDate to, List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+        if (from != null) {
+            sql.append(" WHERE ").append(column).append(" >= ?");
+            params.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(from != null ? " AND " : " WHERE ").append(column).append(" <= ?");
+            params.add(Date.valueOf(to));
+        }
+        return sql.toString();
+    }
+
+    private static void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+
     /**
      * Loads and associates InvoiceItems (with type-specific details) into their corresponding Invoices.
      *
@@ -163,64 +451,246 @@ public class DBReaderUtil {
      * @param items a map of item UUIDs to Item objects
      */
     public static void loadInvoiceItems(Map<UUID, Invoice> invoices, Map<UUID, Item> items) {
-        String sql = """
-            SELECT ii.*, i.item_uuid, inv.invoice_uuid
-            FROM InvoiceItems ii
-            JOIN Item i ON ii.item_uuid = i.item_uuid
-            JOIN Invoice inv ON ii.invoiceId = inv.invoiceId
-        """;
+        loadInvoiceItems(invoices, items, null, null);
+    }
 
+    /**
+     * Loads the InvoiceItems of the invoices dated within a range, selecting
+     * the invoices through the invoice date index and their items through
+     * the InvoiceItems invoiceId index.
+     *
+     * @param invoices a map of invoice UUIDs to Invoice objects
+     * @param items a map of item UUIDs to Item objects
+     * @param from first date included, or null for no lower bound
+     * @param to last date included, or null for no upper bound
+     */
+    public static void loadInvoiceItems(Map<UUID, Invoice> invoices, Map<UUID, Item> items,
+                                        LocalDate from, LocalDate to) {
+        List<Object> params = new ArrayList<>();
+        String sql = INVOICE_ITEM_SQL + dateRangeSql("inv.invoice_date", from, to, params);
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "loadInvoiceItems");
+        int rows = 0;
         try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                rows = attachInvoiceItems(rs, invoices, items);
+            }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+        } finally {
+            Metrics.record("db.loadInvoiceItems", start);
+            event.end(rows, 0);
+        }
+    }
 
-            while (rs.next()) {
-                UUID invoiceUUID = UUID.fromString(rs.getString("invoice_uuid"));
-                UUID itemUUID = UUID.fromString(rs.getString("item_uuid"));
-                String purchaseType = rs.getString("purchase_type");
-
-                Invoice invoice = invoices.get(invoiceUUID);
-                Item baseItem = items.get(itemUUID);
-                if (invoice == null || baseItem == null) {
-                    continue;
-                }
+    /**
+     * Loads the InvoiceItems of only the given invoices, one IN query per
+     * {@value #IN_BATCH_SIZE} ids. Invoices that already hold items are
+     * skipped, and lazily loaded invoices in the batch are marked as loaded.
+     *
+     * @param invoices a map of invoice UUIDs to Invoice objects
+     * @param items a map of item UUIDs to Item objects
+     * @param invoiceUuids the invoices whose items should be loaded
+     */
+    public static void loadInvoiceItems(Map<UUID, Invoice> invoices, Map<UUID, Item> items, Collection<UUID> invoiceUuids) {
+        try {
+            fetchInvoiceItems(invoices, items, invoiceUuids);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
 
-                InvoiceItem invoiceItem = new InvoiceItem(invoiceUUID, baseItem);
-
-                if (baseItem instanceof Material) {
-                    int quantity = rs.getInt("quantity");
-                    invoiceItem.setQuantity(quantity);
-
-                } else if (baseItem instanceof Contract) {
-                    // Contract already has amount from Item table; no need to set
-
-                } else if (baseItem instanceof Equipment equipment) {
-                    if ("L".equals(purchaseType)) {
-                        LocalDate start = Optional.ofNullable(rs.getDate("lease_start_date"))
-                                .map(Date::toLocalDate).orElse(null);
-                        LocalDate end = Optional.ofNullable(rs.getDate("lease_end_date"))
-                                .map(Date::toLocalDate).orElse(null);
-                        Lease lease = new Lease(itemUUID, equipment.getName(), equipment.getModelNumber(),
-                                equipment.getRetailPrice(), start, end);
-                        invoiceItem = new InvoiceItem(invoiceUUID, lease);
-                        invoiceItem.setLeaseDates(start, end);
-
-                    } else if ("R".equals(purchaseType)) {
-                        int hours = rs.getInt("rental_hours");
-                        Rental rental = new Rental(itemUUID, equipment.getName(), equipment.getModelNumber(),
-                                equipment.getRetailPrice(), hours);
-                        invoiceItem = new InvoiceItem(invoiceUUID, rental);
-                        invoiceItem.setRentalHours(hours);
-                    } else {
-                        invoiceItem = new InvoiceItem(invoiceUUID, equipment);
+    /**
+     * Like {@link #loadInvoiceItems(Map, Map, Collection)}, but throws if the
+     * items cannot be read. A lazily loaded invoice is marked as loaded only
+     * once its batch has been read, so the invoices of a failed batch keep
+     * their loaders and fetch their items again on next use.
+     *
+     * @throws SQLException if a batch cannot be read
+     */
+    static void fetchInvoiceItems(Map<UUID, Invoice> invoices, Map<UUID, Item> items, Collection<UUID> invoiceUuids)
+            throws SQLException {
+        List<UUID> ids = new ArrayList<>();
+        for (UUID uuid : invoiceUuids) {
+            Invoice invoice = invoices.get(uuid);
+            if (invoice != null && (!invoice.isItemsLoaded() || invoice.getItems().isEmpty())) {
+                ids.add(uuid);
+            }
+        }
+        long start = Metrics.start();
+        LoadPhaseEvent event = LoadPhaseEvent.begin("db", "loadInvoiceItemBatch");
+        int rows = 0;
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            for (int from = 0; from < ids.size(); from += IN_BATCH_SIZE) {
+                List<UUID> batch = ids.subList(from, Math.min(ids.size(), from + IN_BATCH_SIZE));
+                String sql = INVOICE_ITEM_SQL + " WHERE inv.invoice_uuid IN ("
+                        + "?, ".repeat(batch.size() - 1) + "?)";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setString(i + 1, batch.get(i).toString());
                     }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rows += attachInvoiceItems(rs, invoices, items);
+                    }
+                }
+                for (UUID uuid : batch) {
+                    invoices.get(uuid).setItemLoader(null);
+                }
+            }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            throw e;
+        } finally {
+            Metrics.record("db.loadInvoiceItemBatch", start);
+            event.end(rows, 0);
+        }
+    }
+
+    /**
+     * Loads all invoices without their line items. Each invoice fetches its own
+     * items the first time {@link Invoice#getItems()} is called, and knows its
+     * item count up front so counts can be reported without loading anything.
+     * To fetch the items of many invoices at once, call
+     * {@link #loadInvoiceItems(Map, Map, Collection)} first.
+     *
+     * @param persons a map of person UUIDs to Person objects
+     * @param companies a map of company UUIDs to Company objects
+     * @param items a map of item UUIDs to Item objects, used when items are fetched
+     * @return a map of invoice UUIDs to Invoice objects
+     */
+    public static Map<UUID, Invoice> loadInvoicesLazy(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                                      Map<UUID, Item> items) {
+        Map<UUID, Invoice> invoices = loadInvoices(persons, companies);
+        Map<UUID, Integer> counts = countInvoiceItems();
+        InvoiceItemLoader loader = invoice ->
+                fetchInvoiceItems(Map.of(invoice.getInvoiceId(), invoice), items, List.of(invoice.getInvoiceId()));
+        for (Invoice invoice : invoices.values()) {
+            invoice.setKnownItemCount(counts.getOrDefault(invoice.getInvoiceId(), 0));
+            invoice.setItemLoader(loader);
+        }
+        return invoices;
+    }
+
+    /**
+     * Reads the per-company totals maintained in the CompanyTotals table.
+     *
+     * @return a map of company UUIDs to totals (companies without invoices are absent)
+     */
+    public static Map<UUID, InvoiceTotals> readCompanyTotals() {
+        return readTotals(COMPANY_TOTALS_SQL, "db.readCompanyTotals");
+    }
+
+    /**
+     * Reads the per-salesperson totals maintained in the SalespersonTotals table.
+     *
+     * @return a map of person UUIDs to totals (persons without sales are absent)
+     */
+    public static Map<UUID, InvoiceTotals> readSalespersonTotals() {
+        return readTotals(SALESPERSON_TOTALS_SQL, "db.readSalespersonTotals");
+    }
+
+    /**
+     * Reads the per-day totals maintained in the DailyTotals table.
+     *
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     * @return totals by day, in date order (days without invoices are absent)
+     */
+    public static SortedMap<LocalDate, InvoiceTotals> readDailyTotals(LocalDate from, LocalDate to) {
+        SortedMap<LocalDate, InvoiceTotals> totals = new TreeMap<>();
+        long start = Metrics.start();
+        try (Connection conn = ConnectionFactory.getConnection();
+             PreparedStatement ps = conn.prepareStatement(DAILY_TOTALS_SQL)) {
+            ps.setDate(1, Date.valueOf(from));
+            ps.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    totals.put(rs.getDate(1).toLocalDate(), totals(rs));
                 }
+            }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+        } finally {
+            Metrics.record("db.readDailyTotals", start);
+        }
+        return totals;
+    }
 
-                invoice.addItem(invoiceItem);
+    private static Map<UUID, InvoiceTotals> readTotals(String sql, String metric) {
+        Map<UUID, InvoiceTotals> totals = new HashMap<>();
+        long start = Metrics.start();
+        try (Connection conn = ConnectionFactory.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                totals.put(UUID.fromString(rs.getString(1)), totals(rs));
             }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+        } finally {
+            Metrics.record(metric, start);
+        }
+        return totals;
+    }
+
+    /**
+     * Reads columns 2 to 5 of a summary row.
+     */
+    private static InvoiceTotals totals(ResultSet rs) throws SQLException {
+        return new InvoiceTotals(rs.getInt(2), rs.getInt(3), rs.getLong(4), rs.getLong(5));
+    }
 
+    /**
+     * Counts the line items of every invoice without reading them.
+     *
+     * @return a map of invoice UUIDs to item counts (invoices without items are absent)
+     */
+    public static Map<UUID, Integer> countInvoiceItems() {
+        Map<UUID, Integer> counts = new HashMap<>();
+        long start = Metrics.start();
+        try (Connection conn = ConnectionFactory.getConnection();
+             PreparedStatement ps = conn.prepareStatement(INVOICE_ITEM_COUNT_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            int invoiceColumn = rs.findColumn("invoice_uuid");
+            int countColumn = rs.findColumn("item_count");
+            while (rs.next()) {
+                counts.put(UUID.fromString(rs.getString(invoiceColumn)), rs.getInt(countColumn));
+            }
         } catch (SQLException e) {
+            Metrics.increment("db.errors");
             e.printStackTrace();
+        } finally {
+            Metrics.record("db.countInvoiceItems", start);
+        }
+        return counts;
+    }
+
+    /**
+     * Builds InvoiceItems from rows of {@link #INVOICE_ITEM_SQL} and adds them to their invoices.
+     *
+     * @return the number of items attached
+     */
+    private static int attachInvoiceItems(ResultSet rs, Map<UUID, Invoice> invoices, Map<UUID, Item> items)
+            throws SQLException {
+        int attached = 0;
+        // Collected per invoice first, so each invoice's item list is copied once
+        Map<Invoice, List<InvoiceItem>> rows = new LinkedHashMap<>();
+        RowMapper<InvoiceItem> mapper = RowMappers.invoiceItem(rs, items);
+        while (rs.next()) {
+            InvoiceItem invoiceItem = mapper.map(rs);
+            Invoice invoice = invoiceItem == null ? null : invoices.get(invoiceItem.getInvoiceId());
+            if (invoice == null) {
+                continue;
+            }
+            rows.computeIfAbsent(invoice, k -> new ArrayList<>()).add(invoiceItem);
+            attached++;
         }
+        rows.forEach(Invoice::addItems);
+        return attached;
     }
 }
@@ -14,10 +14,11 @@ public class DataConverter {
      */
     
     public static void main(String[] args) {
-    	// Load Data
-    	Map<UUID, Person> persons = CSVReaderUtil.readPersons("data/Persons.csv");
-    	Map<UUID, Company> companies = CSVReaderUtil.readCompanies("data/Companies.csv", persons);
-    	Map<UUID, Item> items = CSVReaderUtil.readItems("data/Items.csv", companies);
+    	// Load Data (from the CSV files unless vgb.repository says otherwise)
+    	InvoiceRepository repository = InvoiceRepository.fromConfig("csv");
+    	Map<UUID, Person> persons = repository.readPersons();
+    	Map<UUID, Company> companies = repository.readCompanies(persons);
+    	Map<UUID, Item> items = repository.readItems(companies);
 
         // Change the maps to lists
         List<Person> list_person = new ArrayList<>(persons.values());
@@ -0,0 +1,71 @@
+package com.vgb;
+
+/**
+ * The database engines the persistence layer can run against. The backend is
+ * chosen in {@link ConnectionFactory} from the <code>vgb.db.backend</code>
+ * setting and supplies the connection defaults and the few statements that
+ * differ between engines.
+ *
+ * H2 runs embedded and in-process in MySQL compatibility mode, so the same
+ * migrations, InvoiceData and DBReaderUtil code work offline. The H2 jar must be
+ * on the classpath to use it.
+ */
+public enum DatabaseBackend {
+
+    MYSQL("jdbc:mysql://nuros.unl.edu/sbumhe2", "sbumhe2", "Uuxoo9Yeikoh",
+            "SET FOREIGN_KEY_CHECKS = 0", "SET FOREIGN_KEY_CHECKS = 1", true),
+
+    H2("jdbc:h2:mem:vgb;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "",
+            "SET REFERENTIAL_INTEGRITY FALSE", "SET REFERENTIAL_INTEGRITY TRUE", false);
+
+    private final String defaultUrl;
+    private final String defaultUser;
+    private final String defaultPassword;
+    private final String disableForeignKeys;
+    private final String enableForeignKeys;
+    private final boolean supportsLoadData;
+
+    DatabaseBackend(String defaultUrl, String defaultUser, String defaultPassword,
+                    String disableForeignKeys, String enableForeignKeys, boolean supportsLoadData) {
+        this.defaultUrl = defaultUrl;
+        this.defaultUser = defaultUser;
+        this.defaultPassword = defaultPassword;
+        this.disableForeignKeys = disableForeignKeys;
+        this.enableForeignKeys = enableForeignKeys;
+        this.supportsLoadData = supportsLoadData;
+    }
+
+    public String getDefaultUrl() {
+        return defaultUrl;
+    }
+
+    public String getDefaultUser() {
+        return defaultUser;
+    }
+
+    public String getDefaultPassword() {
+        return defaultPassword;
+    }
+
+    /**
+     * @return statement that turns off foreign key enforcement (per session on
+     *         MySQL, database-wide on H2)
+     */
+    public String getDisableForeignKeys() {
+        return disableForeignKeys;
+    }
+
+    /**
+     * @return statement that turns foreign key enforcement back on
+     */
+    public String getEnableForeignKeys() {
+        return enableForeignKeys;
+    }
+
+    /**
+     * @return true if the engine accepts <code>LOAD DATA LOCAL INFILE</code>
+     */
+    public boolean supportsLoadData() {
+        return supportsLoadData;
+    }
+}
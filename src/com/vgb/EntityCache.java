@@ -0,0 +1,189 @@
+package com.vgb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, thread-safe cache with least-recently-used eviction and a
+ * time-to-live per entry. Besides single entries it can hold a complete
+ * snapshot of a table, which is served by {@link #snapshot()} until it expires
+ * or any of its entries is evicted or invalidated.
+ *
+ * Hit, miss and eviction counts are kept for reporting.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class EntityCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    // True while the entries hold every row of the backing table
+    private boolean complete;
+    private long completeLoadedAt;
+
+    // Bumped by every invalidation so loads that raced with a write are not cached
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param name       label used in statistics
+     * @param maxSize    maximum number of entries; 0 disables caching
+     * @param ttlSeconds how long an entry stays valid after it is loaded
+     */
+    public EntityCache(String name, int maxSize, long ttlSeconds) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions++;
+                    complete = false;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or null if it is absent or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || isExpired(entry.loadedAt)) {
+            if (entry != null) {
+                entries.remove(key);
+                complete = false;
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value, loading and caching it on a miss. The loader
+     * runs outside the cache lock; a null result is not cached.
+     */
+    public V get(K key, Function<K, V> loader) {
+        long loadGeneration = generation();
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value, loadGeneration);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #put} or
+     *         {@link #putAll} by a loader that reads before it caches
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a value unless the cache was invalidated since <code>loadGeneration</code>.
+     */
+    public synchronized void put(K key, V value, long loadGeneration) {
+        if (maxSize > 0 && loadGeneration == generation) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Caches every row of a table so later full reads can use {@link #snapshot()},
+     * unless the cache was invalidated since <code>loadGeneration</code>.
+     */
+    public synchronized void putAll(Map<K, V> all, long loadGeneration) {
+        if (maxSize == 0 || loadGeneration != generation) return;
+        long now = System.nanoTime();
+        entries.clear();
+        complete = true;
+        for (Map.Entry<K, V> e : all.entrySet()) {
+            entries.put(e.getKey(), new Entry<>(e.getValue(), now));
+        }
+        completeLoadedAt = now;
+    }
+
+    /**
+     * Returns a copy of the complete table, or null if the cache does not hold
+     * one that is still valid.
+     */
+    public synchronized Map<K, V> snapshot() {
+        if (!complete || isExpired(completeLoadedAt)) {
+            complete = false;
+            misses++;
+            return null;
+        }
+        hits++;
+        Map<K, V> copy = new HashMap<>();
+        for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+            copy.put(e.getKey(), e.getValue().value);
+        }
+        return copy;
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+        complete = false;
+        generation++;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        complete = false;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private boolean isExpired(long loadedAt) {
+        return System.nanoTime() - loadedAt > ttlNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%-10s size=%d hits=%d misses=%d evictions=%d",
+                name, entries.size(), hits, misses, evictions);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
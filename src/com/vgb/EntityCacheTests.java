@@ -0,0 +1,53 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class EntityCacheTests {
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        EntityCache<String, Integer> cache = new EntityCache<>("test", 2, 60);
+        cache.put("a", 1, cache.generation());
+        cache.put("b", 2, cache.generation());
+        cache.get("a");                        // "b" is now least recently used
+        cache.put("c", 3, cache.generation());
+
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testSnapshotIsDroppedByInvalidation() {
+        EntityCache<String, Integer> cache = new EntityCache<>("test", 10, 60);
+        cache.putAll(Map.of("a", 1, "b", 2), cache.generation());
+        assertEquals(Map.of("a", 1, "b", 2), cache.snapshot());
+
+        cache.invalidate("a");
+        assertNull(cache.snapshot());
+        assertEquals(2, cache.get("b"));
+    }
+
+    @Test
+    public void testLoadThatRacedWithInvalidationIsNotCached() {
+        EntityCache<String, Integer> cache = new EntityCache<>("test", 10, 60);
+        long generation = cache.generation();
+        cache.invalidateAll();                 // a write lands while the load is running
+        cache.putAll(Map.of("a", 1), generation);
+
+        assertNull(cache.snapshot());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testExpiredEntriesMiss() {
+        EntityCache<String, Integer> cache = new EntityCache<>("test", 10, 0);
+        cache.put("a", 1, cache.generation());
+        assertNull(cache.get("a", key -> null));
+        assertEquals(1, cache.getMisses());
+    }
+}
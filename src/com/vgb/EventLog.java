@@ -0,0 +1,424 @@
+package com.vgb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of change events, written to memory-mapped segment files
+ * so consumers can follow new data with sequential reads instead of polling
+ * the database. {@link InvoiceData} appends an event for every insert when
+ * <code>vgb.eventlog.enabled</code> is set; the bulk load paths
+ * ({@link BulkLoader}, {@link InvoiceItemIngester}) do not.
+ *
+ * Every event gets the next sequence number, starting at 1. A segment is a
+ * file of fixed size named after the sequence number of its first event
+ * (<code>00000000000000000001.log</code>); when an event does not fit, the
+ * log moves on to a new segment. Each record is
+ * <pre>
+ *   int length | int crc32 | long sequence | payload (length bytes)
+ * </pre>
+ * where the payload is the event type and fields as length-prefixed UTF-8
+ * strings. The length is written last, so a reader never sees a record whose
+ * length is set but whose body is not, and a zero length marks the end of the
+ * written part of a segment. Opening a log drops a torn record at the end of
+ * the last segment, left by a crash mid-append.
+ *
+ * When appended events reach the disk follows the fsync policy:
+ * <code>always</code> forces every append, <code>interval</code> forces when
+ * the last force is older than <code>vgb.eventlog.fsyncMillis</code>, and
+ * <code>never</code> leaves it to the operating system (and to rollover and
+ * close, which always force).
+ *
+ * Consumers read with a {@link Reader}, starting at any sequence number and
+ * polling for events as they are appended. Running this class tails the
+ * configured log to standard output.
+ */
+public class EventLog implements AutoCloseable {
+
+    public enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".log";
+
+    private static EventLog shared;
+    private static boolean sharedOpened;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsync;
+    private final long fsyncNanos;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long lastForce = System.nanoTime();
+    private boolean dirty;
+
+    /**
+     * Opens the log in a directory, creating it if needed, and positions at
+     * the end of the last segment.
+     */
+    public EventLog(Path dir, int segmentBytes, FsyncPolicy fsync, long fsyncMillis) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.fsyncNanos = fsyncMillis * 1_000_000L;
+        Files.createDirectories(dir);
+
+        List<Long> segments = segments(dir);
+        long base = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        openSegment(base);
+        recover(base);
+    }
+
+    /**
+     * Returns the log configured by <code>vgb.eventlog.*</code>, opening it on
+     * first use, or null if it is disabled or cannot be opened.
+     */
+    public static synchronized EventLog shared() {
+        if (!sharedOpened) {
+            sharedOpened = true;
+            if (Config.getBoolean("vgb.eventlog.enabled", false)) {
+                try {
+                    shared = new EventLog(Paths.get(Config.get("vgb.eventlog.dir", "eventlog")),
+                            Config.getInt("vgb.eventlog.segmentMB", 64) << 20,
+                            FsyncPolicy.valueOf(Config.get("vgb.eventlog.fsync", "interval").toUpperCase()),
+                            Config.getLong("vgb.eventlog.fsyncMillis", 100));
+                    EventLog log = shared;
+                    Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+                } catch (IOException e) {
+                    System.err.println("Event log disabled: " + e.getMessage());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Tails the configured log, printing every event from the sequence
+     * number given as the first argument (default 1).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long from = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        try (Reader reader = new Reader(Paths.get(Config.get("vgb.eventlog.dir", "eventlog")), from)) {
+            while (true) {
+                Event event = reader.next();
+                if (event == null) {
+                    Thread.sleep(100);
+                } else {
+                    System.out.println(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends an event.
+     *
+     * @param type   what happened, e.g. <code>invoice</code>
+     * @param fields the event's values, in an order fixed per type
+     * @return the event's sequence number
+     */
+    public synchronized long append(String type, String... fields) throws IOException {
+        long start = Metrics.start();
+        try {
+            byte[] payload = encode(type, fields);
+            int size = HEADER_BYTES + payload.length;
+            if (size > segmentBytes) {
+                throw new IllegalArgumentException("Event of " + size + " bytes exceeds the segment size");
+            }
+            if (segment.position() + size > segmentBytes) {
+                force();
+                channel.close();
+                openSegment(nextSequence);
+            }
+
+            long sequence = nextSequence++;
+            int position = segment.position();
+            segment.putLong(position + 8, sequence);
+            segment.put(position + HEADER_BYTES, payload);
+            segment.putInt(position + 4, crc(sequence, payload));
+            segment.putInt(position, payload.length);
+            segment.position(position + size);
+            dirty = true;
+
+            if (fsync == FsyncPolicy.ALWAYS
+                    || (fsync == FsyncPolicy.INTERVAL && System.nanoTime() - lastForce >= fsyncNanos)) {
+                force();
+            }
+            return sequence;
+        } finally {
+            Metrics.record("eventlog.append", start);
+        }
+    }
+
+    /**
+     * Writes appended events of the current segment to disk.
+     */
+    public synchronized void force() {
+        if (dirty) {
+            long start = Metrics.start();
+            segment.force();
+            dirty = false;
+            Metrics.record("eventlog.fsync", start);
+        }
+        lastForce = System.nanoTime();
+    }
+
+    /**
+     * The sequence number the next appended event will get.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel.isOpen()) {
+            force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void openSegment(long base) throws IOException {
+        channel = FileChannel.open(segmentPath(dir, base), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        nextSequence = base;
+    }
+
+    /**
+     * Moves past the valid records of the current segment, zeroing the rest
+     * of it if a torn record follows them.
+     */
+    private void recover(long base) {
+        int position = 0;
+        long sequence = base;
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = segment.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > segmentBytes
+                    || segment.getLong(position + 8) != sequence
+                    || segment.getInt(position + 4) != crc(sequence, payload(segment, position, length))) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            sequence++;
+        }
+        if (position + 4 <= segmentBytes && segment.getInt(position) != 0) {
+            System.err.println("Event log: dropping torn record after sequence " + (sequence - 1));
+            for (int i = position; i < segmentBytes; i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.force();
+        }
+        segment.position(position);
+        nextSequence = sequence;
+    }
+
+    static Path segmentPath(Path dir, long base) {
+        return dir.resolve(String.format("%020d", base) + SUFFIX);
+    }
+
+    /**
+     * Base sequence numbers of the segments in a directory, in order.
+     */
+    static List<Long> segments(Path dir) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return bases;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                }
+            }
+        }
+        bases.sort(null);
+        return bases;
+    }
+
+    private static byte[] encode(String type, String[] fields) {
+        byte[][] strings = new byte[fields.length + 1][];
+        strings[0] = type.getBytes(StandardCharsets.UTF_8);
+        int size = 2 + 4 + strings[0].length;
+        for (int i = 0; i < fields.length; i++) {
+            strings[i + 1] = (fields[i] == null ? "" : fields[i]).getBytes(StandardCharsets.UTF_8);
+            size += 4 + strings[i + 1].length;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        payload.putShort((short) strings.length);
+        for (byte[] string : strings) {
+            payload.putInt(string.length);
+            payload.put(string);
+        }
+        return payload.array();
+    }
+
+    private static byte[] payload(ByteBuffer segment, int position, int length) {
+        byte[] payload = new byte[length];
+        segment.get(position + HEADER_BYTES, payload);
+        return payload;
+    }
+
+    private static int crc(long sequence, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, sequence));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * One logged change.
+     */
+    public static class Event {
+        private final long sequence;
+        private final String type;
+        private final List<String> fields;
+
+        Event(long sequence, byte[] payload) {
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            int count = in.getShort();
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] string = new byte[in.getInt()];
+                in.get(string);
+                strings.add(new String(string, StandardCharsets.UTF_8));
+            }
+            this.sequence = sequence;
+            this.type = strings.get(0);
+            this.fields = List.copyOf(strings.subList(1, count));
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public List<String> getFields() {
+            return fields;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + " " + type + " " + String.join(",", fields);
+        }
+    }
+
+    /**
+     * Reads a log in order from a given sequence number, following it as
+     * events are appended, possibly by another process. Not thread-safe; use
+     * one reader per consumer.
+     */
+    public static class Reader implements AutoCloseable {
+        private final Path dir;
+        private final long from;
+        private FileChannel channel;
+        private MappedByteBuffer segment;
+        private long base = -1;
+        private int position;
+
+        public Reader(Path dir, long fromSequence) {
+            this.dir = dir;
+            this.from = fromSequence;
+        }
+
+        /**
+         * Returns the next event, or null if the reader has caught up with
+         * the writer; call again later to continue.
+         */
+        public Event next() throws IOException {
+            while (true) {
+                if (segment == null && !open()) {
+                    return null;
+                }
+                if (position + HEADER_BYTES <= segment.capacity()) {
+                    int length = segment.getInt(position);
+                    if (length > 0 && position + HEADER_BYTES + length <= segment.capacity()) {
+                        long sequence = segment.getLong(position + 8);
+                        byte[] payload = payload(segment, position, length);
+                        if (segment.getInt(position + 4) != crc(sequence, payload)) {
+                            // Still being written
+                            return null;
+                        }
+                        position += HEADER_BYTES + length;
+                        if (sequence >= from) {
+                            return new Event(sequence, payload);
+                        }
+                        continue;
+                    }
+                }
+                // Nothing more here: move on if the writer has started a later segment
+                Long later = null;
+                for (long segmentBase : segments(dir)) {
+                    if (segmentBase > base) {
+                        later = segmentBase;
+                        break;
+                    }
+                }
+                if (later == null) {
+                    if (Files.size(segmentPath(dir, base)) > segment.capacity()) {
+                        map(base);
+                        continue;
+                    }
+                    return null;
+                }
+                map(later);
+                position = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        /**
+         * Maps the last segment starting at or before the first wanted
+         * sequence number, or the first segment.
+         */
+        private boolean open() throws IOException {
+            List<Long> bases = segments(dir);
+            if (bases.isEmpty()) {
+                return false;
+            }
+            long start = bases.get(0);
+            for (long segmentBase : bases) {
+                if (segmentBase <= from) {
+                    start = segmentBase;
+                }
+            }
+            map(start);
+            position = 0;
+            return true;
+        }
+
+        private void map(long segmentBase) throws IOException {
+            close();
+            channel = FileChannel.open(segmentPath(dir, segmentBase), StandardOpenOption.READ);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            base = segmentBase;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventLogTests {
+
+    @Test
+    public void testReaderFollowsAppendsAcrossSegmentsAndReopens() throws Exception {
+        Path dir = Files.createTempDirectory("eventlog");
+        List<String> read = new ArrayList<>();
+        try (EventLog log = new EventLog(dir, 256, EventLog.FsyncPolicy.NEVER, 0);
+             EventLog.Reader reader = new EventLog.Reader(dir, 1)) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i + 1, log.append("invoice", "uuid-" + i, "2025-01-01"));
+                if (i % 3 == 0) {
+                    for (EventLog.Event event = reader.next(); event != null; event = reader.next()) {
+                        read.add(event.getSequence() + ":" + event.getFields().get(0));
+                    }
+                }
+            }
+            for (EventLog.Event event = reader.next(); event != null; event = reader.next()) {
+                read.add(event.getSequence() + ":" + event.getFields().get(0));
+            }
+        }
+        assertTrue(EventLog.segments(dir).size() > 1);
+        assertEquals(20, read.size());
+        assertEquals("20:uuid-19", read.get(19));
+
+        try (EventLog log = new EventLog(dir, 256, EventLog.FsyncPolicy.ALWAYS, 0);
+             EventLog.Reader reader = new EventLog.Reader(dir, 15)) {
+            assertEquals(21, log.append("person", "p", null));
+            EventLog.Event event = reader.next();
+            assertEquals(15, event.getSequence());
+            assertEquals("uuid-14", event.getFields().get(0));
+            int remaining = 0;
+            while ((event = reader.next()) != null) {
+                remaining++;
+                if (event.getSequence() == 21) {
+                    assertEquals("person", event.getType());
+                    assertEquals(List.of("p", ""), event.getFields());
+                }
+            }
+            assertEquals(6, remaining);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.vgb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write-ahead journal of a {@link CsvImporter} run, kept in a local text
+ * file so an import that dies can resume where it stopped. Each entry is one
+ * line, forced to disk before the step it announces goes ahead:
+ * <pre>
+ *   import &lt;bytes&gt; &lt;file&gt;             an import of that InvoiceItems CSV started
+ *   loaded                          reference data and invoices are committed
+ *   begin &lt;from&gt; &lt;to&gt; &lt;highWater&gt;   the rows in bytes [from, to) are being committed;
+ *                                   highWater is the largest invoiceItemId before them
+ *   commit &lt;to&gt;                     that batch is committed
+ *   done                            the import finished
+ * </pre>
+ * A batch with a <code>begin</code> and no <code>commit</code> may or may not
+ * have committed before the crash; {@link #getPending()} returns it so the
+ * importer can check the table against its high-water mark.
+ *
+ * Opening a journal replays it and cuts off a torn last line. A journal is
+ * written by one import at a time.
+ */
+public class ImportJournal implements AutoCloseable {
+
+    private final FileChannel channel;
+    private String source;
+    private long sourceBytes = -1;
+    private boolean loaded;
+    private long offset;
+    private Pending pending;
+    private boolean done;
+
+    private ImportJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a journal, creating it if it does not exist, and recovers the
+     * state of the import it records.
+     */
+    public static ImportJournal open(Path path) throws IOException {
+        ImportJournal journal = new ImportJournal(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try {
+            journal.replay(Files.readAllBytes(path));
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Whether an unfinished import of the given file, unchanged since it
+     * started, can be resumed.
+     */
+    public boolean canResume(String file, long bytes) {
+        return source != null && !done && source.equals(file) && sourceBytes == bytes;
+    }
+
+    /**
+     * Discards the journal and records the start of a new import.
+     */
+    public void start(String file, long bytes) throws IOException {
+        channel.truncate(0);
+        source = file;
+        sourceBytes = bytes;
+        loaded = false;
+        offset = 0;
+        pending = null;
+        done = false;
+        append("import " + bytes + " " + file);
+    }
+
+    public void loaded() throws IOException {
+        append("loaded");
+        loaded = true;
+    }
+
+    public void begin(long from, long to, long highWater) throws IOException {
+        append("begin " + from + " " + to + " " + highWater);
+        pending = new Pending(from, to, highWater);
+    }
+
+    public void commit(long to) throws IOException {
+        append("commit " + to);
+        offset = to;
+        pending = null;
+    }
+
+    public void done() throws IOException {
+        append("done");
+        done = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * The byte offset in the InvoiceItems CSV up to which every row is
+     * committed, or 0 if no batch is.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * The batch that was begun but not recorded as committed, or null.
+     */
+    public Pending getPending() {
+        return pending;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void append(String entry) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((entry + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            channel.write(line, channel.size());
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Applies the complete entries in order and truncates the file after the
+     * last one.
+     */
+    private void replay(byte[] content) throws IOException {
+        int end = 0;
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            if (!apply(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8))) {
+                break;
+            }
+            end = i + 1;
+            lineStart = i + 1;
+        }
+        if (end < content.length) {
+            System.err.println("Import journal: dropping " + (content.length - end) + " bytes of torn entries");
+            channel.truncate(end);
+            channel.force(false);
+        }
+    }
+
+    private boolean apply(String line) {
+        String[] entry = line.split(" ");
+        try {
+            switch (entry[0]) {
+                case "import":
+                    entry = line.split(" ", 3);
+                    sourceBytes = Long.parseLong(entry[1]);
+                    source = entry[2];
+                    return true;
+                case "loaded":
+                    loaded = true;
+                    return true;
+                case "begin":
+                    pending = new Pending(Long.parseLong(entry[1]), Long.parseLong(entry[2]), Long.parseLong(entry[3]));
+                    return true;
+                case "commit":
+                    offset = Long.parseLong(entry[1]);
+                    pending = null;
+                    return true;
+                case "done":
+                    done = true;
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A batch of InvoiceItems CSV rows that was being committed.
+     */
+    public static class Pending {
+        private final long from;
+        private final long to;
+        private final long highWater;
+
+        Pending(long from, long to, long highWater) {
+            this.from = from;
+            this.to = to;
+            this.highWater = highWater;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * The largest invoiceItemId before the batch; the batch committed if
+         * the table now holds a larger one.
+         */
+        public long getHighWater() {
+            return highWater;
+        }
+    }
+}
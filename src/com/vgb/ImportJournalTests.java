@@ -0,0 +1,124 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class ImportJournalTests {
+
+    @Test
+    public void testReplayKeepsLastCommitAndPendingBatchAndDropsTornEntry() throws Exception {
+        Path path = Files.createTempFile("import", ".journal");
+        try (ImportJournal journal = ImportJournal.open(path)) {
+            journal.start("data dir/InvoiceItems.csv", 1000);
+            journal.loaded();
+            journal.begin(31, 400, 0);
+            journal.commit(400);
+            journal.begin(400, 800, 120);
+        }
+        Files.writeString(path, "commit 8", StandardOpenOption.APPEND);
+
+        try (ImportJournal journal = ImportJournal.open(path)) {
+            assertTrue(journal.canResume("data dir/InvoiceItems.csv", 1000));
+            assertFalse(journal.canResume("data dir/InvoiceItems.csv", 1200));
+            assertTrue(journal.isLoaded());
+            assertEquals(400, journal.getOffset());
+            assertEquals(800, journal.getPending().getTo());
+            assertEquals(120, journal.getPending().getHighWater());
+
+            journal.commit(800);
+            journal.done();
+        }
+        try (ImportJournal journal = ImportJournal.open(path)) {
+            assertEquals(800, journal.getOffset());
+            assertNull(journal.getPending());
+            assertFalse(journal.canResume("data dir/InvoiceItems.csv", 1000));
+        }
+    }
+
+    @Test
+    public void testResumedImportKeepsRejectsWithoutRepeatingThem(@TempDir Path dir) throws Exception {
+        assumeTrue(ConnectionFactory.getBackend() == DatabaseBackend.H2, "needs the H2 backend");
+        for (String name : new String[] {"Persons.csv", "Companies.csv", "Items.csv", "Invoices.csv", "InvoiceItems.csv"}) {
+            Files.copy(Paths.get("data", name), dir.resolve(name));
+        }
+        Files.writeString(dir.resolve("Items.csv"), "not-a-uuid,M,Sand,ton,2\n", StandardOpenOption.APPEND);
+        // One bad row in the first batch and two at the end
+        List<String> lines = new ArrayList<>(Files.readAllLines(dir.resolve("InvoiceItems.csv")));
+        String[] first = lines.get(1).split(",");
+        lines.add(1, first[0] + "," + first[1] + ",R,many");
+        lines.add(first[0] + ",not-a-uuid,P");
+        lines.add(first[0] + "," + first[1] + ",L,2025-01-01");
+        Files.write(dir.resolve("InvoiceItems.csv"), lines);
+        Path rejects = dir.resolve("rejects.csv");
+        Path journalPath = dir.resolve("import.journal");
+
+        CsvRejects.redirect(rejects);
+        try {
+            try (ImportJournal journal = ImportJournal.open(journalPath)) {
+                assertTrue(CsvImporter.run(dir, journal, 2));
+            }
+            List<String> complete = Files.readAllLines(rejects);
+            assertEquals(5, complete.size());
+
+            // As if the import had died after its first batch: the journal up to
+            // that commit, and the rejects of the reference files and that batch
+            List<String> entries = new ArrayList<>();
+            for (String entry : Files.readAllLines(journalPath)) {
+                entries.add(entry);
+                if (entry.startsWith("commit")) {
+                    break;
+                }
+            }
+            Files.write(journalPath, entries);
+            Files.write(rejects, complete.subList(0, 3));
+
+            CsvRejects.redirect(rejects);
+            try (ImportJournal journal = ImportJournal.open(journalPath)) {
+                assertTrue(journal.canResume(dir.resolve("InvoiceItems.csv").toString(),
+                        Files.size(dir.resolve("InvoiceItems.csv"))));
+                assertTrue(CsvImporter.run(dir, journal, 2));
+            }
+            assertEquals(complete, Files.readAllLines(rejects));
+        } finally {
+            CsvRejects.redirect(null);
+        }
+    }
+
+    @Test
+    public void testLineItemsOfUnknownInvoicesGoToTheRejectFile(@TempDir Path dir) throws Exception {
+        assumeTrue(ConnectionFactory.getBackend() == DatabaseBackend.H2, "needs the H2 backend");
+        for (String name : new String[] {"Persons.csv", "Companies.csv", "Items.csv", "Invoices.csv", "InvoiceItems.csv"}) {
+            Files.copy(Paths.get("data", name), dir.resolve(name));
+        }
+        List<String> lines = new ArrayList<>(Files.readAllLines(dir.resolve("InvoiceItems.csv")));
+        String[] first = lines.get(1).split(",");
+        UUID unknown = UUID.randomUUID();
+        String dangling = unknown + "," + first[1] + ",R,3";
+        String malformed = first[0] + "," + first[1] + ",R,many";
+        lines.add(2, dangling);
+        lines.add(3, malformed);
+        Files.write(dir.resolve("InvoiceItems.csv"), lines);
+        Path rejects = dir.resolve("rejects.csv");
+
+        CsvRejects.redirect(rejects);
+        try (ImportJournal journal = ImportJournal.open(dir.resolve("import.journal"))) {
+            assertTrue(CsvImporter.run(dir, journal, 4));
+        } finally {
+            CsvRejects.redirect(null);
+        }
+        List<String> written = Files.readAllLines(rejects);
+        assertEquals(3, written.size());
+        assertTrue(written.get(1).endsWith(",unknown invoice " + unknown + "," + dangling), written.get(1));
+        assertTrue(written.get(2).endsWith("," + malformed), written.get(2));
+    }
+}
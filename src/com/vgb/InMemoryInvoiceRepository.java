@@ -0,0 +1,86 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An object graph held in memory, e.g. a snapshot of another repository taken
+ * with {@link #copyOf(InvoiceRepository)}. Reads return the held maps without
+ * copying them and ignore their arguments, since the graph is already
+ * connected; the maps are unmodifiable but the objects in them are shared.
+ *
+ * An {@link InvoiceIndex} over the invoices is built with the repository, so
+ * lookups by company, salesperson, item and date range do not scan every
+ * invoice; date range reads use it too.
+ */
+public class InMemoryInvoiceRepository implements InvoiceRepository {
+
+    private final Map<UUID, Person> persons;
+    private final Map<UUID, Company> companies;
+    private final Map<UUID, Item> items;
+    private final Map<UUID, Invoice> invoices;
+    private final InvoiceIndex index;
+
+    public InMemoryInvoiceRepository(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                     Map<UUID, Item> items, Map<UUID, Invoice> invoices) {
+        this.persons = Collections.unmodifiableMap(persons);
+        this.companies = Collections.unmodifiableMap(companies);
+        this.items = Collections.unmodifiableMap(items);
+        this.invoices = Collections.unmodifiableMap(invoices);
+        this.index = new InvoiceIndex(invoices.values());
+    }
+
+    /**
+     * Reads everything from the source once.
+     */
+    public static InMemoryInvoiceRepository copyOf(InvoiceRepository source) {
+        Map<UUID, Person> persons = source.readPersons();
+        Map<UUID, Company> companies = source.readCompanies(persons);
+        Map<UUID, Item> items = source.readItems(companies);
+        Map<UUID, Invoice> invoices = source.readInvoices(persons, companies, items);
+        return new InMemoryInvoiceRepository(persons, companies, items, invoices);
+    }
+
+    @Override
+    public Map<UUID, Person> readPersons() {
+        return persons;
+    }
+
+    @Override
+    public Map<UUID, Company> readCompanies(Map<UUID, Person> persons) {
+        return companies;
+    }
+
+    @Override
+    public Map<UUID, Item> readItems(Map<UUID, Company> companies) {
+        return items;
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items) {
+        return invoices;
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items, LocalDate from, LocalDate to) {
+        Map<UUID, Invoice> range = new HashMap<>();
+        for (Invoice invoice : index.between(from, to)) {
+            range.put(invoice.getInvoiceId(), invoice);
+        }
+        return range;
+    }
+
+    public InvoiceIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "memory";
+    }
+}
@@ -1,23 +1,30 @@
 package com.vgb;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Invoice {
     private UUID invoiceId;
     private Company company;
     private Person salesperson;
     private LocalDate date;
-    private List<InvoiceItem> items;
+    // Copy-on-write, so items can be added while other threads iterate
+    private final List<InvoiceItem> items;
+
+    // When set, items have not been fetched yet; cleared once they have been
+    private volatile InvoiceItemLoader itemLoader;
+    private int knownItemCount = -1;
 
     public Invoice(UUID invoiceId, Company company, Person salesperson, LocalDate date) {
         this.invoiceId = invoiceId;
         this.company = company;
         this.salesperson = salesperson;
         this.date = date;
-        this.items = new ArrayList<>();
+        this.items = new CopyOnWriteArrayList<>();
     }
 
     // Add an item to the invoice
@@ -25,6 +32,14 @@ public class Invoice {
         items.add(item);
     }
 
+    /**
+     * Adds several items with a single copy of the item list; loaders should
+     * prefer this to one {@link #addItem} per row.
+     */
+    public void addItems(Collection<InvoiceItem> added) {
+        items.addAll(added);
+    }
+
     public UUID getInvoiceId() {
         return invoiceId;
     }
@@ -41,13 +56,78 @@ public class Invoice {
         return date;
     }
 
+    /**
+     * Whether the invoice is dated within the range; a null bound is open.
+     *
+     * @param from first date included
+     * @param to   last date included
+     */
+    public boolean isDatedBetween(LocalDate from, LocalDate to) {
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    /**
+     * Returns the line items, fetching them first if they are loaded lazily.
+     * Iterating the list is safe while items are being added; an iteration
+     * sees the items present when it started.
+     *
+     * @throws IllegalStateException if lazily loaded items cannot be read
+     */
     public List<InvoiceItem> getItems() {
+        if (itemLoader != null) {
+            ensureItemsLoaded();
+        }
         return items;
     }
 
+    /**
+     * Defers loading of the line items until they are first requested.
+     *
+     * @param loader fetches and attaches the items
+     */
+    public void setItemLoader(InvoiceItemLoader loader) {
+        this.itemLoader = loader;
+    }
+
+    /**
+     * Records the number of line items so it can be reported without loading them.
+     */
+    public void setKnownItemCount(int count) {
+        this.knownItemCount = count;
+    }
+
+    /**
+     * @return true once the line items are in memory
+     */
+    public boolean isItemsLoaded() {
+        return itemLoader == null;
+    }
+
+    /**
+     * Returns the number of line items, without loading them when the count is already known.
+     */
+    public int getItemCount() {
+        if (!isItemsLoaded() && knownItemCount >= 0) {
+            return knownItemCount;
+        }
+        return getItems().size();
+    }
+
+    private synchronized void ensureItemsLoaded() {
+        InvoiceItemLoader loader = itemLoader;
+        if (loader != null) {
+            try {
+                loader.load(this);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot load the items of invoice " + invoiceId, e);
+            }
+            itemLoader = null;
+        }
+    }
+
     public double getSubtotal() {
         double subtotal = 0.0;
-        for (InvoiceItem item : items) {
+        for (InvoiceItem item : getItems()) {
             subtotal += item.getSubtotal();
         }
         return subtotal;
@@ -55,7 +135,7 @@ public class Invoice {
 
     public double getTotalTax() {
         double tax = 0.0;
-        for (InvoiceItem item : items) {
+        for (InvoiceItem item : getItems()) {
             tax += item.getTax();
         }
         return tax;
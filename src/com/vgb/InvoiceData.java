@@ -1,5 +1,6 @@
 package com.vgb;
 
+import java.io.IOException;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.UUID;
@@ -10,28 +11,89 @@ import java.util.UUID;
  * This is a collection of utility methods that define a general API for
  * interacting with the database supporting this application.
  *
+ * Calls made inside a {@link StatementSession} reuse its connection and
+ * prepared statements instead of opening and preparing their own.
  */
 
 public class InvoiceData {
+
+    // UUID -> surrogate key lookups; package-private so tests can EXPLAIN them
+    static final String PERSON_ID_SQL = "SELECT personid FROM Person WHERE person_uuid = ?";
+    static final String COMPANY_ID_SQL = "SELECT companyid FROM Company WHERE company_uuid = ?";
+
+    /** All application tables, children before parents. */
+    static final String[] TABLES = {
+        "CompanyTotals", "SalespersonTotals", "DailyTotals",
+        "InvoiceItems", "Invoice", "Item", "Company", "Email", "Person", "Address"
+    };
 	
 	/**
 	 * Removes all records from all tables in the database.
 	 */
 
     public static void clearDatabase() {
-        try (Connection conn = ConnectionFactory.getConnection();
-             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate("DELETE FROM InvoiceItems");
-            stmt.executeUpdate("DELETE FROM Invoice");
-            stmt.executeUpdate("DELETE FROM Item");
-            stmt.executeUpdate("DELETE FROM Company");
-            stmt.executeUpdate("DELETE FROM Email");
-            stmt.executeUpdate("DELETE FROM Person");
-            stmt.executeUpdate("DELETE FROM Address");
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> run("db.clearDatabase", session -> {
+            try (Statement stmt = session.getConnection().createStatement()) {
+                for (String table : SummaryTables.TABLES) {
+                    stmt.executeUpdate("DELETE FROM " + table);
+                }
+                stmt.executeUpdate("DELETE FROM InvoiceItems");
+                stmt.executeUpdate("DELETE FROM Invoice");
+                stmt.executeUpdate("DELETE FROM Item");
+                stmt.executeUpdate("DELETE FROM Company");
+                stmt.executeUpdate("DELETE FROM Email");
+                stmt.executeUpdate("DELETE FROM Person");
+                stmt.executeUpdate("DELETE FROM Address");
+            }
+        }));
+        ReferenceDataCache.invalidateAll();
     }
+
+    /**
+     * Bulk reset: empties every table with <code>TRUNCATE</code> instead of
+     * row-by-row deletes. Foreign key checks are disabled while truncating so
+     * the tables can be truncated child-first without constraint errors, and
+     * re-enabled before the connection is released.
+     */
+    public static void truncateDatabase() {
+        logged(() -> run("db.truncateDatabase", session -> {
+            try (Statement stmt = session.getConnection().createStatement()) {
+                stmt.execute(ConnectionFactory.getBackend().getDisableForeignKeys());
+                try {
+                    for (String table : TABLES) {
+                        stmt.executeUpdate("TRUNCATE TABLE " + table);
+                    }
+                } finally {
+                    stmt.execute(ConnectionFactory.getBackend().getEnableForeignKeys());
+                }
+            }
+        }));
+        ReferenceDataCache.invalidateAll();
+    }
+
+    /**
+     * Drops every table and rebuilds the schema from the migration scripts.
+     * This is the heaviest reset: it also discards indexes and auto-increment
+     * counters, and leaves the schema at the latest migration version.
+     */
+    public static void recreateDatabase() {
+        logged(() -> run("db.recreateDatabase", session -> {
+            try (Statement stmt = session.getConnection().createStatement()) {
+                stmt.execute(ConnectionFactory.getBackend().getDisableForeignKeys());
+                try {
+                    for (String table : TABLES) {
+                        stmt.executeUpdate("DROP TABLE IF EXISTS " + table);
+                    }
+                    stmt.executeUpdate("DROP TABLE IF EXISTS schema_version");
+                } finally {
+                    stmt.execute(ConnectionFactory.getBackend().getEnableForeignKeys());
+                }
+                SchemaMigrator.migrate(session.getConnection());
+            }
+        }));
+        ReferenceDataCache.invalidateAll();
+    }
+
     /**
 	 * Method to add a person record to the database with the provided data.
 	 *
@@ -42,17 +104,7 @@ public class InvoiceData {
 	 */
 
     public static void addPerson(UUID personUuid, String firstName, String lastName, String phone) {
-        String sql = "INSERT INTO Person (person_uuid, first_name, last_name, phone) VALUES (?, ?, ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, personUuid.toString());
-            ps.setString(2, firstName);
-            ps.setString(3, lastName);
-            ps.setString(4, phone);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addPerson(personUuid, firstName, lastName, phone));
     }
     /**
 	 * Adds an email record corresponding person record corresponding to the
@@ -62,15 +114,7 @@ public class InvoiceData {
 	 * @param email
 	 */
     public static void addEmail(UUID personUuid, String email) {
-        String sql = "INSERT INTO Email (person_uuid, email_address) VALUES (?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, personUuid.toString());
-            ps.setString(2, email);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addEmail(personUuid, email));
     }
     
 	/**
@@ -87,34 +131,7 @@ public class InvoiceData {
 	 */
 
     public static void addCompany(UUID companyUuid, UUID contactUuid, String name, String street, String city, String state, String zip) {
-        String addressSql = "INSERT INTO Address (street, city, state, postal_code) VALUES (?, ?, ?, ?)";
-        String companySql = "INSERT INTO Company (company_uuid, company_name, contactid, addressid) VALUES (?, ?, ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection()) {
-            // Insert address
-            int addressId;
-            try (PreparedStatement addrPs = conn.prepareStatement(addressSql, Statement.RETURN_GENERATED_KEYS)) {
-                addrPs.setString(1, street);
-                addrPs.setString(2, city);
-                addrPs.setString(3, state);
-                addrPs.setString(4, zip);
-                addrPs.executeUpdate();
-                ResultSet rs = addrPs.getGeneratedKeys();
-                if (rs.next()) addressId = rs.getInt(1);
-                else throw new SQLException("Failed to get generated address ID");
-            }
-
-            int contactId = getPersonId(contactUuid);
-
-            try (PreparedStatement compPs = conn.prepareStatement(companySql)) {
-                compPs.setString(1, companyUuid.toString());
-                compPs.setString(2, name);
-                compPs.setInt(3, contactId);
-                compPs.setInt(4, addressId);
-                compPs.executeUpdate();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addCompany(companyUuid, contactUuid, name, street, city, state, zip));
     }
     
     /**
@@ -127,17 +144,7 @@ public class InvoiceData {
 	 */
 
     public static void addEquipment(UUID equipmentUuid, String name, String modelNumber, double retailPrice) {
-        String sql = "INSERT INTO Item (item_uuid, type, name, model_no, retail_price) VALUES (?, 'E', ?, ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, equipmentUuid.toString());
-            ps.setString(2, name);
-            ps.setString(3, modelNumber);
-            ps.setDouble(4, retailPrice);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addEquipment(equipmentUuid, name, modelNumber, retailPrice));
     }
     
     /**
@@ -150,17 +157,7 @@ public class InvoiceData {
 	 */
 
     public static void addMaterial(UUID materialUuid, String name, String unit, double pricePerUnit) {
-        String sql = "INSERT INTO Item (item_uuid, type, name, unit, unit_cost) VALUES (?, 'M', ?, ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, materialUuid.toString());
-            ps.setString(2, name);
-            ps.setString(3, unit);
-            ps.setDouble(4, pricePerUnit);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addMaterial(materialUuid, name, unit, pricePerUnit));
     }
     
 	/**
@@ -172,16 +169,7 @@ public class InvoiceData {
 	 * @param pricePerUnit
 	 */
     public static void addContract(UUID contractUuid, String name, UUID servicerUuid) {
-        String sql = "INSERT INTO Item (item_uuid, type, name, servicer_uuid) VALUES (?, 'C', ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, contractUuid.toString());
-            ps.setString(2, name);
-            ps.setString(3, servicerUuid.toString());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addContract(contractUuid, name, servicerUuid));
     }
 	
     /* Adds an Invoice record to the database with the given data.
@@ -192,17 +180,7 @@ public class InvoiceData {
 	 * @param date
 	 */
     public static void addInvoice(UUID invoiceUuid, UUID customerUuid, UUID salesPersonUuid, LocalDate date) {
-        String sql = "INSERT INTO Invoice (invoice_uuid, companyid, personid, invoice_date) VALUES (?, ?, ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, invoiceUuid.toString());
-            ps.setInt(2, getCompanyId(customerUuid));
-            ps.setInt(3, getPersonId(salesPersonUuid));
-            ps.setDate(4, Date.valueOf(date));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addInvoice(invoiceUuid, customerUuid, salesPersonUuid, date));
     }
 	/**
 	 * Adds an Equipment purchase record to the given invoice.
@@ -212,15 +190,7 @@ public class InvoiceData {
 	 */
 
     public static void addEquipmentPurchaseToInvoice(UUID invoiceUuid, UUID itemUuid) {
-        String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type) VALUES (?, ?, 'P')";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, getInvoiceId(invoiceUuid));
-            ps.setString(2, itemUuid.toString());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addEquipmentPurchaseToInvoice(invoiceUuid, itemUuid));
     }
     /**
 	 * Adds an Equipment lease record to the given invoice.
@@ -231,17 +201,7 @@ public class InvoiceData {
 	 * @param end
 	 */
     public static void addEquipmentLeaseToInvoice(UUID invoiceUuid, UUID itemUuid, LocalDate start, LocalDate end) {
-        String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, lease_start_date, lease_end_date) VALUES (?, ?, 'L', ?, ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, getInvoiceId(invoiceUuid));
-            ps.setString(2, itemUuid.toString());
-            ps.setDate(3, Date.valueOf(start));
-            ps.setDate(4, Date.valueOf(end));
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addEquipmentLeaseToInvoice(invoiceUuid, itemUuid, start, end));
     }
     
     /**
@@ -254,16 +214,7 @@ public class InvoiceData {
 
 
     public static void addEquipmentRentalToInvoice(UUID invoiceUuid, UUID itemUuid, double numberOfHours) {
-        String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, rental_hours) VALUES (?, ?, 'R', ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, getInvoiceId(invoiceUuid));
-            ps.setString(2, itemUuid.toString());
-            ps.setDouble(3, numberOfHours);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addEquipmentRentalToInvoice(invoiceUuid, itemUuid, numberOfHours));
     }
     
 	/**
@@ -275,16 +226,7 @@ public class InvoiceData {
 	 */
 
     public static void addMaterialToInvoice(UUID invoiceUuid, UUID itemUuid, int numberOfUnits) {
-    	String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, quantity) VALUES (?, ?, 'P', ?)";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, getInvoiceId(invoiceUuid));
-            ps.setString(2, itemUuid.toString());
-            ps.setInt(3, numberOfUnits);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        logged(() -> Checked.addMaterialToInvoice(invoiceUuid, itemUuid, numberOfUnits));
     }
     
 	/**
@@ -296,40 +238,285 @@ public class InvoiceData {
 	 */
 
     public static void addContractToInvoice(UUID invoiceUuid, UUID itemUuid, double amount) {
-        String updateItemSql = "UPDATE Item SET contract_fee = ? WHERE item_uuid = ?";
-        String insertInvoiceItemSql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type) VALUES (?, ?, 'P')";
-        try (Connection conn = ConnectionFactory.getConnection()) {
-        
-            try (PreparedStatement ps = conn.prepareStatement(updateItemSql)) {
-                ps.setDouble(1, amount);
-                ps.setString(2, itemUuid.toString());
+        logged(() -> Checked.addContractToInvoice(invoiceUuid, itemUuid, amount));
+    }
+
+
+    /**
+     * The writes behind the public add methods, which throw a failed write's
+     * SQLException instead of logging it, so a caller that must know whether
+     * the write happened (see {@link InvoiceWriter}) can. Each is timed and
+     * counted like the public method.
+     */
+    static final class Checked {
+
+        private Checked() {
+        }
+
+        static void addPerson(UUID personUuid, String firstName, String lastName, String phone) throws SQLException {
+            String sql = "INSERT INTO Person (person_uuid, first_name, last_name, phone) VALUES (?, ?, ?, ?)";
+            run("db.addPerson", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, personUuid.toString());
+                ps.setString(2, firstName);
+                ps.setString(3, lastName);
+                ps.setString(4, phone);
                 ps.executeUpdate();
-            }
+                ReferenceDataCache.personChanged(personUuid);
+                publish(session, "person", personUuid, firstName, lastName, phone);
+            });
+        }
 
-            
-            try (PreparedStatement ps = conn.prepareStatement(insertInvoiceItemSql)) {
-                ps.setInt(1, getInvoiceId(invoiceUuid));
-                ps.setString(2, itemUuid.toString());
+        static void addEmail(UUID personUuid, String email) throws SQLException {
+            String sql = "INSERT INTO Email (person_uuid, email_address) VALUES (?, ?)";
+            run("db.addEmail", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, personUuid.toString());
+                ps.setString(2, email);
                 ps.executeUpdate();
-            }
+                ReferenceDataCache.personChanged(personUuid);
+                publish(session, "email", personUuid, email);
+            });
+        }
+
+        static void addCompany(UUID companyUuid, UUID contactUuid, String name, String street, String city, String state, String zip) throws SQLException {
+            String addressSql = "INSERT INTO Address (street, city, state, postal_code) VALUES (?, ?, ?, ?)";
+            String companySql = "INSERT INTO Company (company_uuid, company_name, contactid, addressid) VALUES (?, ?, ?, ?)";
+            run("db.addCompany", session -> {
+                // Insert address
+                int addressId;
+                PreparedStatement addrPs = session.prepareReturningKeys(addressSql);
+                addrPs.setString(1, street);
+                addrPs.setString(2, city);
+                addrPs.setString(3, state);
+                addrPs.setString(4, zip);
+                addrPs.executeUpdate();
+                try (ResultSet rs = addrPs.getGeneratedKeys()) {
+                    if (rs.next()) addressId = rs.getInt(1);
+                    else throw new SQLException("Failed to get generated address ID");
+                }
+
+                int contactId = getPersonId(contactUuid);
+
+                PreparedStatement compPs = session.prepare(companySql);
+                compPs.setString(1, companyUuid.toString());
+                compPs.setString(2, name);
+                compPs.setInt(3, contactId);
+                compPs.setInt(4, addressId);
+                compPs.executeUpdate();
+                ReferenceDataCache.companyChanged(companyUuid);
+                publish(session, "company", companyUuid, contactUuid, name, street, city, state, zip);
+            });
+        }
+
+        static void addEquipment(UUID equipmentUuid, String name, String modelNumber, double retailPrice) throws SQLException {
+            String sql = "INSERT INTO Item (item_uuid, type, name, model_no, retail_price) VALUES (?, 'E', ?, ?, ?)";
+            run("db.addEquipment", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, equipmentUuid.toString());
+                ps.setString(2, name);
+                ps.setString(3, modelNumber);
+                ps.setDouble(4, retailPrice);
+                ps.executeUpdate();
+                ReferenceDataCache.itemChanged(equipmentUuid);
+                publish(session, "equipment", equipmentUuid, name, modelNumber, retailPrice);
+            });
+        }
+
+        static void addMaterial(UUID materialUuid, String name, String unit, double pricePerUnit) throws SQLException {
+            String sql = "INSERT INTO Item (item_uuid, type, name, unit, unit_cost) VALUES (?, 'M', ?, ?, ?)";
+            run("db.addMaterial", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, materialUuid.toString());
+                ps.setString(2, name);
+                ps.setString(3, unit);
+                ps.setDouble(4, pricePerUnit);
+                ps.executeUpdate();
+                ReferenceDataCache.itemChanged(materialUuid);
+                publish(session, "material", materialUuid, name, unit, pricePerUnit);
+            });
+        }
+
+        static void addContract(UUID contractUuid, String name, UUID servicerUuid) throws SQLException {
+            String sql = "INSERT INTO Item (item_uuid, type, name, servicer_uuid) VALUES (?, 'C', ?, ?)";
+            run("db.addContract", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, contractUuid.toString());
+                ps.setString(2, name);
+                ps.setString(3, servicerUuid.toString());
+                ps.executeUpdate();
+                ReferenceDataCache.itemChanged(contractUuid);
+                publish(session, "contract", contractUuid, name, servicerUuid);
+            });
+        }
+
+        static void addInvoice(UUID invoiceUuid, UUID customerUuid, UUID salesPersonUuid, LocalDate date) throws SQLException {
+            String sql = "INSERT INTO Invoice (invoice_uuid, companyid, personid, invoice_date) VALUES (?, ?, ?, ?)";
+            run("db.addInvoice", session -> {
+                PreparedStatement ps = session.prepare(sql);
+                ps.setString(1, invoiceUuid.toString());
+                session.inTransaction(() -> {
+                    SummaryTables.InvoiceKey key = new SummaryTables.InvoiceKey(0, getCompanyId(customerUuid),
+                            getPersonId(salesPersonUuid), date);
+                    ps.setInt(2, key.companyId);
+                    ps.setInt(3, key.personId);
+                    ps.setDate(4, Date.valueOf(date));
+                    ps.executeUpdate();
+                    SummaryTables.Delta delta = new SummaryTables.Delta();
+                    delta.invoice(key);
+                    delta.apply(session);
+                });
+                publish(session, "invoice", invoiceUuid, customerUuid, salesPersonUuid, date);
+            });
+        }
+
+        static void addEquipmentPurchaseToInvoice(UUID invoiceUuid, UUID itemUuid) throws SQLException {
+            String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type) VALUES (?, ?, 'P')";
+            run("db.addEquipmentPurchaseToInvoice", session -> {
+                session.inTransaction(() -> {
+                    Item item = getItem(itemUuid);
+                    SummaryTables.InvoiceKey key = SummaryTables.invoiceKey(session, invoiceUuid);
+                    PreparedStatement ps = session.prepare(sql);
+                    ps.setInt(1, key.invoiceId);
+                    ps.setString(2, itemUuid.toString());
+                    ps.executeUpdate();
+                    itemAdded(session, key, RowMappers.invoiceItem(invoiceUuid, item, "P", 0, null, null, 0));
+                });
+                publish(session, "equipmentPurchase", invoiceUuid, itemUuid);
+            });
+        }
+
+        static void addEquipmentLeaseToInvoice(UUID invoiceUuid, UUID itemUuid, LocalDate start, LocalDate end) throws SQLException {
+            String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, lease_start_date, lease_end_date) VALUES (?, ?, 'L', ?, ?)";
+            run("db.addEquipmentLeaseToInvoice", session -> {
+                session.inTransaction(() -> {
+                    Item item = getItem(itemUuid);
+                    SummaryTables.InvoiceKey key = SummaryTables.invoiceKey(session, invoiceUuid);
+                    PreparedStatement ps = session.prepare(sql);
+                    ps.setInt(1, key.invoiceId);
+                    ps.setString(2, itemUuid.toString());
+                    ps.setDate(3, Date.valueOf(start));
+                    ps.setDate(4, Date.valueOf(end));
+                    ps.executeUpdate();
+                    itemAdded(session, key, RowMappers.invoiceItem(invoiceUuid, item, "L", 0, start, end, 0));
+                });
+                publish(session, "equipmentLease", invoiceUuid, itemUuid, start, end);
+            });
+        }
+
+        static void addEquipmentRentalToInvoice(UUID invoiceUuid, UUID itemUuid, double numberOfHours) throws SQLException {
+            String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, rental_hours) VALUES (?, ?, 'R', ?)";
+            run("db.addEquipmentRentalToInvoice", session -> {
+                session.inTransaction(() -> {
+                    Item item = getItem(itemUuid);
+                    SummaryTables.InvoiceKey key = SummaryTables.invoiceKey(session, invoiceUuid);
+                    PreparedStatement ps = session.prepare(sql);
+                    ps.setInt(1, key.invoiceId);
+                    ps.setString(2, itemUuid.toString());
+                    ps.setDouble(3, numberOfHours);
+                    ps.executeUpdate();
+                    itemAdded(session, key, RowMappers.invoiceItem(invoiceUuid, item, "R", 0, null, null, numberOfHours));
+                });
+                publish(session, "equipmentRental", invoiceUuid, itemUuid, numberOfHours);
+            });
+        }
+
+        static void addMaterialToInvoice(UUID invoiceUuid, UUID itemUuid, int numberOfUnits) throws SQLException {
+        	String sql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type, quantity) VALUES (?, ?, 'P', ?)";
+            run("db.addMaterialToInvoice", session -> {
+                session.inTransaction(() -> {
+                    Item item = getItem(itemUuid);
+                    SummaryTables.InvoiceKey key = SummaryTables.invoiceKey(session, invoiceUuid);
+                    PreparedStatement ps = session.prepare(sql);
+                    ps.setInt(1, key.invoiceId);
+                    ps.setString(2, itemUuid.toString());
+                    ps.setInt(3, numberOfUnits);
+                    ps.executeUpdate();
+                    itemAdded(session, key, RowMappers.invoiceItem(invoiceUuid, item, "P", numberOfUnits, null, null, 0));
+                });
+                publish(session, "materialPurchase", invoiceUuid, itemUuid, numberOfUnits);
+            });
+        }
 
+        static void addContractToInvoice(UUID invoiceUuid, UUID itemUuid, double amount) throws SQLException {
+            String updateItemSql = "UPDATE Item SET contract_fee = ? WHERE item_uuid = ?";
+            String insertInvoiceItemSql = "INSERT INTO InvoiceItems (invoiceid, item_uuid, purchase_type) VALUES (?, ?, 'P')";
+            run("db.addContractToInvoice", session -> {
+                session.inTransaction(() -> {
+                    Item item = getItem(itemUuid);
+                    SummaryTables.InvoiceKey key = SummaryTables.invoiceKey(session, invoiceUuid);
+                    // Priced at the fee given here, not whatever the cache holds
+                    Contract priced = new Contract(itemUuid, item.getName(),
+                            item instanceof Contract c ? c.getCompany() : null, amount);
+                    SummaryTables.Delta delta = new SummaryTables.Delta();
+                    SummaryTables.contractFeeChanged(session.getConnection(), priced, amount, delta);
+
+                    PreparedStatement update = session.prepare(updateItemSql);
+                    update.setDouble(1, amount);
+                    update.setString(2, itemUuid.toString());
+                    update.executeUpdate();
+
+                    PreparedStatement insert = session.prepare(insertInvoiceItemSql);
+                    insert.setInt(1, key.invoiceId);
+                    insert.setString(2, itemUuid.toString());
+                    insert.executeUpdate();
+                    delta.item(key, RowMappers.invoiceItem(invoiceUuid, priced, "P", 0, null, null, 0));
+                    delta.apply(session);
+                });
+                ReferenceDataCache.itemChanged(itemUuid);
+                publish(session, "contractPurchase", invoiceUuid, itemUuid, amount);
+            });
+        }
+    }
+
+    /**
+     * Statements run by {@link #run} on the session it opens.
+     */
+    @FunctionalInterface
+    private interface Write {
+        void run(StatementSession session) throws SQLException;
+    }
+
+    /**
+     * Helper method: runs a write in a {@link StatementSession}, timing it
+     * under the given metric. A failure is counted in <code>db.errors</code>
+     * and rethrown.
+     */
+    private static void run(String metric, Write write) throws SQLException {
+        long start = Metrics.start();
+        try (StatementSession session = StatementSession.open()) {
+            write.run(session);
         } catch (SQLException e) {
-            e.printStackTrace();
+            Metrics.increment("db.errors");
+            throw e;
+        } finally {
+            Metrics.record(metric, start);
         }
     }
 
+    /**
+     * Helper method: runs work for a public method, which logs a failure
+     * instead of throwing it.
+     */
+    private static void logged(StatementSession.Work work) {
+        try {
+            work.run();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
 
     /**
      * Helper method: gets the internal database person ID (integer) using the provided UUID.
      */
     private static int getPersonId(UUID personUuid) throws SQLException {
-        String sql = "SELECT personid FROM Person WHERE person_uuid = ?";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (StatementSession session = StatementSession.open()) {
+            PreparedStatement ps = session.prepare(PERSON_ID_SQL);
             ps.setString(1, personUuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt("personid");
-            else throw new SQLException("Person UUID not found");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getInt("personid");
+                else throw new SQLException("Person UUID not found");
+            }
         }
     }
 
@@ -337,28 +524,63 @@ public class InvoiceData {
      * Helper method: gets the internal database company ID (integer) using the provided UUID.
      */
     private static int getCompanyId(UUID companyUuid) throws SQLException {
-        String sql = "SELECT companyid FROM Company WHERE company_uuid = ?";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (StatementSession session = StatementSession.open()) {
+            PreparedStatement ps = session.prepare(COMPANY_ID_SQL);
             ps.setString(1, companyUuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt("companyid");
-            else throw new SQLException("Company UUID not found");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getInt("companyid");
+                else throw new SQLException("Company UUID not found");
+            }
         }
     }
 
     /**
-     * Helper method: gets the internal database invoice ID (integer) using the provided UUID.
+     * Helper method: gets an item through the reference data cache.
      */
-    private static int getInvoiceId(UUID invoiceUuid) throws SQLException {
-        String sql = "SELECT invoiceid FROM Invoice WHERE invoice_uuid = ?";
-        try (Connection conn = ConnectionFactory.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, invoiceUuid.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt("invoiceid");
-            else throw new SQLException("Invoice UUID not found");
+    private static Item getItem(UUID itemUuid) throws SQLException {
+        Item item = DBReaderUtil.readItem(itemUuid);
+        if (item == null) {
+            throw new SQLException("Item UUID not found");
         }
+        return item;
     }
-    
+
+    /**
+     * Helper method: adds a line item's count and amounts to the summary tables.
+     */
+    private static void itemAdded(StatementSession session, SummaryTables.InvoiceKey key, InvoiceItem item)
+            throws SQLException {
+        SummaryTables.Delta delta = new SummaryTables.Delta();
+        delta.item(key, item);
+        delta.apply(session);
+    }
+
+    /**
+     * Helper method: appends an insert to the event log, if it is enabled,
+     * once the insert is committed (see {@link StatementSession#afterCommit}).
+     * Inside a caller's transaction that is when the caller commits, and
+     * nothing is appended if it rolls back. A failed append is counted but
+     * does not fail the insert.
+     */
+    private static void publish(StatementSession session, String type, Object... values) throws SQLException {
+        EventLog log = EventLog.shared();
+        if (log == null) {
+            return;
+        }
+        session.afterCommit(() -> append(log, type, values));
+    }
+
+    private static void append(EventLog log, String type, Object... values) {
+        String[] fields = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            fields[i] = values[i] == null ? null : values[i].toString();
+        }
+        try {
+            log.append(type, fields);
+        } catch (IOException e) {
+            Metrics.increment("eventlog.errors");
+            e.printStackTrace();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Secondary indexes over a loaded set of invoices, so finding the invoices of
+ * a company, salesperson, item or date range costs time proportional to the
+ * result instead of a scan of every invoice.
+ *
+ * The company, salesperson and item indexes are hash maps from UUID to the
+ * invoices in date order. The date index keeps the invoices sorted by date in
+ * an array, next to a parallel <code>int[]</code> of their epoch days that
+ * range lookups binary search, returning a view of the matching slice.
+ *
+ * The index is built once and not updated: build a new one after invoices
+ * are added or change. Building the item index reads every invoice's line
+ * items, so lazily loaded invoices (see {@link Invoice#getItems()}) are
+ * loaded by it.
+ */
+public class InvoiceIndex {
+
+    // Ties are ordered by UUID text, as invoice_uuid is in the database
+    private static final Comparator<Invoice> BY_DATE = Comparator
+            .comparing(Invoice::getDate)
+            .thenComparing(invoice -> invoice.getInvoiceId().toString());
+
+    private final Map<UUID, List<Invoice>> byCompany = new HashMap<>();
+    private final Map<UUID, List<Invoice>> bySalesperson = new HashMap<>();
+    private final Map<UUID, List<Invoice>> byItem = new HashMap<>();
+    private final Invoice[] byDate;
+    private final int[] epochDays;
+
+    public InvoiceIndex(Collection<Invoice> invoices) {
+        long start = Metrics.start();
+        byDate = invoices.toArray(new Invoice[0]);
+        Arrays.sort(byDate, BY_DATE);
+        epochDays = new int[byDate.length];
+
+        Set<UUID> invoiceItems = new HashSet<>();
+        for (int i = 0; i < byDate.length; i++) {
+            Invoice invoice = byDate[i];
+            epochDays[i] = (int) invoice.getDate().toEpochDay();
+            byCompany.computeIfAbsent(invoice.getCompany().getUuid(), k -> new ArrayList<>()).add(invoice);
+            bySalesperson.computeIfAbsent(invoice.getSalesperson().getUuid(), k -> new ArrayList<>()).add(invoice);
+
+            // An invoice is listed once per item even if it has several line items for it
+            invoiceItems.clear();
+            for (InvoiceItem item : invoice.getItems()) {
+                UUID itemUuid = item.getItem().getUuid();
+                if (invoiceItems.add(itemUuid)) {
+                    byItem.computeIfAbsent(itemUuid, k -> new ArrayList<>()).add(invoice);
+                }
+            }
+        }
+        Metrics.record("index.build", start);
+    }
+
+    /**
+     * The invoices billed to a company, in date order.
+     */
+    public List<Invoice> forCompany(UUID companyUuid) {
+        return lookup(byCompany, companyUuid);
+    }
+
+    /**
+     * The invoices written by a salesperson, in date order.
+     */
+    public List<Invoice> forSalesperson(UUID personUuid) {
+        return lookup(bySalesperson, personUuid);
+    }
+
+    /**
+     * The invoices with at least one line item for an item, in date order.
+     */
+    public List<Invoice> withItem(UUID itemUuid) {
+        return lookup(byItem, itemUuid);
+    }
+
+    /**
+     * The invoices dated within a range, in date order.
+     *
+     * @param from first date included, or null for no lower bound
+     * @param to   last date included, or null for no upper bound
+     */
+    public List<Invoice> between(LocalDate from, LocalDate to) {
+        int low = from == null ? 0 : firstAtOrAfter(from.toEpochDay());
+        int high = to == null ? byDate.length : firstAtOrAfter(to.toEpochDay() + 1);
+        if (low >= high) {
+            return List.of();
+        }
+        return Collections.unmodifiableList(Arrays.asList(byDate).subList(low, high));
+    }
+
+    /**
+     * Runs an {@link InvoiceQuery} against the index, with the same results
+     * and keyset paging as {@link DBReaderUtil#queryInvoices}. The company or
+     * salesperson index (else the date index) supplies the candidates, and
+     * the page start is found by binary search on the cursor.
+     */
+    public InvoicePage query(InvoiceQuery query) {
+        List<Invoice> candidates;
+        if (query.getCompanyUuid() != null) {
+            candidates = forCompany(query.getCompanyUuid());
+        } else if (query.getSalespersonUuid() != null) {
+            candidates = forSalesperson(query.getSalespersonUuid());
+        } else {
+            candidates = between(query.getFromDate(), query.getToDate());
+        }
+
+        List<Invoice> page = new ArrayList<>();
+        boolean more = false;
+        for (int i = firstAfter(candidates, query.getAfter()); i < candidates.size(); i++) {
+            Invoice invoice = candidates.get(i);
+            if ((query.getSalespersonUuid() != null
+                    && !invoice.getSalesperson().getUuid().equals(query.getSalespersonUuid()))
+                    || !invoice.isDatedBetween(query.getFromDate(), query.getToDate())) {
+                continue;
+            }
+            if (page.size() == query.getPageSize()) {
+                more = true;
+                break;
+            }
+            page.add(invoice);
+        }
+
+        InvoiceQuery.Cursor next = null;
+        if (more) {
+            Invoice last = page.get(page.size() - 1);
+            next = new InvoiceQuery.Cursor(last.getDate(), last.getInvoiceId());
+        }
+        return new InvoicePage(page, next);
+    }
+
+    public int size() {
+        return byDate.length;
+    }
+
+    /**
+     * Position of the first invoice dated on or after the given epoch day.
+     */
+    private int firstAtOrAfter(long epochDay) {
+        int low = 0;
+        int high = epochDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Position of the first invoice in a date ordered list that comes after
+     * the cursor, or 0 without one.
+     */
+    private static int firstAfter(List<Invoice> invoices, InvoiceQuery.Cursor after) {
+        if (after == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = invoices.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Invoice invoice = invoices.get(mid);
+            int cmp = invoice.getDate().compareTo(after.getDate());
+            if (cmp == 0) {
+                cmp = invoice.getInvoiceId().toString().compareTo(after.getInvoiceUuid().toString());
+            }
+            if (cmp <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static List<Invoice> lookup(Map<UUID, List<Invoice>> index, UUID key) {
+        List<Invoice> invoices = index.get(key);
+        return invoices == null ? List.of() : Collections.unmodifiableList(invoices);
+    }
+}
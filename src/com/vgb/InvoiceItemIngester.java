@@ -0,0 +1,455 @@
+package com.vgb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * High-volume write path for InvoiceItems, the largest table.
+ *
+ * The add methods of {@link InvoiceData} look up the invoice id and insert a
+ * single row per call. An ingester instead buffers line items and writes them
+ * a batch at a time:
+ * <ol>
+ * <li>the ids, customers, salespersons and dates of the batch's invoices are
+ * resolved with one IN query per {@value DBReaderUtil#IN_BATCH_SIZE} UUIDs and
+ * remembered for later batches,</li>
+ * <li>the rows are sent with LOAD DATA LOCAL INFILE from an in-memory stream
+ * where the backend supports it, otherwise as multi-row INSERTs of
+ * {@value #ROWS_PER_INSERT} rows each,</li>
+ * <li>the batch's line items are priced and added to the summary tables
+ * (see {@link SummaryTables}),</li>
+ * <li>the batch is committed as one transaction.</li>
+ * </ol>
+ * A batch is written when <code>vgb.ingest.batchSize</code> rows (default
+ * 10000) are buffered, on {@link #flush()} and on {@link #close()}. Line
+ * items whose invoice or item does not exist are skipped and counted as
+ * rejected, and reported to the {@link RejectListener} if one is set.
+ *
+ * An ingester holds its own connection and is not thread-safe; use one per
+ * producing thread.
+ *
+ * Usage: <code>InvoiceItemIngester [rows]</code> times the ingestion of
+ * synthetic line items against the invoices already in the database, then
+ * deletes them again and rebuilds the summary tables.
+ */
+public class InvoiceItemIngester implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = Config.getInt("vgb.ingest.batchSize", 10_000);
+
+    // 7 placeholders per row keeps a full statement well under the 65535 limit
+    static final int ROWS_PER_INSERT = 1000;
+
+    static final String COLUMNS =
+            "(invoiceId, item_uuid, purchase_type, quantity, lease_start_date, lease_end_date, rental_hours)";
+
+    private static final boolean USE_LOAD_DATA = Config.getBoolean("vgb.ingest.loadData", true);
+
+    private final int batchSize;
+    private final List<UUID> pendingInvoices = new ArrayList<>();
+    private final List<Object[]> pendingRows = new ArrayList<>();
+    // Each pending row as it is priced, or null if its item does not exist
+    private final List<InvoiceItem> pendingItems = new ArrayList<>();
+    // The batch's contracts at the last fee given; their pending line items share them
+    private final Map<UUID, Contract> contractFees = new LinkedHashMap<>();
+    private final Map<UUID, SummaryTables.InvoiceKey> invoiceKeys = new HashMap<>();
+    private RejectListener rejectListener;
+    private Connection conn;
+    private PreparedStatement fullInsert;
+    private long written;
+    private long rejected;
+
+    public InvoiceItemIngester() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize number of buffered line items that triggers a write
+     */
+    public InvoiceItemIngester(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<UUID> invoices = new ArrayList<>();
+        List<UUID> equipment = new ArrayList<>();
+        List<UUID> materials = new ArrayList<>();
+        int lastItemId;
+        try (Connection conn = ConnectionFactory.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT invoice_uuid FROM Invoice")) {
+                while (rs.next()) {
+                    invoices.add(UUID.fromString(rs.getString(1)));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT item_uuid, type FROM Item WHERE type IN ('E', 'M')")) {
+                while (rs.next()) {
+                    ("E".equals(rs.getString(2)) ? equipment : materials).add(UUID.fromString(rs.getString(1)));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(invoiceItemId), 0) FROM InvoiceItems")) {
+                rs.next();
+                lastItemId = rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (invoices.isEmpty() || equipment.isEmpty() || materials.isEmpty()) {
+            System.err.println("Load invoices and items first, e.g. with BulkLoader");
+            return;
+        }
+
+        long start = System.nanoTime();
+        long count;
+        try (InvoiceItemIngester ingester = new InvoiceItemIngester()) {
+            for (int i = 0; i < rows; i++) {
+                UUID invoice = invoices.get(i % invoices.size());
+                if (i % 2 == 0) {
+                    ingester.addMaterial(invoice, materials.get(i % materials.size()), 1 + i % 20);
+                } else {
+                    ingester.addEquipmentRental(invoice, equipment.get(i % equipment.size()), 1 + i % 40);
+                }
+            }
+            ingester.flush();
+            count = ingester.getWritten();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d line items in %.2f s (%,.0f rows/s, %s)\n", count, seconds, count / seconds,
+                USE_LOAD_DATA && ConnectionFactory.getBackend().supportsLoadData() ? "LOAD DATA" : "multi-row INSERT");
+
+        try (Connection conn = ConnectionFactory.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM InvoiceItems WHERE invoiceItemId > ?")) {
+            ps.setInt(1, lastItemId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SummaryTables.rebuild();
+        Metrics.dump();
+        JdbcTracer.printReport();
+    }
+
+    public void addEquipmentPurchase(UUID invoiceUuid, UUID itemUuid) {
+        add(invoiceUuid, itemUuid, "P", null, null, null, null);
+    }
+
+    public void addEquipmentLease(UUID invoiceUuid, UUID itemUuid, LocalDate start, LocalDate end) {
+        add(invoiceUuid, itemUuid, "L", null, start, end, null);
+    }
+
+    public void addEquipmentRental(UUID invoiceUuid, UUID itemUuid, double numberOfHours) {
+        add(invoiceUuid, itemUuid, "R", null, null, null, numberOfHours);
+    }
+
+    public void addMaterial(UUID invoiceUuid, UUID itemUuid, int numberOfUnits) {
+        add(invoiceUuid, itemUuid, "P", numberOfUnits, null, null, null);
+    }
+
+    /**
+     * Adds a contract line item and, as {@link InvoiceData#addContractToInvoice}
+     * does, sets the contract's fee. Fees are updated in the same transaction
+     * as the batch; the last amount given for a contract wins, and the
+     * contract's line items, in the batch and before it, are priced at it.
+     */
+    public void addContract(UUID invoiceUuid, UUID itemUuid, double amount) {
+        Item item = DBReaderUtil.readItem(itemUuid);
+        InvoiceItem priced = null;
+        if (item != null) {
+            Contract contract = contractFees.computeIfAbsent(itemUuid, uuid -> new Contract(uuid, item.getName(),
+                    item instanceof Contract c ? c.getCompany() : null, amount));
+            contract.setContractAmount(amount);
+            priced = RowMappers.invoiceItem(invoiceUuid, contract, "P", 0, null, null, 0);
+        }
+        buffer(invoiceUuid, new Object[] {null, itemUuid, "P", null, null, null, null}, priced);
+    }
+
+    /**
+     * Adds every line item of the given invoice.
+     */
+    public void addAll(Invoice invoice) {
+        for (InvoiceItem item : invoice.getItems()) {
+            buffer(invoice.getInvoiceId(), row(null, item), item);
+        }
+    }
+
+    /**
+     * Sets the listener told about the line items each batch skips.
+     */
+    public void setRejectListener(RejectListener listener) {
+        this.rejectListener = listener;
+    }
+
+    /**
+     * @return line items written so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return line items skipped because their invoice does not exist
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Writes the buffered line items in one transaction. If the write fails
+     * the transaction is rolled back and the batch is dropped.
+     *
+     * @return false if the write failed
+     */
+    public boolean flush() {
+        if (pendingRows.isEmpty()) {
+            return true;
+        }
+        long start = Metrics.start();
+        int batchRows = pendingRows.size();
+        try {
+            if (conn == null) {
+                conn = ConnectionFactory.getBulkConnection();
+                conn.setAutoCommit(false);
+            }
+            resolveInvoiceKeys();
+
+            BulkLoader.TableRows rows = new BulkLoader.TableRows();
+            SummaryTables.Delta totals = new SummaryTables.Delta();
+            for (Contract contract : contractFees.values()) {
+                SummaryTables.contractFeeChanged(conn, contract, contract.getContractAmount(), totals);
+            }
+            // Indexes and reasons of the skipped rows, reported once the batch commits
+            List<Integer> rejectedRows = new ArrayList<>();
+            List<String> reasons = new ArrayList<>();
+            for (int i = 0; i < pendingRows.size(); i++) {
+                SummaryTables.InvoiceKey key = invoiceKeys.get(pendingInvoices.get(i));
+                InvoiceItem item = pendingItems.get(i);
+                if (key == null || item == null) {
+                    rejectedRows.add(i);
+                    reasons.add(key == null ? "unknown invoice " + pendingInvoices.get(i)
+                            : "unknown item " + pendingRows.get(i)[1]);
+                    continue;
+                }
+                Object[] row = pendingRows.get(i);
+                row[0] = key.invoiceId;
+                rows.row(row);
+                totals.item(key, item);
+            }
+            try {
+                if (USE_LOAD_DATA && ConnectionFactory.getBackend().supportsLoadData()) {
+                    try (Statement stmt = conn.createStatement()) {
+                        BulkLoader.loadData(stmt, "InvoiceItems", COLUMNS, rows);
+                    }
+                } else {
+                    insertRows(rows.rows);
+                }
+                updateContractFees();
+                totals.apply(conn);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            written += rows.rows.size();
+            rejected += rejectedRows.size();
+            Metrics.add("ingest.rejected", rejectedRows.size());
+            Metrics.add("ingest.rows", rows.rows.size());
+            for (UUID itemUuid : contractFees.keySet()) {
+                ReferenceDataCache.itemChanged(itemUuid);
+            }
+            if (rejectListener != null) {
+                for (int i = 0; i < rejectedRows.size(); i++) {
+                    rejectListener.rejected(rejectedRows.get(i), reasons.get(i));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            System.err.println("Failed to write " + batchRows + " invoice items: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            clear();
+            Metrics.record("ingest.flush", start);
+        }
+    }
+
+    /**
+     * Drops the buffered line items without writing them.
+     */
+    public void clear() {
+        pendingInvoices.clear();
+        pendingRows.clear();
+        pendingItems.clear();
+        contractFees.clear();
+    }
+
+    /**
+     * Writes any buffered line items and releases the connection.
+     */
+    @Override
+    public void close() {
+        flush();
+        try {
+            if (fullInsert != null) {
+                fullInsert.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        ConnectionFactory.closeConnection(conn);
+        conn = null;
+        fullInsert = null;
+    }
+
+    /**
+     * Renders a line item as an InvoiceItems row in {@link #COLUMNS} order.
+     *
+     * @param invoiceId the invoice's surrogate key, or null to fill in later
+     */
+    static Object[] row(Integer invoiceId, InvoiceItem ii) {
+        Item base = ii.getItem();
+        if (base instanceof Lease) {
+            return new Object[] {invoiceId, base.getUuid(), "L", null, ii.getLeaseStart(), ii.getLeaseEnd(), null};
+        } else if (base instanceof Rental) {
+            return new Object[] {invoiceId, base.getUuid(), "R", null, null, null, ii.getRentalHours()};
+        } else if (base instanceof Material) {
+            return new Object[] {invoiceId, base.getUuid(), "P", ii.getQuantity(), null, null, null};
+        }
+        return new Object[] {invoiceId, base.getUuid(), "P", null, null, null, null};
+    }
+
+    private void add(UUID invoiceUuid, UUID itemUuid, String type, Integer quantity,
+                     LocalDate leaseStart, LocalDate leaseEnd, Double rentalHours) {
+        Item item = DBReaderUtil.readItem(itemUuid);
+        InvoiceItem priced = item == null ? null : RowMappers.invoiceItem(invoiceUuid, item, type,
+                quantity == null ? 0 : quantity, leaseStart, leaseEnd, rentalHours == null ? 0 : rentalHours);
+        buffer(invoiceUuid, new Object[] {null, itemUuid, type, quantity, leaseStart, leaseEnd, rentalHours}, priced);
+    }
+
+    private void buffer(UUID invoiceUuid, Object[] row, InvoiceItem priced) {
+        if (priced == null) {
+            System.err.println("Item UUID not found: " + row[1]);
+        }
+        pendingInvoices.add(invoiceUuid);
+        pendingRows.add(row);
+        pendingItems.add(priced);
+        if (pendingRows.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Looks up the keys of the buffered invoices that are not known yet.
+     */
+    private void resolveInvoiceKeys() throws SQLException {
+        Set<UUID> unknown = new LinkedHashSet<>();
+        for (UUID uuid : pendingInvoices) {
+            if (!invoiceKeys.containsKey(uuid)) {
+                unknown.add(uuid);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+        long start = Metrics.start();
+        List<UUID> ids = new ArrayList<>(unknown);
+        for (int from = 0; from < ids.size(); from += DBReaderUtil.IN_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(from, Math.min(ids.size(), from + DBReaderUtil.IN_BATCH_SIZE));
+            String sql = "SELECT invoice_uuid, invoiceId, companyId, personId, invoice_date FROM Invoice"
+                    + " WHERE invoice_uuid IN ("
+                    + "?, ".repeat(batch.size() - 1) + "?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setString(i + 1, batch.get(i).toString());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        invoiceKeys.put(UUID.fromString(rs.getString(1)), new SummaryTables.InvoiceKey(
+                                rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getDate(5).toLocalDate()));
+                    }
+                }
+            }
+        }
+        Metrics.record("ingest.resolveInvoiceKeys", start);
+        for (UUID uuid : unknown) {
+            if (!invoiceKeys.containsKey(uuid)) {
+                System.err.println("Invoice UUID not found: " + uuid);
+            }
+        }
+    }
+
+    /**
+     * Sends the rows as INSERTs of {@value #ROWS_PER_INSERT} rows each. The
+     * full-size statement is prepared once per connection.
+     */
+    private void insertRows(List<Object[]> rows) throws SQLException {
+        for (int from = 0; from < rows.size(); from += ROWS_PER_INSERT) {
+            List<Object[]> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_INSERT));
+            if (chunk.size() == ROWS_PER_INSERT) {
+                if (fullInsert == null) {
+                    fullInsert = conn.prepareStatement(insertSql(ROWS_PER_INSERT));
+                }
+                bind(fullInsert, chunk);
+                fullInsert.executeUpdate();
+            } else {
+                try (PreparedStatement ps = conn.prepareStatement(insertSql(chunk.size()))) {
+                    bind(ps, chunk);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static String insertSql(int rows) {
+        String tuple = "(?, ?, ?, ?, ?, ?, ?)";
+        return "INSERT INTO InvoiceItems " + COLUMNS + " VALUES " + (tuple + ", ").repeat(rows - 1) + tuple;
+    }
+
+    private static void bind(PreparedStatement ps, List<Object[]> rows) throws SQLException {
+        int index = 1;
+        for (Object[] row : rows) {
+            for (Object field : row) {
+                ps.setObject(index++, field instanceof UUID ? field.toString() : field);
+            }
+        }
+    }
+
+    private void updateContractFees() throws SQLException {
+        if (contractFees.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE Item SET contract_fee = ? WHERE item_uuid = ?")) {
+            for (Contract contract : contractFees.values()) {
+                ps.setDouble(1, contract.getContractAmount());
+                ps.setString(2, contract.getUuid().toString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Told about each line item a batch skips, after the batch commits.
+     */
+    public interface RejectListener {
+        /**
+         * @param index  the line item's position among those added since the
+         *               previous write
+         * @param reason why it was skipped
+         */
+        void rejected(int index, String reason);
+    }
+}
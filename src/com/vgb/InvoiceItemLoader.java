@@ -0,0 +1,22 @@
+package com.vgb;
+
+import java.sql.SQLException;
+
+/**
+ * Supplies the line items of an invoice on first use. Implementations attach
+ * the items with {@link Invoice#addItem(InvoiceItem)}.
+ *
+ * @see DBReaderUtil#loadInvoicesLazy(java.util.Map, java.util.Map, java.util.Map)
+ */
+@FunctionalInterface
+public interface InvoiceItemLoader {
+
+    /**
+     * Loads and attaches the items of the given invoice.
+     *
+     * @param invoice the invoice whose items are being requested
+     * @throws SQLException if the items cannot be read; the invoice keeps
+     *         its loader and tries again on next use
+     */
+    void load(Invoice invoice) throws SQLException;
+}
@@ -0,0 +1,34 @@
+package com.vgb;
+
+import java.util.List;
+
+/**
+ * One page of results from an {@link InvoiceQuery}.
+ */
+public class InvoicePage {
+    private final List<Invoice> invoices;
+    private final InvoiceQuery.Cursor next;
+
+    public InvoicePage(List<Invoice> invoices, InvoiceQuery.Cursor next) {
+        this.invoices = invoices;
+        this.next = next;
+    }
+
+    /**
+     * @return the invoices on this page, in (date, uuid) order
+     */
+    public List<Invoice> getInvoices() {
+        return invoices;
+    }
+
+    /**
+     * @return the cursor for the following page, or null if this is the last page
+     */
+    public InvoiceQuery.Cursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
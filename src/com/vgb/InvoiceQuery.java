@@ -0,0 +1,141 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Criteria for {@link DBReaderUtil#queryInvoices(InvoiceQuery, java.util.Map, java.util.Map)}.
+ * Every filter is optional; results are ordered by invoice date then invoice
+ * UUID and returned one page at a time.
+ *
+ * Paging is keyset based: instead of an offset, the next page starts after
+ * the (date, uuid) of the last invoice already seen, so reading page 1000
+ * costs the same as reading page 1.
+ */
+public class InvoiceQuery {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private UUID companyUuid;
+    private UUID salespersonUuid;
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private Cursor after;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Only invoices billed to the given customer company.
+     */
+    public InvoiceQuery forCompany(UUID companyUuid) {
+        this.companyUuid = companyUuid;
+        return this;
+    }
+
+    /**
+     * Only invoices written by the given salesperson.
+     */
+    public InvoiceQuery forSalesperson(UUID salespersonUuid) {
+        this.salespersonUuid = salespersonUuid;
+        return this;
+    }
+
+    /**
+     * Only invoices dated within the range; either bound may be null.
+     *
+     * @param from first date included
+     * @param to   last date included
+     */
+    public InvoiceQuery between(LocalDate from, LocalDate to) {
+        this.fromDate = from;
+        this.toDate = to;
+        return this;
+    }
+
+    /**
+     * Start after the given position, normally {@link InvoicePage#getNext()}
+     * of the previous page. Null starts from the beginning.
+     */
+    public InvoiceQuery after(Cursor cursor) {
+        this.after = cursor;
+        return this;
+    }
+
+    /**
+     * @param pageSize invoices per page, from 1 to {@value #MAX_PAGE_SIZE}
+     */
+    public InvoiceQuery pageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        if (pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be at most " + MAX_PAGE_SIZE + ": " + pageSize);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public UUID getCompanyUuid() {
+        return companyUuid;
+    }
+
+    public UUID getSalespersonUuid() {
+        return salespersonUuid;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    public Cursor getAfter() {
+        return after;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * A position in the (invoice date, invoice UUID) ordering.
+     */
+    public static class Cursor {
+        private final LocalDate date;
+        private final UUID invoiceUuid;
+
+        public Cursor(LocalDate date, UUID invoiceUuid) {
+            this.date = date;
+            this.invoiceUuid = invoiceUuid;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public UUID getInvoiceUuid() {
+            return invoiceUuid;
+        }
+
+        /**
+         * Parses a token produced by {@link #toString()}.
+         */
+        public static Cursor parse(String token) {
+            int split = token.indexOf('_');
+            if (split < 0) {
+                throw new IllegalArgumentException("Malformed cursor: " + token);
+            }
+            return new Cursor(LocalDate.parse(token.substring(0, split)), UUID.fromString(token.substring(split + 1)));
+        }
+
+        /**
+         * @return an opaque token that can be handed to a client and parsed back
+         */
+        @Override
+        public String toString() {
+            return date + "_" + invoiceUuid;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Pages through invoices stored in the database. Runs only against the
+ * embedded H2 backend (<code>-Dvgb.db.backend=h2</code>), since it replaces
+ * the data in the database.
+ */
+public class InvoiceQueryTests {
+
+    @Test
+    public void testPageSizeIsCapped() {
+        InvoiceQuery query = new InvoiceQuery().pageSize(InvoiceQuery.MAX_PAGE_SIZE);
+        assertEquals(InvoiceQuery.MAX_PAGE_SIZE, query.getPageSize());
+        assertThrows(IllegalArgumentException.class, () -> query.pageSize(InvoiceQuery.MAX_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> query.pageSize(Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> query.pageSize(0));
+    }
+
+    @Test
+    public void testPagesCoverAllInvoicesInOrder() {
+        assumeTrue(ConnectionFactory.getBackend() == DatabaseBackend.H2, "needs the H2 backend");
+        InvoiceRepository csv = new CSVInvoiceRepository("data");
+        Map<UUID, Person> persons = csv.readPersons();
+        Map<UUID, Company> companies = csv.readCompanies(persons);
+        Map<UUID, Item> items = csv.readItems(companies);
+        InvoiceData.truncateDatabase();
+        assertTrue(BulkLoader.load(persons, companies, items, csv.readInvoices(persons, companies, items)));
+
+        // Few distinct dates, so pages break inside runs of equal dates
+        Random random = new Random(11);
+        List<UUID> personIds = new ArrayList<>(persons.keySet());
+        List<UUID> companyIds = new ArrayList<>(companies.keySet());
+        for (int i = 0; i < 200; i++) {
+            InvoiceData.addInvoice(UUID.randomUUID(), companyIds.get(random.nextInt(companyIds.size())),
+                    personIds.get(random.nextInt(personIds.size())), LocalDate.of(2024, 1, 1 + random.nextInt(5)));
+        }
+
+        Map<UUID, Person> dbPersons = DBReaderUtil.readPersons();
+        Map<UUID, Company> dbCompanies = DBReaderUtil.readCompanies(dbPersons);
+        List<Invoice> sorted = new ArrayList<>(DBReaderUtil.loadInvoices(dbPersons, dbCompanies).values());
+        sorted.sort(Comparator.comparing(Invoice::getDate).thenComparing(i -> i.getInvoiceId().toString()));
+        assertEquals(203, sorted.size());
+
+        for (int pageSize : new int[] { 1, 7, InvoiceQuery.MAX_PAGE_SIZE }) {
+            List<UUID> paged = new ArrayList<>();
+            InvoiceQuery.Cursor next = null;
+            do {
+                InvoicePage page = DBReaderUtil.queryInvoices(new InvoiceQuery().pageSize(pageSize).after(next),
+                        dbPersons, dbCompanies);
+                assertTrue(page.getInvoices().size() <= pageSize);
+                page.getInvoices().forEach(invoice -> paged.add(invoice.getInvoiceId()));
+                next = page.getNext();
+            } while (next != null);
+            assertEquals(sorted.stream().map(Invoice::getInvoiceId).toList(), paged, "page size " + pageSize);
+        }
+    }
+}
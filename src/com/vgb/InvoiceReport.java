@@ -1,8 +1,12 @@
 package com.vgb;
 
+import java.io.PrintStream;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.Comparator;
 
 /**
  * Generates and prints summary reports for invoices and companies.
@@ -17,117 +21,126 @@ public class InvoiceReport {
      * - Company summary totals (number of invoices, total amounts)
      */
     public static void generateInvoiceReport(Map<UUID, Invoice> invoiceMap, Map<UUID, Company> allCompaniesMap) {
+        generateInvoiceReport(invoiceMap, allCompaniesMap, Integer.MAX_VALUE);
+    }
 
-        // Comparator: sort invoices by total amount descending, then by invoice ID
-        Comparator<Invoice> byTotalDesc = (a, b) -> {
-            int cmp = Double.compare(b.getTotalAmount(), a.getTotalAmount());
-            return (cmp != 0) ? cmp : a.getInvoiceId().compareTo(b.getInvoiceId());
-        };
-
-        // Comparator: sort invoices by customer name, then by invoice ID
-        Comparator<Invoice> byCustomerName = (a, b) -> {
-            int cmp = a.getCompany().getName().compareTo(b.getCompany().getName());
-            return (cmp != 0) ? cmp : a.getInvoiceId().compareTo(b.getInvoiceId());
-        };
-
-        // Comparator: sort company summaries by total amount ascending, then by company name
-        Comparator<CompanySummary> byTotalAmountThenName = (a, b) -> {
-            int cmp = Double.compare(a.totalAmount, b.totalAmount);
-            if (cmp != 0) return cmp;
-            return a.company.getName().compareTo(b.company.getName());
-        };
-
-        // Create sorted lists using the above comparators
-        SortedList<Invoice> invoicesByTotal = new SortedList<>(byTotalDesc);
-        SortedList<Invoice> invoicesByCustomer = new SortedList<>(byCustomerName);
-        SortedList<CompanySummary> companySummaries = new SortedList<>(byTotalAmountThenName);
-
-        // Fill sorted invoice lists
-        for (Invoice inv : invoiceMap.values()) {
-            invoicesByTotal.add(inv);
-            invoicesByCustomer.add(inv);
-        }
+    /**
+     * Generates the report, listing at most <code>limit</code> invoices in each
+     * of the two invoice sections. Invoices are priced once up front and the
+     * rankings are only sorted as far as they are printed.
+     */
+    public static void generateInvoiceReport(Map<UUID, Invoice> invoiceMap, Map<UUID, Company> allCompaniesMap, int limit) {
+        generateInvoiceReport(invoiceMap, allCompaniesMap, limit, null);
+    }
 
-        // Build company summary list (count and total per company)
-        for (Company company : allCompaniesMap.values()) {
-            double total = 0;
-            int count = 0;
-            for (Invoice inv : invoiceMap.values()) {
-                if (inv.getCompany().getUuid().equals(company.getUuid())) {
-                    total += inv.getTotalAmount();
-                    count++;
-                }
-            }
-            companySummaries.add(new CompanySummary(company, count, total));
-        }
+    /**
+     * Generates the report with the "Customer Invoice Totals" section taken
+     * from the given summaries, e.g. ones read from the summary tables, or
+     * computed from the invoices if <code>summaries</code> is null.
+     */
+    public static void generateInvoiceReport(Map<UUID, Invoice> invoiceMap, Map<UUID, Company> allCompaniesMap, int limit,
+                                             List<CompanySummary> summaries) {
+        long start = Metrics.start();
+        // Counts each section's bytes for its ReportSectionEvent
+        CountingOutputStream counted = new CountingOutputStream(System.out);
+        PrintStream out = new PrintStream(counted, false, System.out.charset());
+        List<PricedInvoice> priced = PricingService.priceAll(new ArrayList<>(invoiceMap.values())).getInvoices();
+
+        RankedView<PricedInvoice> invoicesByTotal = new RankedView<>(priced, PricedInvoice.BY_TOTAL_DESC);
+        RankedView<PricedInvoice> invoicesByCustomer = new RankedView<>(priced, PricedInvoice.BY_CUSTOMER);
+        RankedView<CompanySummary> companySummaries = new RankedView<>(summaries != null ? summaries
+                : CompanySummary.summarize(priced, allCompaniesMap.values()), CompanySummary.BY_TOTAL);
 
         // ======= Print Invoices by Total =======
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.println("| Invoices by Total                                                       |");
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.printf("%-40s %-30s %12s\n", "Invoice", "Customer", "Total");
-        for (Invoice inv : invoicesByTotal) {
-            System.out.printf("%-40s %-30s $%10.2f\n",
-                    inv.getInvoiceId(), inv.getCompany().getName(), inv.getTotalAmount());
+        ReportSectionEvent section = ReportSectionEvent.begin("InvoiceReport", "Invoices by Total", counted);
+        List<PricedInvoice> byTotal = invoicesByTotal.top(limit);
+        out.println("+-------------------------------------------------------------------------+");
+        out.println("| Invoices by Total                                                       |");
+        out.println("+-------------------------------------------------------------------------+");
+        out.printf("%-40s %-30s %12s\n", "Invoice", "Customer", "Total");
+        for (PricedInvoice inv : byTotal) {
+            out.printf("%-40s %-30s $%10.2f\n",
+                    inv.getInvoice().getInvoiceId(), inv.getInvoice().getCompany().getName(), inv.getTotal());
         }
-        System.out.println("+-------------------------------------------------------------------------+\n");
+        out.println("+-------------------------------------------------------------------------+\n");
+        section.end(byTotal.size());
 
         // ======= Print Invoices by Customer =======
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.println("| Invoices by Customer                                                    |");
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.printf("%-40s %-30s %12s\n", "Invoice", "Customer", "Total");
-        for (Invoice inv : invoicesByCustomer) {
-            System.out.printf("%-40s %-30s $%10.2f\n",
-                    inv.getInvoiceId(), inv.getCompany().getName(), inv.getTotalAmount());
+        section = ReportSectionEvent.begin("InvoiceReport", "Invoices by Customer", counted);
+        List<PricedInvoice> byCustomer = invoicesByCustomer.top(limit);
+        out.println("+-------------------------------------------------------------------------+");
+        out.println("| Invoices by Customer                                                    |");
+        out.println("+-------------------------------------------------------------------------+");
+        out.printf("%-40s %-30s %12s\n", "Invoice", "Customer", "Total");
+        for (PricedInvoice inv : byCustomer) {
+            out.printf("%-40s %-30s $%10.2f\n",
+                    inv.getInvoice().getInvoiceId(), inv.getInvoice().getCompany().getName(), inv.getTotal());
         }
-        System.out.println("+-------------------------------------------------------------------------+\n");
+        out.println("+-------------------------------------------------------------------------+\n");
+        section.end(byCustomer.size());
 
         // ======= Print Customer Invoice Totals =======
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.println("| Customer Invoice Totals                                                 |");
-        System.out.println("+-------------------------------------------------------------------------+");
-        System.out.printf("%-30s %18s %15s\n", "Customer", "Number of Invoices", "Total");
+        section = ReportSectionEvent.begin("InvoiceReport", "Customer Invoice Totals", counted);
+        out.println("+-------------------------------------------------------------------------+");
+        out.println("| Customer Invoice Totals                                                 |");
+        out.println("+-------------------------------------------------------------------------+");
+        out.printf("%-30s %18s %15s\n", "Customer", "Number of Invoices", "Total");
         for (CompanySummary summary : companySummaries) {
-            System.out.printf("%-30s %18d $%13.2f\n",
-                    summary.company.getName(), summary.numInvoices, summary.totalAmount);
+            out.printf("%-30s %18d $%13.2f\n",
+                    summary.getCompany().getName(), summary.getNumInvoices(), summary.getTotalAmount());
         }
-        System.out.println("+-------------------------------------------------------------------------+");
+        out.println("+-------------------------------------------------------------------------+");
+        section.end(companySummaries.size());
+        out.flush();
+        Metrics.record("report.invoiceReport", start);
+    }
+
+    /**
+     * Returns the <code>k</code> invoices with the largest totals.
+     */
+    public static List<PricedInvoice> topInvoices(Collection<Invoice> invoices, int k) {
+        return TopK.of(PricingService.priceAll(new ArrayList<>(invoices)).getInvoices(), k, PricedInvoice.BY_TOTAL_DESC);
+    }
+
+    /**
+     * Returns the <code>k</code> customers with the largest invoice totals.
+     */
+    public static List<CompanySummary> topCustomers(Collection<Invoice> invoices, Collection<Company> companies, int k) {
+        List<PricedInvoice> priced = PricingService.priceAll(new ArrayList<>(invoices)).getInvoices();
+        return TopK.of(CompanySummary.summarize(priced, companies), k, CompanySummary.BY_TOTAL_DESC);
     }
 
     /**
      * Main method to run the invoice report.
-     * Loads data using DBReaderUtil and generates the report.
+     * Loads data from the database (or the repository named by
+     * <code>vgb.repository</code>) and generates the report.
+     * An optional argument limits the invoice sections to the top N rows.
      */
     public static void main(String[] args) {
         try {
             // Load all data from the database
-            Map<UUID, Person> persons = DBReaderUtil.readPersons();
-            Map<UUID, Company> companies = DBReaderUtil.readCompanies(persons);
-            Map<UUID, Item> items = DBReaderUtil.readItems(companies);
-            Map<UUID, Invoice> invoices = DBReaderUtil.loadInvoices(persons, companies);
-            DBReaderUtil.loadInvoiceItems(invoices, items);
-
-            // Generate the full report
-            generateInvoiceReport(invoices, companies);
+            InvoiceRepository repository = InvoiceRepository.fromConfig("db");
+            Map<UUID, Person> persons = repository.readPersons();
+            Map<UUID, Company> companies = repository.readCompanies(persons);
+            Map<UUID, Item> items = repository.readItems(companies);
+            String month = Config.get("vgb.report.month", "");
+            int limit = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+            if (month.isEmpty()) {
+                // Generate the full report
+                Map<UUID, Invoice> invoices = repository.readInvoices(persons, companies, items);
+                generateInvoiceReport(invoices, companies, limit, repository.readCompanySummaries(companies, invoices));
+            } else {
+                // Only one month; the summary tables hold all-time totals, so the summaries come from the invoices
+                YearMonth reportMonth = YearMonth.parse(month);
+                Map<UUID, Invoice> invoices = repository.readInvoices(persons, companies, items,
+                        reportMonth.atDay(1), reportMonth.atEndOfMonth());
+                generateInvoiceReport(invoices, companies, limit);
+            }
         } catch (Exception e) {
             System.err.println("An error occurred during report generation: " + e.getMessage());
             e.printStackTrace();
         }
-    }
-
-    /**
-     * Helper class to hold company summary data: company, number of invoices, total amount.
-     */
-    private static class CompanySummary {
-        Company company;
-        int numInvoices;
-        double totalAmount;
-
-        public CompanySummary(Company company, int numInvoices, double totalAmount) {
-            this.company = company;
-            this.numInvoices = numInvoices;
-            this.totalAmount = totalAmount;
-        }
+        Metrics.dump();
+        JdbcTracer.printReport();
     }
 }
@@ -1,5 +1,7 @@
 package com.vgb;
 
+import java.io.PrintStream;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -11,48 +13,48 @@ import java.util.Collections;
 public class InvoiceReports {
 
     public static void generateInvoiceReport(List<Invoice> invoices, Map<UUID, Company> allCompaniesMap) {
-        System.out.println("+----------------------------------------------------------------------------------------+");
-        System.out.println("| Summary Report - By Total                                                              |");
-        System.out.println("+----------------------------------------------------------------------------------------+");
-        System.out.printf("%-40s %-30s %10s %12s %12s\n", "Invoice #", "Customer", "Num Items", "Tax", "Total");
-
-        double totalTax = 0, grandTotal = 0;
-        int totalItems = 0;
-
-        Map<String, Double> companyTotals = new HashMap<>();
+        long start = Metrics.start();
+        // Counts each section's bytes for its ReportSectionEvent
+        CountingOutputStream counted = new CountingOutputStream(System.out);
+        PrintStream out = new PrintStream(counted, false, System.out.charset());
+        ReportSectionEvent section = ReportSectionEvent.begin("InvoiceReports", "Summary Report - By Total", counted);
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.println("| Summary Report - By Total                                                              |");
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.printf("%-40s %-30s %10s %12s %12s\n", "Invoice #", "Customer", "Num Items", "Tax", "Total");
+
+        PricingService.Result priced = PricingService.priceAll(invoices);
+
+        Map<String, Long> companyTotals = new HashMap<>();
         Map<String, Integer> companyCounts = new HashMap<>();
 
         // Summary content
-        for (Invoice invoice : invoices) {
-            double tax = invoice.getTotalTax();
-            double total = invoice.getTotalAmount();
-            int itemCount = invoice.getItems().size();
+        for (PricedInvoice pricedInvoice : priced.getInvoices()) {
+            Invoice invoice = pricedInvoice.getInvoice();
 
-            System.out.printf("%-40s %-30s %10d %12s %12s\n",
+            out.printf("%-40s %-30s %10d %12s %12s\n",
                     invoice.getInvoiceId(),
                     invoice.getCompany().getName(),
-                    itemCount,
-                    String.format("$%,10.2f", tax),
-                    String.format("$%,10.2f", total));
-
-            totalTax += tax;
-            grandTotal += total;
-            totalItems += itemCount;
+                    pricedInvoice.getItemCount(),
+                    String.format("$%,10.2f", pricedInvoice.getTax()),
+                    String.format("$%,10.2f", pricedInvoice.getTotal()));
 
             String company = invoice.getCompany().getName();
-            companyTotals.put(company, companyTotals.getOrDefault(company, 0.0) + total);
-            companyCounts.put(company, companyCounts.getOrDefault(company, 0) + 1);
+            companyTotals.merge(company, pricedInvoice.getTotalCents(), Long::sum);
+            companyCounts.merge(company, 1, Integer::sum);
         }
 
         // Totals row
-        System.out.println("+----------------------------------------------------------------------------------------+");
-        System.out.printf("%-71s %12s %12s\n\n", "", String.format("$%,10.2f", totalTax), String.format("$%,10.2f", grandTotal));
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.printf("%-71s %12s %12s\n\n", "", String.format("$%,10.2f", priced.getTax()), String.format("$%,10.2f", priced.getTotal()));
+        section.end(invoices.size());
 
         // Company Invoice Summary Report
-        System.out.println("+----------------------------------------------------------------+");
-        System.out.println("| Company Invoice Summary Report                                 |");
-        System.out.println("+----------------------------------------------------------------+");
-        System.out.printf("%-30s %12s %15s\n", "Company", "# Invoices", "Grand Total");
+        section = ReportSectionEvent.begin("InvoiceReports", "Company Invoice Summary Report", counted);
+        out.println("+----------------------------------------------------------------+");
+        out.println("| Company Invoice Summary Report                                 |");
+        out.println("+----------------------------------------------------------------+");
+        out.printf("%-30s %12s %15s\n", "Company", "# Invoices", "Grand Total");
 
         List<String> sortedCompanyNames = new ArrayList<>();
         for (Company company : allCompaniesMap.values()) {
@@ -62,64 +64,74 @@ public class InvoiceReports {
 
         for (String companyName : sortedCompanyNames) {
             int count = companyCounts.getOrDefault(companyName, 0);
-            double total = companyTotals.getOrDefault(companyName, 0.0);
-            System.out.printf("%-30s %12d     $%12.2f\n", companyName, count, total);
+            double total = PricedInvoice.toDollars(companyTotals.getOrDefault(companyName, 0L));
+            out.printf("%-30s %12d     $%12.2f\n", companyName, count, total);
         }
 
-        System.out.println("+----------------------------------------------------------------+");
-        System.out.printf("%-30s %12d     $%12.2f\n\n", "", invoices.size(), grandTotal);
+        out.println("+----------------------------------------------------------------+");
+        out.printf("%-30s %12d     $%12.2f\n\n", "", invoices.size(), priced.getTotal());
+        section.end(sortedCompanyNames.size());
 
         // Detailed Invoices
-        for (Invoice invoice : invoices) {
-            System.out.println("Invoice#  " + invoice.getInvoiceId());
-            System.out.println("Date      " + invoice.getDate());
+        section = ReportSectionEvent.begin("InvoiceReports", "Detailed Invoices", counted);
+        for (PricedInvoice pricedInvoice : priced.getInvoices()) {
+            Invoice invoice = pricedInvoice.getInvoice();
+            out.println("Invoice#  " + invoice.getInvoiceId());
+            out.println("Date      " + invoice.getDate());
 
             Person customer = invoice.getCompany().getCustomer();
-            System.out.println("Customer:");
-            System.out.printf("%s (%s)\n", invoice.getCompany().getName(), customer.getUuid());
-            System.out.printf("%s, %s\n", customer.getFirstName(), customer.getLastName());
-            System.out.println("[" + String.join(", ", customer.getEmails()) + "]");
-            System.out.println(invoice.getCompany().getAddress().getFormattedAddress());
+            out.println("Customer:");
+            out.printf("%s (%s)\n", invoice.getCompany().getName(), customer.getUuid());
+            out.printf("%s, %s\n", customer.getFirstName(), customer.getLastName());
+            out.println("[" + String.join(", ", customer.getEmails()) + "]");
+            out.println(invoice.getCompany().getAddress().getFormattedAddress());
 
             Person salesperson = invoice.getSalesperson();
-            System.out.println("Sales Person:");
-            System.out.printf("%s, %s\n", salesperson.getFirstName(), salesperson.getLastName());
-            System.out.println("[" + String.join(", ", salesperson.getEmails()) + "]");
+            out.println("Sales Person:");
+            out.printf("%s, %s\n", salesperson.getFirstName(), salesperson.getLastName());
+            out.println("[" + String.join(", ", salesperson.getEmails()) + "]");
 
-            System.out.printf("Items (%d)                                                            Tax       Total\n", invoice.getItems().size());
-            System.out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-                          -=-=-=-=-=- -=-=-=-=-=");
+            out.printf("Items (%d)                                                            Tax       Total\n", invoice.getItems().size());
+            out.println("-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-                          -=-=-=-=-=- -=-=-=-=-=");
 
             for (InvoiceItem item : invoice.getItems()) {
-                System.out.printf("%s (%s) %s\n",
+                out.printf("%s (%s) %s\n",
                         item.getItem().getUuid(),
                         item.getItem().getClass().getSimpleName(),
                         item.getItem().getName());
-                System.out.printf("                                                             $%10.2f $%10.2f\n",
+                out.printf("                                                             $%10.2f $%10.2f\n",
                         item.getTax(), item.getSubtotal());
             }
 
-            System.out.println("                                                             -=-=-=-=-=- -=-=-=-=-=");
-            System.out.printf("                                                   Subtotals $%10.2f $%10.2f\n",
-                    invoice.getTotalTax(),
-                    invoice.getSubtotal());
-            System.out.printf("                                                 Grand Total           $%10.2f\n\n",
-                    invoice.getTotalAmount());
+            out.println("                                                             -=-=-=-=-=- -=-=-=-=-=");
+            out.printf("                                                   Subtotals $%10.2f $%10.2f\n",
+                    pricedInvoice.getTax(),
+                    pricedInvoice.getSubtotal());
+            out.printf("                                                 Grand Total           $%10.2f\n\n",
+                    pricedInvoice.getTotal());
         }
+        section.end(invoices.size());
+        out.flush();
+        Metrics.record("report.invoiceReports", start);
     }
 
     public static void main(String[] args) {
-        String personsFile = "data/Persons.csv";
-        String companiesFile = "data/Companies.csv";
-        String itemsFile = "data/Items.csv";
-        String invoicesFile = "data/Invoices.csv";
-        String invoiceItemsFile = "data/InvoiceItems.csv";
-
-        Map<UUID, Person> persons = CSVReaderUtil.readPersons(personsFile);
-        Map<UUID, Company> companies = CSVReaderUtil.readCompanies(companiesFile, persons);
-        Map<UUID, Item> items = CSVReaderUtil.readItems(itemsFile, companies);
-        Map<UUID, Invoice> invoices = CSVReaderUtil.loadInvoices(invoicesFile, persons, companies);
-        CSVReaderUtil.readInvoiceItems(invoiceItemsFile, invoices, items);
+        // Reads the CSV files unless vgb.repository says otherwise
+        InvoiceRepository repository = InvoiceRepository.fromConfig("csv");
+        Map<UUID, Person> persons = repository.readPersons();
+        Map<UUID, Company> companies = repository.readCompanies(persons);
+        Map<UUID, Item> items = repository.readItems(companies);
+        String month = Config.get("vgb.report.month", "");
+        Map<UUID, Invoice> invoices;
+        if (month.isEmpty()) {
+            invoices = repository.readInvoices(persons, companies, items);
+        } else {
+            YearMonth reportMonth = YearMonth.parse(month);
+            invoices = repository.readInvoices(persons, companies, items, reportMonth.atDay(1), reportMonth.atEndOfMonth());
+        }
 
         generateInvoiceReport(new ArrayList<>(invoices.values()), companies);
+        Metrics.dump();
+        JdbcTracer.printReport();
     }
 }
@@ -0,0 +1,96 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Source of the invoice object graph. Reports, converters and benchmarks read
+ * through this interface so the same code runs against the CSV files, the
+ * database or an in-memory snapshot.
+ *
+ * The reads mirror the CSVReaderUtil and DBReaderUtil methods: each takes the
+ * objects the next level refers to, so callers build one connected graph.
+ *
+ * The backend is chosen with {@link #fromConfig(String)}:
+ * <ul>
+ * <li><code>vgb.repository</code>: <code>csv</code>, <code>db</code> or
+ * <code>memory</code> (a snapshot of the CSV files)</li>
+ * <li><code>vgb.repository.dataDir</code>: directory of the CSV files (default <code>data</code>)</li>
+ * <li><code>vgb.repository.cache</code>: wrap the backend in a
+ * {@link CachingInvoiceRepository} (default false)</li>
+ * </ul>
+ */
+public interface InvoiceRepository {
+
+    Map<UUID, Person> readPersons();
+
+    Map<UUID, Company> readCompanies(Map<UUID, Person> persons);
+
+    Map<UUID, Item> readItems(Map<UUID, Company> companies);
+
+    /**
+     * Reads all invoices with their line items attached.
+     */
+    Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies, Map<UUID, Item> items);
+
+    /**
+     * Reads the invoices dated within a range, with their line items. By
+     * default all invoices are read and filtered; the CSV and database
+     * repositories only read the months or index range asked for.
+     *
+     * @param from first date included, or null for no lower bound
+     * @param to   last date included, or null for no upper bound
+     */
+    default Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                            Map<UUID, Item> items, LocalDate from, LocalDate to) {
+        Map<UUID, Invoice> invoices = new HashMap<>();
+        for (Invoice invoice : readInvoices(persons, companies, items).values()) {
+            if (invoice.isDatedBetween(from, to)) {
+                invoices.put(invoice.getInvoiceId(), invoice);
+            }
+        }
+        return invoices;
+    }
+
+    /**
+     * Returns the invoice count and total of every company, including
+     * companies without invoices. By default the invoices are priced and
+     * summed; repositories that maintain totals read them instead.
+     *
+     * @param companies the companies to summarize
+     * @param invoices  invoices from {@link #readInvoices}
+     */
+    default List<CompanySummary> readCompanySummaries(Map<UUID, Company> companies, Map<UUID, Invoice> invoices) {
+        List<PricedInvoice> priced = PricingService.priceAll(new ArrayList<>(invoices.values())).getInvoices();
+        return CompanySummary.summarize(priced, companies.values());
+    }
+
+    /**
+     * Creates the repository named by <code>vgb.repository</code>.
+     *
+     * @param defaultBackend the backend to use when none is configured
+     */
+    static InvoiceRepository fromConfig(String defaultBackend) {
+        String backend = Config.get("vgb.repository", defaultBackend);
+        String dataDir = Config.get("vgb.repository.dataDir", "data");
+        InvoiceRepository repository;
+        switch (backend.toLowerCase()) {
+            case "csv":
+                repository = new CSVInvoiceRepository(dataDir);
+                break;
+            case "db":
+                repository = new JdbcInvoiceRepository();
+                break;
+            case "memory":
+                repository = InMemoryInvoiceRepository.copyOf(new CSVInvoiceRepository(dataDir));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown repository: " + backend);
+        }
+        return Config.getBoolean("vgb.repository.cache", false) ? new CachingInvoiceRepository(repository) : repository;
+    }
+}
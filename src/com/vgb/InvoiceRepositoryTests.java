@@ -0,0 +1,192 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class InvoiceRepositoryTests {
+
+    @Test
+    public void testSnapshotMatchesSource() {
+        InvoiceRepository csv = new CSVInvoiceRepository("data");
+        InvoiceRepository memory = InMemoryInvoiceRepository.copyOf(csv);
+
+        Map<UUID, Person> persons = csv.readPersons();
+        Map<UUID, Company> companies = csv.readCompanies(persons);
+        Map<UUID, Item> items = csv.readItems(companies);
+        Map<UUID, Invoice> invoices = csv.readInvoices(persons, companies, items);
+
+        assertEquals(persons.keySet(), memory.readPersons().keySet());
+        assertEquals(companies.keySet(), memory.readCompanies(null).keySet());
+        assertEquals(items.keySet(), memory.readItems(null).keySet());
+        Map<UUID, Invoice> snapshot = memory.readInvoices(null, null, null);
+        assertEquals(invoices.keySet(), snapshot.keySet());
+        for (Invoice invoice : invoices.values()) {
+            assertEquals(invoice.getItems().size(), snapshot.get(invoice.getInvoiceId()).getItems().size());
+        }
+    }
+
+    @Test
+    public void testCacheReusesResultsBuiltFromTheSameMaps() {
+        CachingInvoiceRepository cached = new CachingInvoiceRepository(new CSVInvoiceRepository("data"));
+        Map<UUID, Person> persons = cached.readPersons();
+        Map<UUID, Company> companies = cached.readCompanies(persons);
+
+        assertSame(persons, cached.readPersons());
+        assertSame(companies, cached.readCompanies(persons));
+        assertNotSame(companies, cached.readCompanies(new CSVInvoiceRepository("data").readPersons()));
+
+        cached.invalidate();
+        assertNotSame(persons, cached.readPersons());
+    }
+
+    @Test
+    public void testIndexLookupsMatchScans() {
+        InMemoryInvoiceRepository memory = InMemoryInvoiceRepository.copyOf(new CSVInvoiceRepository("data"));
+        InvoiceIndex index = memory.getIndex();
+        Collection<Invoice> invoices = memory.readInvoices(null, null, null).values();
+        assertEquals(invoices.size(), index.size());
+
+        for (Invoice invoice : invoices) {
+            UUID company = invoice.getCompany().getUuid();
+            assertEquals(invoices.stream().filter(i -> i.getCompany().getUuid().equals(company)).count(),
+                    index.forCompany(company).size());
+            UUID salesperson = invoice.getSalesperson().getUuid();
+            assertTrue(index.forSalesperson(salesperson).contains(invoice));
+            for (InvoiceItem item : invoice.getItems()) {
+                assertTrue(index.withItem(item.getItem().getUuid()).contains(invoice));
+            }
+            assertEquals(List.of(invoice), index.between(invoice.getDate(), invoice.getDate()));
+        }
+        assertEquals(invoices.size(), index.between(null, null).size());
+        assertTrue(index.between(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 1, 1)).isEmpty());
+        assertTrue(index.forCompany(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    public void testDateRangeReadOnlyOpensOverlappingMonths(@TempDir Path dir) throws IOException {
+        for (String file : List.of("Persons.csv", "Companies.csv", "Items.csv", "Invoices.csv", "InvoiceItems.csv")) {
+            Files.copy(Paths.get("data", file), dir.resolve(file));
+        }
+        String dataDir = dir.toString();
+        InvoiceRepository csv = new CSVInvoiceRepository(dataDir);
+        Map<UUID, Person> persons = csv.readPersons();
+        Map<UUID, Company> companies = csv.readCompanies(persons);
+        Map<UUID, Item> items = csv.readItems(companies);
+        Map<UUID, Invoice> all = csv.readInvoices(persons, companies, items);
+
+        assertEquals(2, MonthPartitions.partition(dataDir));
+        LocalDate from = LocalDate.of(2025, 1, 1);
+        LocalDate to = LocalDate.of(2025, 1, 31);
+        assertEquals(List.of(YearMonth.of(2025, 1)), MonthPartitions.months(dataDir, from, to));
+
+        Map<UUID, Invoice> january = csv.readInvoices(persons, companies, items, from, to);
+        assertEquals(1, january.size());
+        for (Invoice invoice : january.values()) {
+            assertTrue(invoice.isDatedBetween(from, to));
+            assertEquals(all.get(invoice.getInvoiceId()).getItems().size(), invoice.getItems().size());
+        }
+        assertEquals(all.keySet(), csv.readInvoices(persons, companies, items).keySet());
+
+        // Folders that are not months are left alone
+        Files.createDirectories(dir.resolve(MonthPartitions.DIR).resolve("archive"));
+        assertEquals(2, MonthPartitions.months(dataDir).size());
+
+        // A changed source file takes the partitions out of use
+        List<String> lines = Files.readAllLines(dir.resolve("Invoices.csv"));
+        Files.write(dir.resolve("Invoices.csv"), lines.subList(0, lines.size() - 1));
+        assertFalse(MonthPartitions.isCurrent(dataDir));
+        assertEquals(all.size() - 1, csv.readInvoices(persons, companies, items).size());
+    }
+
+    @Test
+    public void testPartitioningRejectsBadDatesAndUnknownInvoices(@TempDir Path dir) throws IOException {
+        for (String file : List.of("Invoices.csv", "InvoiceItems.csv")) {
+            Files.copy(Paths.get("data", file), dir.resolve(file));
+        }
+        List<String> invoices = Files.readAllLines(dir.resolve("Invoices.csv"));
+        String[] first = invoices.get(1).split(",");
+        UUID undated = UUID.randomUUID();
+        Files.writeString(dir.resolve("Invoices.csv"),
+                "\n" + undated + "," + first[1] + "," + first[2] + ",2025-13-01\n", StandardOpenOption.APPEND);
+        String equipmentUuid = Files.readAllLines(dir.resolve("InvoiceItems.csv")).get(1).split(",")[1];
+        Files.writeString(dir.resolve("InvoiceItems.csv"),
+                "\n" + undated + "," + equipmentUuid + ",P\n", StandardOpenOption.APPEND);
+
+        Path rejects = dir.resolve("rejects.csv");
+        CsvRejects.redirect(rejects);
+        try {
+            assertEquals(2, MonthPartitions.partition(dir.toString()));
+        } finally {
+            CsvRejects.redirect(null);
+        }
+        List<String> written = Files.readAllLines(rejects);
+        assertEquals(3, written.size());
+        assertTrue(written.get(1).contains("Invoices.csv,line " + (invoices.size() + 1) + ",malformed"), written.get(1));
+        assertTrue(written.get(2).contains(",unknown invoice " + undated + ","), written.get(2));
+    }
+
+    @Test
+    public void testInvalidRowsGoToTheRejectFile(@TempDir Path dir) throws IOException {
+        for (String file : List.of("Persons.csv", "Companies.csv", "Items.csv", "Invoices.csv", "InvoiceItems.csv")) {
+            Files.copy(Paths.get("data", file), dir.resolve(file));
+        }
+        String invoiceUuid = Files.readAllLines(dir.resolve("Invoices.csv")).get(1).split(",")[0];
+        String equipmentUuid = Files.readAllLines(dir.resolve("Items.csv")).get(1).split(",")[0];
+        Files.writeString(dir.resolve("Items.csv"), String.join("\n",
+                UUID.randomUUID() + ",X,Mystery,thing,1",
+                UUID.randomUUID() + ",E,Crane,C1",
+                "not-a-uuid,M,Sand,ton,2",
+                "") + "\n", StandardOpenOption.APPEND);
+        // The sample file has no final newline
+        Files.writeString(dir.resolve("InvoiceItems.csv"), String.join("\n", "",
+                invoiceUuid + "," + equipmentUuid + ",L,2025-01-01",
+                invoiceUuid + "," + equipmentUuid + ",R,many",
+                UUID.randomUUID() + "," + equipmentUuid + ",P",
+                "") + "\n", StandardOpenOption.APPEND);
+
+        Path rejects = dir.resolve("rejects.csv");
+        CsvRejects.redirect(rejects);
+        try {
+            InvoiceRepository csv = new CSVInvoiceRepository(dir.toString());
+            Map<UUID, Person> persons = csv.readPersons();
+            Map<UUID, Company> companies = csv.readCompanies(persons);
+            Map<UUID, Item> items = csv.readItems(companies);
+            Map<UUID, Invoice> invoices = csv.readInvoices(persons, companies, items);
+
+            InvoiceRepository original = new CSVInvoiceRepository("data");
+            Map<UUID, Person> originalPersons = original.readPersons();
+            Map<UUID, Company> originalCompanies = original.readCompanies(originalPersons);
+            Map<UUID, Item> originalItems = original.readItems(originalCompanies);
+            assertEquals(originalItems.keySet(), items.keySet());
+            assertEquals(original.readInvoices(originalPersons, originalCompanies, originalItems)
+                    .get(UUID.fromString(invoiceUuid)).getItems().size(),
+                    invoices.get(UUID.fromString(invoiceUuid)).getItems().size());
+        } finally {
+            CsvRejects.redirect(null);
+        }
+
+        List<String> lines = Files.readAllLines(rejects);
+        assertEquals("file,position,reason,row", lines.get(0));
+        assertEquals(7, lines.size());
+        assertTrue(lines.get(1).contains("unknown item type X"));
+        assertTrue(lines.get(2).contains("expected a retail price"));
+        assertTrue(lines.get(3).contains("malformed: Invalid UUID string: not-a-uuid"));
+        assertTrue(lines.get(4).contains("expected lease start and end dates"));
+        assertTrue(lines.get(5).contains("malformed"));
+        assertTrue(lines.get(6).contains("unknown invoice"));
+        assertTrue(lines.get(6).endsWith(equipmentUuid + ",P"));
+    }
+}
@@ -0,0 +1,355 @@
+package com.vgb;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Embedded HTTP API over an {@link InvoiceStore}, served by the JDK HTTP
+ * server with one virtual thread per request.
+ *
+ * <ul>
+ * <li><code>GET /invoices/{uuid}</code>: one invoice with its line items and totals</li>
+ * <li><code>GET /invoices?company=&amp;salesperson=&amp;from=&amp;to=&amp;after=&amp;limit=</code>:
+ * a page of invoices in date order; <code>next</code> in the response is the
+ * <code>after</code> of the following page (see {@link InvoiceQuery}).
+ * <code>limit</code> defaults to {@value InvoiceQuery#DEFAULT_PAGE_SIZE}, and
+ * one above {@value InvoiceQuery#MAX_PAGE_SIZE} is answered with 400</li>
+ * <li><code>GET /companies/summary</code>: invoice count and total of every
+ * company, largest total first</li>
+ * </ul>
+ *
+ * Requests read a snapshot of the store together with its
+ * {@link InvoiceIndex} and the priced company summaries. When the store has
+ * changed, the request that notices starts one background refresh of the
+ * snapshot and, like every request until it finishes, is served from the
+ * previous one; changes made during a refresh are picked up by the next, so a
+ * busy store is copied at most once at a time instead of on every write. With <code>vgb.server.listings=db</code> the invoice
+ * listing is queried from the database with
+ * {@link DBReaderUtil#queryInvoices} instead. Responses are streamed as
+ * chunked JSON with a Jackson generator, so large pages are never built in
+ * memory. Every endpoint is timed in the <code>http.*</code> metrics.
+ *
+ * Run it with <code>InvoiceServer [port]</code> (default
+ * <code>vgb.server.port</code>, 8080) to serve the repository named by
+ * <code>vgb.repository</code>.
+ */
+public class InvoiceServer implements AutoCloseable {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    static {
+        // Without TCP_NODELAY a chunked response waits on the client's delayed
+        // ACK, adding ~40 ms to every request; must be set before the first server
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final InvoiceStore store;
+    private final boolean dbListings = "db".equalsIgnoreCase(Config.get("vgb.server.listings", "memory"));
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile View view;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * Starts serving the store.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public InvoiceServer(InvoiceStore store, int port) throws IOException {
+        this.store = store;
+        this.server = HttpServer.create(new InetSocketAddress(port), Config.getInt("vgb.server.backlog", 1024));
+        server.setExecutor(executor);
+        server.createContext("/invoices", this::handleInvoices);
+        server.createContext("/companies/summary", this::handleSummaries);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Config.getInt("vgb.server.port", 8080);
+        InvoiceStore store = InvoiceStore.copyOf(InvoiceRepository.fromConfig("csv"));
+        InvoiceServer server = new InvoiceServer(store, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            Metrics.dump();
+        }));
+        System.out.println("Serving invoices on http://localhost:" + server.getPort() + "/");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for running ones.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    private void handleInvoices(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/invoices") || path.equals("/invoices/")) {
+            handle(exchange, "http.listInvoices", () -> listInvoices(exchange));
+        } else {
+            handle(exchange, "http.getInvoice", () -> getInvoice(exchange, path.substring("/invoices/".length())));
+        }
+    }
+
+    private void handleSummaries(HttpExchange exchange) throws IOException {
+        handle(exchange, "http.companySummaries", () -> companySummaries(exchange));
+    }
+
+    private void getInvoice(HttpExchange exchange, String uuid) throws IOException {
+        Invoice invoice = view().invoices.get(UUID.fromString(uuid));
+        if (invoice == null) {
+            error(exchange, 404, "Invoice not found: " + uuid);
+            return;
+        }
+        try (JsonGenerator json = begin(exchange, 200)) {
+            writeInvoice(json, PricedInvoice.of(invoice), true);
+        }
+    }
+
+    private void listInvoices(HttpExchange exchange) throws IOException {
+        Map<String, String> params = params(exchange);
+        InvoiceQuery query = new InvoiceQuery();
+        if (params.containsKey("company")) {
+            query.forCompany(UUID.fromString(params.get("company")));
+        }
+        if (params.containsKey("salesperson")) {
+            query.forSalesperson(UUID.fromString(params.get("salesperson")));
+        }
+        query.between(params.containsKey("from") ? LocalDate.parse(params.get("from")) : null,
+                params.containsKey("to") ? LocalDate.parse(params.get("to")) : null);
+        if (params.containsKey("after")) {
+            query.after(InvoiceQuery.Cursor.parse(params.get("after")));
+        }
+        if (params.containsKey("limit")) {
+            query.pageSize(Integer.parseInt(params.get("limit")));
+        }
+
+        View view = view();
+        InvoicePage page = dbListings
+                ? DBReaderUtil.queryInvoices(query, view.repository.readPersons(), view.repository.readCompanies(null))
+                : view.index.query(query);
+        try (JsonGenerator json = begin(exchange, 200)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("invoices");
+            for (Invoice invoice : page.getInvoices()) {
+                // Database pages carry no line items, so take the priced invoice from the snapshot
+                Invoice loaded = view.invoices.getOrDefault(invoice.getInvoiceId(), invoice);
+                writeInvoice(json, PricedInvoice.of(loaded), false);
+            }
+            json.writeEndArray();
+            json.writeStringField("next", page.hasNext() ? page.getNext().toString() : null);
+            json.writeEndObject();
+        }
+    }
+
+    private void companySummaries(HttpExchange exchange) throws IOException {
+        try (JsonGenerator json = begin(exchange, 200)) {
+            json.writeStartArray();
+            for (CompanySummary summary : view().summaries()) {
+                json.writeStartObject();
+                json.writeStringField("uuid", summary.getCompany().getUuid().toString());
+                json.writeStringField("name", summary.getCompany().getName());
+                json.writeNumberField("invoices", summary.getNumInvoices());
+                json.writeNumberField("total", BigDecimal.valueOf(summary.getTotalCents(), 2));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static void writeInvoice(JsonGenerator json, PricedInvoice priced, boolean withItems) throws IOException {
+        Invoice invoice = priced.getInvoice();
+        json.writeStartObject();
+        json.writeStringField("uuid", invoice.getInvoiceId().toString());
+        json.writeStringField("date", invoice.getDate().toString());
+        json.writeObjectFieldStart("company");
+        json.writeStringField("uuid", invoice.getCompany().getUuid().toString());
+        json.writeStringField("name", invoice.getCompany().getName());
+        json.writeEndObject();
+        json.writeObjectFieldStart("salesperson");
+        json.writeStringField("uuid", invoice.getSalesperson().getUuid().toString());
+        json.writeStringField("name", invoice.getSalesperson().getFirstName() + " " + invoice.getSalesperson().getLastName());
+        json.writeEndObject();
+        json.writeNumberField("itemCount", priced.getItemCount());
+        json.writeNumberField("subtotal", BigDecimal.valueOf(priced.getSubtotalCents(), 2));
+        json.writeNumberField("tax", BigDecimal.valueOf(priced.getTaxCents(), 2));
+        json.writeNumberField("total", BigDecimal.valueOf(priced.getTotalCents(), 2));
+        if (withItems) {
+            json.writeArrayFieldStart("items");
+            for (InvoiceItem item : invoice.getItems()) {
+                json.writeStartObject();
+                json.writeStringField("uuid", item.getItem().getUuid().toString());
+                json.writeStringField("type", item.getItem().getClass().getSimpleName());
+                json.writeStringField("name", item.getItem().getName());
+                json.writeNumberField("subtotal", BigDecimal.valueOf(PricedInvoice.toCents(item.getSubtotal()), 2));
+                json.writeNumberField("tax", BigDecimal.valueOf(PricedInvoice.toCents(item.getTax()), 2));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Runs a handler, mapping malformed parameters to 400 and anything else
+     * that fails to 500, and times it.
+     */
+    private static void handle(HttpExchange exchange, String metric, Handler handler) throws IOException {
+        long start = Metrics.start();
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                error(exchange, 405, "Only GET is supported");
+                return;
+            }
+            try {
+                handler.run();
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                error(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                Metrics.increment("http.errors");
+                e.printStackTrace();
+                error(exchange, 500, "Internal error");
+            }
+        } finally {
+            Metrics.record(metric, start);
+        }
+    }
+
+    /**
+     * Sends the headers of a chunked JSON response and returns a generator
+     * writing its body; closing the generator ends the response.
+     */
+    private static JsonGenerator begin(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream body = exchange.getResponseBody();
+        return JSON.createGenerator(body);
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // The response has already started; the client sees a truncated body
+            return;
+        }
+        try (JsonGenerator json = begin(exchange, status)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+        }
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Returns the current view, starting a refresh in the background if the
+     * store has changed since it was taken. Only the first request waits for
+     * a snapshot.
+     */
+    private View view() {
+        View current = view;
+        if (current == null) {
+            synchronized (this) {
+                if (view == null) {
+                    view = new View(store.getVersion(), store.snapshot());
+                }
+                return view;
+            }
+        }
+        if (current.version != store.getVersion() && refreshing.compareAndSet(false, true)) {
+            executor.execute(this::refresh);
+        }
+        return current;
+    }
+
+    /**
+     * Takes snapshots until the view is at the store's version.
+     */
+    private void refresh() {
+        try {
+            long version;
+            while (view.version != (version = store.getVersion())) {
+                long start = Metrics.start();
+                view = new View(version, store.snapshot());
+                Metrics.record("http.viewRefresh", start);
+            }
+        } catch (RuntimeException e) {
+            Metrics.increment("http.errors");
+            e.printStackTrace();
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * A snapshot of the store with what the endpoints need from it.
+     */
+    private static class View {
+        final long version;
+        final InMemoryInvoiceRepository repository;
+        final Map<UUID, Invoice> invoices;
+        final InvoiceIndex index;
+        private List<CompanySummary> summaries;
+
+        View(long version, InMemoryInvoiceRepository repository) {
+            this.version = version;
+            this.repository = repository;
+            this.invoices = repository.readInvoices(null, null, null);
+            this.index = repository.getIndex();
+        }
+
+        synchronized List<CompanySummary> summaries() {
+            if (summaries == null) {
+                List<PricedInvoice> priced = PricingService.priceAll(new ArrayList<>(invoices.values())).getInvoices();
+                summaries = CompanySummary.summarize(priced, repository.readCompanies(null).values());
+                summaries.sort(CompanySummary.BY_TOTAL_DESC);
+            }
+            return summaries;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void run() throws IOException;
+    }
+}
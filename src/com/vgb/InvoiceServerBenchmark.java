@@ -0,0 +1,215 @@
+package com.vgb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for {@link InvoiceServer}. Concurrent clients, each on its own
+ * virtual thread, send requests back to back for a fixed time: 60% invoice
+ * lookups, 30% listing pages (following <code>next</code> from a random
+ * starting point) and 10% company summaries. It reports requests per second
+ * and latency percentiles per endpoint and overall.
+ *
+ * Without <code>vgb.benchmark.url</code> the server is started in-process on
+ * the repository named by <code>vgb.repository</code>, padded with synthetic
+ * invoices copied from the real ones so listings have pages to walk.
+ *
+ * Usage: <code>InvoiceServerBenchmark [clients] [seconds] [syntheticInvoices]</code>
+ * (default 64, 10 and 10000)
+ */
+public class InvoiceServerBenchmark {
+
+    private static final String[] ENDPOINTS = {"getInvoice", "listInvoices", "companySummaries"};
+    private static final String TOTAL = "total";
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int synthetic = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+        String url = Config.get("vgb.benchmark.url", "");
+        InvoiceServer server = null;
+        if (url.isEmpty()) {
+            InvoiceStore store = InvoiceStore.copyOf(InvoiceRepository.fromConfig("csv"));
+            addSyntheticInvoices(store, synthetic);
+            server = new InvoiceServer(store, 0);
+            url = "http://localhost:" + server.getPort();
+        }
+
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder().executor(threads).connectTimeout(Duration.ofSeconds(5)).build();
+            List<String> uuids = invoiceUuids(client, url);
+            if (uuids.isEmpty()) {
+                System.err.println("No invoices to request at " + url);
+                return;
+            }
+
+            Map<String, Metrics.Histogram> latencies = new LinkedHashMap<>();
+            Map<String, LongAdder> errors = new LinkedHashMap<>();
+            for (String endpoint : ENDPOINTS) {
+                latencies.put(endpoint, new Metrics.Histogram());
+                errors.put(endpoint, new LongAdder());
+            }
+            latencies.put(TOTAL, new Metrics.Histogram());
+
+            // A short warm-up, then the measured run
+            run(client, url, uuids, clients, 2, new LinkedHashMap<>(), errors);
+            errors.values().forEach(LongAdder::reset);
+            long start = System.nanoTime();
+            run(client, url, uuids, clients, seconds, latencies, errors);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            print(url, clients, elapsed, latencies, errors);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the clients for the given number of seconds, recording latencies
+     * in nanoseconds (when a histogram exists for the endpoint) and failures.
+     */
+    private static void run(HttpClient client, String url, List<String> uuids, int clients, int seconds,
+                            Map<String, Metrics.Histogram> latencies, Map<String, LongAdder> errors)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                String next = null;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int pick = random.nextInt(10);
+                    String endpoint;
+                    String path;
+                    if (pick < 6) {
+                        endpoint = "getInvoice";
+                        path = "/invoices/" + uuids.get(random.nextInt(uuids.size()));
+                    } else if (pick < 9) {
+                        endpoint = "listInvoices";
+                        path = "/invoices?limit=50" + (next != null ? "&after=" + next : "");
+                    } else {
+                        endpoint = "companySummaries";
+                        path = "/companies/summary";
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + path)).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            errors.get(endpoint).increment();
+                            continue;
+                        }
+                        if (endpoint.equals("listInvoices")) {
+                            next = nextCursor(response.body());
+                        }
+                    } catch (IOException e) {
+                        errors.get(endpoint).increment();
+                        continue;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    Metrics.Histogram histogram = latencies.get(endpoint);
+                    if (histogram != null) {
+                        long nanos = System.nanoTime() - start;
+                        histogram.record(nanos);
+                        latencies.get(TOTAL).record(nanos);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void print(String url, int clients, double elapsed, Map<String, Metrics.Histogram> latencies,
+                              Map<String, LongAdder> errors) {
+        System.out.printf("%s, %d clients, %.1f s%n", url, clients, elapsed);
+        System.out.printf("%-20s %10s %10s %10s %10s %10s %8s%n", "endpoint", "requests", "req/s",
+                "p50 ms", "p99 ms", "max ms", "errors");
+        long failed = 0;
+        for (String endpoint : ENDPOINTS) {
+            printRow(endpoint, latencies.get(endpoint), elapsed, errors.get(endpoint).sum());
+            failed += errors.get(endpoint).sum();
+        }
+        printRow(TOTAL, latencies.get(TOTAL), elapsed, failed);
+    }
+
+    private static void printRow(String name, Metrics.Histogram histogram, double elapsed, long errors) {
+        System.out.printf("%-20s %10d %10.0f %10.2f %10.2f %10.2f %8d%n", name, histogram.getCount(),
+                histogram.getCount() / elapsed, histogram.percentile(50) / 1e6, histogram.percentile(99) / 1e6,
+                histogram.getMax() / 1e6, errors);
+    }
+
+    /**
+     * Collects invoice UUIDs to look up by walking the first pages of the listing.
+     */
+    private static List<String> invoiceUuids(HttpClient client, String url) throws IOException, InterruptedException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> uuids = new ArrayList<>();
+        String next = null;
+        do {
+            String path = "/invoices?limit=500" + (next != null ? "&after=" + next : "");
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + path)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode page = mapper.readTree(response.body());
+            for (JsonNode invoice : page.get("invoices")) {
+                uuids.add(invoice.get("uuid").asText());
+            }
+            next = page.get("next").isNull() ? null : page.get("next").asText();
+        } while (next != null && uuids.size() < 10000);
+        return uuids;
+    }
+
+    /**
+     * Extracts <code>next</code> from a listing page without parsing the rest.
+     */
+    private static String nextCursor(String body) {
+        int field = body.lastIndexOf("\"next\":");
+        if (field < 0 || body.startsWith("null", field + 7)) {
+            return null;
+        }
+        int start = field + 8;
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    /**
+     * Adds copies of randomly chosen invoices under new UUIDs and dates in 2024-2025.
+     */
+    private static void addSyntheticInvoices(InvoiceStore store, int count) {
+        List<Invoice> templates = new ArrayList<>(store.snapshot().readInvoices(null, null, null).values());
+        if (templates.isEmpty()) {
+            return;
+        }
+        Random random = new Random(11);
+        LocalDate first = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < count; i++) {
+            Invoice template = templates.get(random.nextInt(templates.size()));
+            Invoice invoice = new Invoice(UUID.randomUUID(), template.getCompany(), template.getSalesperson(),
+                    first.plusDays(random.nextInt(730)));
+            invoice.addItems(template.getItems());
+            store.addInvoice(invoice);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+public class InvoiceServerTests {
+
+    @Test
+    public void testListingPagesReachEveryInvoice() throws Exception {
+        InvoiceStore store = InvoiceStore.copyOf(new CSVInvoiceRepository("data"));
+        int invoices = store.snapshot().readInvoices(null, null, null).size();
+        ObjectMapper mapper = new ObjectMapper();
+        HttpClient client = HttpClient.newHttpClient();
+
+        try (InvoiceServer server = new InvoiceServer(store, 0)) {
+            String url = "http://localhost:" + server.getPort();
+            int seen = 0;
+            String next = null;
+            do {
+                HttpResponse<String> page = client.send(HttpRequest.newBuilder(URI.create(url + "/invoices?limit=1"
+                        + (next != null ? "&after=" + next : ""))).build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, page.statusCode());
+                JsonNode body = mapper.readTree(page.body());
+                for (JsonNode invoice : body.get("invoices")) {
+                    HttpResponse<String> one = client.send(HttpRequest.newBuilder(
+                            URI.create(url + "/invoices/" + invoice.get("uuid").asText())).build(),
+                            HttpResponse.BodyHandlers.ofString());
+                    assertEquals(200, one.statusCode());
+                    assertEquals(invoice.get("total"), mapper.readTree(one.body()).get("total"));
+                    seen++;
+                }
+                next = body.get("next").isNull() ? null : body.get("next").asText();
+            } while (next != null);
+            assertEquals(invoices, seen);
+
+            HttpResponse<String> missing = client.send(HttpRequest.newBuilder(
+                    URI.create(url + "/invoices/00000000-0000-0000-0000-000000000000")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, missing.statusCode());
+        }
+    }
+
+    @Test
+    public void testLimitAboveMaximumIsRejectedAndChangesAreServed() throws Exception {
+        InvoiceStore store = InvoiceStore.copyOf(new CSVInvoiceRepository("data"));
+        Invoice template = store.snapshot().readInvoices(null, null, null).values().iterator().next();
+        HttpClient client = HttpClient.newHttpClient();
+
+        try (InvoiceServer server = new InvoiceServer(store, 0)) {
+            String url = "http://localhost:" + server.getPort();
+            HttpResponse<String> tooLarge = client.send(HttpRequest.newBuilder(URI.create(url + "/invoices?limit="
+                    + (InvoiceQuery.MAX_PAGE_SIZE + 1))).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, tooLarge.statusCode());
+
+            // The store changes after the first view was taken; a background refresh picks it up
+            UUID added = UUID.randomUUID();
+            store.addInvoice(new Invoice(added, template.getCompany(), template.getSalesperson(), template.getDate()));
+            int status = 0;
+            for (int attempt = 0; attempt < 100 && status != 200; attempt++) {
+                status = client.send(HttpRequest.newBuilder(URI.create(url + "/invoices/" + added)).build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode();
+                if (status != 200) {
+                    Thread.sleep(20);
+                }
+            }
+            assertEquals(200, status);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.vgb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutable, thread-safe home of the invoice object graph for a long-running
+ * service: writers add persons, companies, items, invoices and line items
+ * concurrently while report threads work on stable snapshots.
+ *
+ * Each registry is a ConcurrentHashMap, and invoices keep their line items in
+ * a copy-on-write list (see {@link Invoice#getItems()}), so individual reads
+ * and writes never block each other.
+ *
+ * {@link #snapshot()} copies the graph into an {@link InMemoryInvoiceRepository}
+ * that no later write changes, without pausing writers. Every invoice and line
+ * item write is stamped from one clock, and the store keeps each invoice's
+ * line items in an immutable list, replaced on every add, with the stamp of
+ * each item. A snapshot reads the clock and then copies the invoices and line
+ * items stamped up to that point, so writes that land during the copy are
+ * left out instead of forcing a retry. A write still in progress when the
+ * clock is read may be left out too; it finishes after the snapshot began, so
+ * {@link #getVersion()} moves past the version read before it. Persons,
+ * companies and items are shared with the store and include any added during
+ * the copy. A snapshot costs one pass over the invoices and their line items.
+ */
+public class InvoiceStore {
+
+    private final Map<UUID, Person> persons = new ConcurrentHashMap<>();
+    private final Map<UUID, Company> companies = new ConcurrentHashMap<>();
+    private final Map<UUID, Item> items = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> invoices = new ConcurrentHashMap<>();
+
+    // Stamps invoice and line item writes; a snapshot takes those up to its reading
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+
+    /**
+     * Creates a store holding everything read from the source.
+     */
+    public static InvoiceStore copyOf(InvoiceRepository source) {
+        InvoiceStore store = new InvoiceStore();
+        Map<UUID, Person> persons = source.readPersons();
+        Map<UUID, Company> companies = source.readCompanies(persons);
+        Map<UUID, Item> items = source.readItems(companies);
+        store.persons.putAll(persons);
+        store.companies.putAll(companies);
+        store.items.putAll(items);
+        for (Invoice invoice : source.readInvoices(persons, companies, items).values()) {
+            store.invoices.put(invoice.getInvoiceId(), new Entry(invoice, 0));
+        }
+        return store;
+    }
+
+    public void addPerson(Person person) {
+        persons.put(person.getUuid(), person);
+        finished.incrementAndGet();
+    }
+
+    public void addCompany(Company company) {
+        companies.put(company.getUuid(), company);
+        finished.incrementAndGet();
+    }
+
+    public void addItem(Item item) {
+        items.put(item.getUuid(), item);
+        finished.incrementAndGet();
+    }
+
+    /**
+     * Adds an invoice, together with any line items it already holds. Later
+     * line items must go through {@link #addInvoiceItem}, or snapshots will
+     * not see them.
+     */
+    public void addInvoice(Invoice invoice) {
+        invoices.put(invoice.getInvoiceId(), new Entry(invoice, clock.incrementAndGet()));
+        finished.incrementAndGet();
+    }
+
+    /**
+     * Adds a line item to an invoice already in the store.
+     *
+     * @throws IllegalArgumentException if the invoice is not in the store
+     */
+    public void addInvoiceItem(UUID invoiceUuid, InvoiceItem item) {
+        Entry entry = invoices.get(invoiceUuid);
+        if (entry == null) {
+            throw new IllegalArgumentException("Invoice UUID not found: " + invoiceUuid);
+        }
+        entry.add(item, clock);
+        finished.incrementAndGet();
+    }
+
+    public Invoice getInvoice(UUID invoiceUuid) {
+        Entry entry = invoices.get(invoiceUuid);
+        return entry == null ? null : entry.invoice;
+    }
+
+    /**
+     * Number of writes applied so far. A snapshot taken after reading it
+     * holds at least those writes.
+     */
+    public long getVersion() {
+        return finished.get();
+    }
+
+    /**
+     * Copies the current graph. Invoices are copied with the line items
+     * stamped before the copy began, so the snapshot stays the same while
+     * writers carry on; persons, companies and items are shared with the
+     * store.
+     */
+    public InMemoryInvoiceRepository snapshot() {
+        long start = Metrics.start();
+        try {
+            long version = clock.get();
+            Map<UUID, Invoice> copies = new HashMap<>();
+            for (Entry entry : invoices.values()) {
+                if (entry.version > version) {
+                    continue;
+                }
+                Invoice invoice = entry.invoice;
+                Invoice copy = new Invoice(invoice.getInvoiceId(), invoice.getCompany(), invoice.getSalesperson(),
+                        invoice.getDate());
+                copy.addItems(entry.itemsUpTo(version));
+                copies.put(copy.getInvoiceId(), copy);
+            }
+            return new InMemoryInvoiceRepository(new HashMap<>(persons), new HashMap<>(companies),
+                    new HashMap<>(items), copies);
+        } finally {
+            Metrics.record("store.snapshot", start);
+        }
+    }
+
+    /**
+     * An invoice in the store with the stamp of the write that added it and
+     * its line items as of the last add.
+     */
+    private static class Entry {
+        final Invoice invoice;
+        final long version;
+        // Replaced whole under the entry's lock
+        private volatile Items items;
+
+        Entry(Invoice invoice, long version) {
+            this.invoice = invoice;
+            this.version = version;
+            List<InvoiceItem> current = invoice.getItems();
+            long[] stamps = new long[current.size()];
+            Arrays.fill(stamps, version);
+            this.items = new Items(List.copyOf(current), stamps);
+        }
+
+        synchronized void add(InvoiceItem item, AtomicLong clock) {
+            Items old = items;
+            List<InvoiceItem> added = new ArrayList<>(old.list.size() + 1);
+            added.addAll(old.list);
+            added.add(item);
+            long[] stamps = Arrays.copyOf(old.stamps, old.stamps.length + 1);
+            stamps[old.stamps.length] = clock.incrementAndGet();
+            invoice.addItem(item);
+            items = new Items(List.copyOf(added), stamps);
+        }
+
+        /**
+         * The line items stamped at or before the version.
+         */
+        List<InvoiceItem> itemsUpTo(long version) {
+            Items current = items;
+            int count = current.stamps.length;
+            while (count > 0 && current.stamps[count - 1] > version) {
+                count--;
+            }
+            return current.list.subList(0, count);
+        }
+    }
+
+    /**
+     * An immutable line item list and the stamp of each item, ascending.
+     */
+    private static class Items {
+        final List<InvoiceItem> list;
+        final long[] stamps;
+
+        Items(List<InvoiceItem> list, long[] stamps) {
+            this.list = list;
+            this.stamps = stamps;
+        }
+    }
+}
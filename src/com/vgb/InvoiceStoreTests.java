@@ -0,0 +1,102 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class InvoiceStoreTests {
+
+    @Test
+    public void testSnapshotsStayStableWhileWritersAddItems() throws Exception {
+        InvoiceStore store = new InvoiceStore();
+        Person person = new Person(UUID.randomUUID(), "Ada", "Lovelace", "555-0100", new ArrayList<>());
+        Company company = new Company(UUID.randomUUID(), person, "Analytical", new Address("1 Main", "Lincoln", "NE", "68508"));
+        store.addPerson(person);
+        store.addCompany(company);
+
+        List<Map<UUID, Integer>> counts = new ArrayList<>();
+        List<InMemoryInvoiceRepository> snapshots = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(5)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        Invoice invoice = new Invoice(UUID.randomUUID(), company, person, LocalDate.of(2025, 1, 1));
+                        store.addInvoice(invoice);
+                        for (int j = 0; j < 20; j++) {
+                            Material material = new Material(UUID.randomUUID(), "Gravel", "ton", 10);
+                            store.addInvoiceItem(invoice.getInvoiceId(), new InvoiceItem(invoice.getInvoiceId(), material));
+                        }
+                    }
+                }));
+            }
+            while (!writers.stream().allMatch(Future::isDone)) {
+                InMemoryInvoiceRepository snapshot = store.snapshot();
+                Map<UUID, Integer> itemCounts = new HashMap<>();
+                snapshot.readInvoices(null, null, null).forEach((uuid, invoice) -> itemCounts.put(uuid, invoice.getItems().size()));
+                snapshots.add(snapshot);
+                counts.add(itemCounts);
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            Map<UUID, Integer> itemCounts = new HashMap<>();
+            snapshots.get(i).readInvoices(null, null, null).forEach((uuid, invoice) -> itemCounts.put(uuid, invoice.getItems().size()));
+            assertEquals(counts.get(i), itemCounts);
+        }
+        Map<UUID, Invoice> all = store.snapshot().readInvoices(null, null, null);
+        assertEquals(200, all.size());
+        all.values().forEach(invoice -> assertEquals(20, invoice.getItems().size()));
+        assertEquals(2 + 200 * 21, store.getVersion());
+    }
+
+    @Test
+    public void testSnapshotsAreAConsistentCutWhileWritersRun() throws Exception {
+        InvoiceStore store = new InvoiceStore();
+        Person person = new Person(UUID.randomUUID(), "Ada", "Lovelace", "555-0100", new ArrayList<>());
+        Company company = new Company(UUID.randomUUID(), person, "Analytical", new Address("1 Main", "Lincoln", "NE", "68508"));
+        Invoice first = new Invoice(UUID.randomUUID(), company, person, LocalDate.of(2025, 1, 1));
+        Invoice second = new Invoice(UUID.randomUUID(), company, person, LocalDate.of(2025, 1, 2));
+        store.addInvoice(first);
+        store.addInvoice(second);
+
+        int rounds = 2000;
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = Thread.ofPlatform().start(() -> {
+            Material material = new Material(UUID.randomUUID(), "Gravel", "ton", 10);
+            // Always the first invoice's item, then the second's
+            for (int i = 0; i < rounds; i++) {
+                store.addInvoiceItem(first.getInvoiceId(), new InvoiceItem(first.getInvoiceId(), material));
+                store.addInvoiceItem(second.getInvoiceId(), new InvoiceItem(second.getInvoiceId(), material));
+            }
+            done.set(true);
+        });
+        int snapshots = 0;
+        while (!done.get()) {
+            long before = store.getVersion();
+            Map<UUID, Invoice> invoices = store.snapshot().readInvoices(null, null, null);
+            int a = invoices.get(first.getInvoiceId()).getItems().size();
+            int b = invoices.get(second.getInvoiceId()).getItems().size();
+            assertTrue(a == b || a == b + 1, a + " and " + b);
+            assertTrue(a + b >= before - 2, "snapshot lost applied writes");
+            snapshots++;
+        }
+        writer.join();
+        assertTrue(snapshots > 0);
+        Map<UUID, Invoice> all = store.snapshot().readInvoices(null, null, null);
+        assertEquals(rounds, all.get(second.getInvoiceId()).getItems().size());
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.UUID;
 
@@ -65,4 +66,23 @@ public class InvoiceTests {
         assertEquals(expectedTax, invoice.getTotalTax(), TOLERANCE);
         assertEquals(expectedTotal, invoice.getTotalAmount(), TOLERANCE);
     }
+
+    @Test
+    public void testFailedItemLoadIsRetried() {
+        Rental rental = new Rental(UUID.randomUUID(), "Car", "67890", 150, 20);
+        int[] calls = { 0 };
+        invoice.setItemLoader(loaded -> {
+            if (calls[0]++ == 0) {
+                throw new SQLException("connection reset");
+            }
+            loaded.addItem(new InvoiceItem(loaded.getInvoiceId(), rental));
+        });
+
+        assertThrows(IllegalStateException.class, invoice::getItems);
+        assertFalse(invoice.isItemsLoaded());
+        assertEquals(1, invoice.getItems().size());
+        assertTrue(invoice.isItemsLoaded());
+        assertEquals(rental.calculateSubtotal(), invoice.getSubtotal(), TOLERANCE);
+        assertEquals(2, calls[0]);
+    }
 }
@@ -0,0 +1,42 @@
+package com.vgb;
+
+/**
+ * Invoice and line item counts with summed amounts for one row of a summary
+ * table (a company, a salesperson or a day). Amounts are in cents.
+ *
+ * @see SummaryTables
+ */
+public class InvoiceTotals {
+
+    private final int invoiceCount;
+    private final int itemCount;
+    private final long subtotalCents;
+    private final long taxCents;
+
+    public InvoiceTotals(int invoiceCount, int itemCount, long subtotalCents, long taxCents) {
+        this.invoiceCount = invoiceCount;
+        this.itemCount = itemCount;
+        this.subtotalCents = subtotalCents;
+        this.taxCents = taxCents;
+    }
+
+    public int getInvoiceCount() {
+        return invoiceCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+
+    public long getTaxCents() {
+        return taxCents;
+    }
+
+    public long getTotalCents() {
+        return subtotalCents + taxCents;
+    }
+}
@@ -0,0 +1,261 @@
+package com.vgb;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe front end for {@link InvoiceData} that lets many producers
+ * submit writes in parallel.
+ *
+ * Writes are spread over a fixed number of stripes, each a bounded queue
+ * drained in order by its own virtual thread. A write is routed by the UUID
+ * of the entity that owns it (an invoice's header and line items all use the
+ * invoice UUID), so everything for one invoice lands in submission order while
+ * different invoices are written concurrently. When a stripe's queue is full,
+ * {@link #submit} blocks, which throttles producers to the database's pace.
+ *
+ * Each stripe keeps a {@link StatementSession} open, so its writes share one
+ * connection and reuse prepared statements. Writes run through
+ * {@link InvoiceData.Checked}, so a write that fails completes its future
+ * exceptionally with the SQLException; if the failure left the connection
+ * unusable, the stripe opens a new session for the writes after it.
+ *
+ * Every returned future completes: a write that throws anything completes it
+ * exceptionally, and writes still queued when a stripe's worker stops, or
+ * when {@link #close()} gives up waiting on an interrupt, are failed.
+ *
+ * Ordering is only guaranteed per key: reference data (persons, companies,
+ * items) must be written before invoices that use it, e.g. by waiting on the
+ * returned futures.
+ */
+public class InvoiceWriter implements AutoCloseable {
+
+    public static final int DEFAULT_STRIPES = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    // Tells a stripe worker to exit once its queue has drained
+    private static final StatementSession.Work STOP = () -> { };
+
+    private final List<Stripe> stripes = new ArrayList<>();
+    private final ExecutorService workers;
+    // Held shared by submit and exclusively by close, so no write is queued after STOP
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    public InvoiceWriter() {
+        this(DEFAULT_STRIPES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param stripes       number of parallel, internally ordered write streams
+     * @param queueCapacity pending writes per stripe before producers block
+     */
+    public InvoiceWriter(int stripes, int queueCapacity) {
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("invoice-writer-", 0).factory());
+        for (int i = 0; i < stripes; i++) {
+            Stripe stripe = new Stripe(queueCapacity);
+            this.stripes.add(stripe);
+            workers.execute(() -> drain(stripe));
+        }
+    }
+
+    /**
+     * Queues a write. Writes submitted with the same key run one at a time in
+     * submission order.
+     *
+     * @param key   the UUID of the entity the write belongs to
+     * @param write the database operation
+     * @return a future completed when the write has run, or completed
+     *         exceptionally with what it threw or if it could not be queued
+     * @throws IllegalStateException if the writer is closed
+     */
+    public CompletableFuture<Void> submit(UUID key, StatementSession.Work write) {
+        Task task = new Task(write);
+        Stripe stripe = stripes.get(Math.floorMod(key.hashCode(), stripes.size()));
+        gate.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("InvoiceWriter is closed");
+            }
+            // Waits for room while the stripe's worker runs, so a dead one cannot block producers
+            while (!stripe.queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                if (!stripe.running) {
+                    task.future.completeExceptionally(new IllegalStateException("InvoiceWriter stripe stopped"));
+                    return task.future;
+                }
+            }
+            if (!stripe.running) {
+                // The worker may have swept its queue before the task arrived
+                stripe.failPending();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+        } finally {
+            gate.readLock().unlock();
+        }
+        return task.future;
+    }
+
+    public CompletableFuture<Void> addPerson(UUID personUuid, String firstName, String lastName, String phone) {
+        return submit(personUuid, () -> InvoiceData.Checked.addPerson(personUuid, firstName, lastName, phone));
+    }
+
+    public CompletableFuture<Void> addEmail(UUID personUuid, String email) {
+        return submit(personUuid, () -> InvoiceData.Checked.addEmail(personUuid, email));
+    }
+
+    public CompletableFuture<Void> addCompany(UUID companyUuid, UUID contactUuid, String name, String street,
+                                              String city, String state, String zip) {
+        return submit(companyUuid, () -> InvoiceData.Checked.addCompany(companyUuid, contactUuid, name, street, city, state, zip));
+    }
+
+    public CompletableFuture<Void> addEquipment(UUID equipmentUuid, String name, String modelNumber, double retailPrice) {
+        return submit(equipmentUuid, () -> InvoiceData.Checked.addEquipment(equipmentUuid, name, modelNumber, retailPrice));
+    }
+
+    public CompletableFuture<Void> addMaterial(UUID materialUuid, String name, String unit, double pricePerUnit) {
+        return submit(materialUuid, () -> InvoiceData.Checked.addMaterial(materialUuid, name, unit, pricePerUnit));
+    }
+
+    public CompletableFuture<Void> addContract(UUID contractUuid, String name, UUID servicerUuid) {
+        return submit(contractUuid, () -> InvoiceData.Checked.addContract(contractUuid, name, servicerUuid));
+    }
+
+    public CompletableFuture<Void> addInvoice(UUID invoiceUuid, UUID customerUuid, UUID salesPersonUuid, LocalDate date) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addInvoice(invoiceUuid, customerUuid, salesPersonUuid, date));
+    }
+
+    public CompletableFuture<Void> addEquipmentPurchaseToInvoice(UUID invoiceUuid, UUID itemUuid) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addEquipmentPurchaseToInvoice(invoiceUuid, itemUuid));
+    }
+
+    public CompletableFuture<Void> addEquipmentLeaseToInvoice(UUID invoiceUuid, UUID itemUuid, LocalDate start, LocalDate end) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addEquipmentLeaseToInvoice(invoiceUuid, itemUuid, start, end));
+    }
+
+    public CompletableFuture<Void> addEquipmentRentalToInvoice(UUID invoiceUuid, UUID itemUuid, double numberOfHours) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addEquipmentRentalToInvoice(invoiceUuid, itemUuid, numberOfHours));
+    }
+
+    public CompletableFuture<Void> addMaterialToInvoice(UUID invoiceUuid, UUID itemUuid, int numberOfUnits) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addMaterialToInvoice(invoiceUuid, itemUuid, numberOfUnits));
+    }
+
+    public CompletableFuture<Void> addContractToInvoice(UUID invoiceUuid, UUID itemUuid, double amount) {
+        return submit(invoiceUuid, () -> InvoiceData.Checked.addContractToInvoice(invoiceUuid, itemUuid, amount));
+    }
+
+    /**
+     * Stops accepting writes, waits for every queued write to finish and
+     * releases the worker threads.
+     */
+    @Override
+    public void close() {
+        gate.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                Task stop = new Task(STOP);
+                while (stripe.running && !stripe.queue.offer(stop, 100, TimeUnit.MILLISECONDS)) {
+                    // A stripe whose worker died takes no STOP
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.failPending();
+            }
+        }
+    }
+
+    /**
+     * Worker loop for one stripe: runs tasks in queue order until told to stop,
+     * reopening the stripe's session when a failed write broke its connection.
+     * Whatever a write throws goes to its future, so the loop only ends on
+     * STOP or an interrupt; the writes left then are failed.
+     */
+    private static void drain(Stripe stripe) {
+        StatementSession session = StatementSession.open();
+        try {
+            while (true) {
+                Task task = stripe.queue.take();
+                if (task.write == STOP) {
+                    return;
+                }
+                try {
+                    task.write.run();
+                    task.future.complete(null);
+                } catch (SQLException e) {
+                    task.future.completeExceptionally(e);
+                    if (!session.isValid()) {
+                        Metrics.increment("writer.reconnects");
+                        session.close();
+                        session = StatementSession.open();
+                    }
+                } catch (Throwable e) {
+                    task.future.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stripe.running = false;
+            stripe.failPending();
+            session.close();
+        }
+    }
+
+    /**
+     * One write stream: its queue and whether its worker still takes from it.
+     */
+    private static class Stripe {
+        final BlockingQueue<Task> queue;
+        volatile boolean running = true;
+
+        Stripe(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Fails the writes left in the queue once nothing will run them.
+         */
+        void failPending() {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                task.future.completeExceptionally(new IllegalStateException("InvoiceWriter stopped before the write ran"));
+            }
+        }
+    }
+
+    private static class Task {
+        final StatementSession.Work write;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Task(StatementSession.Work write) {
+            this.write = write;
+        }
+    }
+}
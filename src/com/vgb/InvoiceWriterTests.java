@@ -0,0 +1,112 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class InvoiceWriterTests {
+
+    @Test
+    public void testWritesForOneKeyRunInSubmissionOrder() {
+        Map<UUID, List<Integer>> applied = Collections.synchronizedMap(new HashMap<>());
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID key = UUID.randomUUID();
+            keys.add(key);
+            applied.put(key, Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (InvoiceWriter writer = new InvoiceWriter(4, 8)) {
+            for (int seq = 0; seq < 50; seq++) {
+                for (UUID key : keys) {
+                    int n = seq;
+                    futures.add(writer.submit(key, () -> applied.get(key).add(n)));
+                }
+            }
+        }
+
+        futures.forEach(f -> assertTrue(f.isDone()));
+        for (UUID key : keys) {
+            List<Integer> order = applied.get(key);
+            assertEquals(50, order.size());
+            for (int i = 0; i < order.size(); i++) {
+                assertEquals(i, order.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWriteCompletesExceptionally() {
+        CompletableFuture<Void> failed;
+        CompletableFuture<Void> next;
+        UUID key = UUID.randomUUID();
+        try (InvoiceWriter writer = new InvoiceWriter(1, 4)) {
+            failed = writer.submit(key, () -> { throw new IllegalStateException("boom"); });
+            next = writer.submit(key, () -> { });
+        }
+        assertTrue(failed.isCompletedExceptionally());
+        assertFalse(next.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSqlExceptionReachesTheFuture() {
+        CompletableFuture<Void> failed;
+        try (InvoiceWriter writer = new InvoiceWriter(1, 4)) {
+            failed = writer.submit(UUID.randomUUID(), () -> { throw new SQLException("duplicate key"); });
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertInstanceOf(SQLException.class, e.getCause());
+    }
+
+    @Test
+    public void testErrorCompletesTheFutureAndTheStripeGoesOn() {
+        CompletableFuture<Void> failed;
+        CompletableFuture<Void> next;
+        UUID key = UUID.randomUUID();
+        try (InvoiceWriter writer = new InvoiceWriter(1, 4)) {
+            failed = writer.submit(key, () -> { throw new AssertionError("boom"); });
+            next = writer.submit(key, () -> { });
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertInstanceOf(AssertionError.class, e.getCause());
+        assertTrue(next.isDone());
+        assertFalse(next.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testEveryWriteAcceptedBeforeCloseCompletes() throws Exception {
+        List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        InvoiceWriter writer = new InvoiceWriter(2, 2);
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            producers.add(Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        futures.add(writer.submit(UUID.randomUUID(), () -> { }));
+                    }
+                } catch (IllegalStateException closed) {
+                    // Expected once close() has begun
+                }
+            }));
+        }
+        Thread.sleep(50);
+        writer.close();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertFalse(futures.isEmpty());
+        synchronized (futures) {
+            futures.forEach(f -> assertTrue(f.isDone()));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.vgb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads from the database configured in {@link ConnectionFactory} with
+ * {@link DBReaderUtil}. Persons, companies and items go through
+ * {@link ReferenceDataCache}; invoices and their line items are read on every
+ * call, the items with a single query. Date range reads select by invoice date
+ * through the invoice date index. Company summaries are read from the
+ * CompanyTotals table (see {@link SummaryTables}) without touching invoices.
+ */
+public class JdbcInvoiceRepository implements InvoiceRepository {
+
+    @Override
+    public Map<UUID, Person> readPersons() {
+        return DBReaderUtil.readPersons();
+    }
+
+    @Override
+    public Map<UUID, Company> readCompanies(Map<UUID, Person> persons) {
+        return DBReaderUtil.readCompanies(persons);
+    }
+
+    @Override
+    public Map<UUID, Item> readItems(Map<UUID, Company> companies) {
+        return DBReaderUtil.readItems(companies);
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items) {
+        Map<UUID, Invoice> invoices = DBReaderUtil.loadInvoices(persons, companies);
+        DBReaderUtil.loadInvoiceItems(invoices, items);
+        return invoices;
+    }
+
+    @Override
+    public Map<UUID, Invoice> readInvoices(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                           Map<UUID, Item> items, LocalDate from, LocalDate to) {
+        Map<UUID, Invoice> invoices = DBReaderUtil.loadInvoices(persons, companies, from, to);
+        DBReaderUtil.loadInvoiceItems(invoices, items, from, to);
+        return invoices;
+    }
+
+    @Override
+    public List<CompanySummary> readCompanySummaries(Map<UUID, Company> companies, Map<UUID, Invoice> invoices) {
+        Map<UUID, InvoiceTotals> totals = DBReaderUtil.readCompanyTotals();
+        List<CompanySummary> summaries = new ArrayList<>();
+        for (Company company : companies.values()) {
+            InvoiceTotals t = totals.get(company.getUuid());
+            summaries.add(t == null ? new CompanySummary(company, 0, 0)
+                    : new CompanySummary(company, t.getInvoiceCount(), t.getTotalCents()));
+        }
+        return summaries;
+    }
+
+    @Override
+    public String toString() {
+        return "db";
+    }
+}
@@ -0,0 +1,290 @@
+package com.vgb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Statement-level tracing for connections handed out by {@link ConnectionFactory}.
+ *
+ * When <code>vgb.jdbc.trace=true</code>, connections are wrapped in dynamic
+ * proxies that time every execute call and group the results by SQL
+ * template. A template is the statement with its literals replaced by
+ * <code>?</code> and its IN lists and repeated VALUES tuples collapsed, so
+ * e.g. every IN batch size of the same query shares one entry. For each
+ * template the tracer keeps execution count, latency histogram, rows
+ * returned or affected, and round trips.
+ *
+ * Round trips are counted as one per execute, commit or rollback, and one
+ * per batched statement for executeBatch, which is what Connector/J sends
+ * unless <code>rewriteBatchedStatements</code> is on.
+ *
+ * Statements slower than <code>vgb.jdbc.slowQueryMillis</code> (default 100)
+ * are written to standard error as they finish. When tracing is off,
+ * connections are returned unwrapped.
+ */
+public class JdbcTracer {
+
+    private static volatile boolean enabled = Config.getBoolean("vgb.jdbc.trace", false);
+    private static volatile long slowQueryNanos = Config.getLong("vgb.jdbc.slowQueryMillis", 100) * 1_000_000L;
+
+    private static final Map<String, SqlStats> STATS = new ConcurrentHashMap<>();
+    private static final Map<String, String> TEMPLATES = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_TEMPLATES = 10_000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN \\(\\?(?:, ?\\?)*\\)");
+    private static final Pattern VALUES_TUPLES = Pattern.compile("(\\((?:\\?, ?)*\\?\\))(?:, ?\\((?:\\?, ?)*\\?\\))+");
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void setSlowQueryMillis(long millis) {
+        slowQueryNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Wraps a connection so its statements are traced, or returns it as is
+     * when tracing is off.
+     */
+    public static Connection wrap(Connection conn) {
+        if (!enabled) {
+            return conn;
+        }
+        ConnectionHandler handler = new ConnectionHandler(conn);
+        handler.self = proxy(Connection.class, handler);
+        return handler.self;
+    }
+
+    /**
+     * Returns the statistics gathered so far, keyed by SQL template.
+     */
+    public static Map<String, SqlStats> getStats() {
+        return STATS;
+    }
+
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * Reduces a SQL statement to its template.
+     */
+    static String template(String sql) {
+        String cached = TEMPLATES.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String t = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        t = STRING_LITERAL.matcher(t).replaceAll("?");
+        t = NUMBER_LITERAL.matcher(t).replaceAll("?");
+        t = IN_LIST.matcher(t).replaceAll("IN (?...)");
+        t = VALUES_TUPLES.matcher(t).replaceAll("$1, ...");
+        if (TEMPLATES.size() < MAX_CACHED_TEMPLATES) {
+            TEMPLATES.put(sql, t);
+        }
+        return t;
+    }
+
+    /**
+     * Prints one line per template, most total time first, if tracing is on.
+     */
+    public static void printReport() {
+        if (!enabled || STATS.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, SqlStats>> entries = new ArrayList<>(STATS.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().latency.getSum(), a.getValue().latency.getSum()));
+        System.out.printf("%8s %10s %10s %10s %10s %10s %12s  %s\n",
+                "Count", "Rows", "Trips", "p50 ms", "p99 ms", "Max ms", "Total ms", "SQL");
+        for (Map.Entry<String, SqlStats> entry : entries) {
+            SqlStats s = entry.getValue();
+            System.out.printf("%8d %10d %10d %10.3f %10.3f %10.3f %12.3f  %s\n",
+                    s.getExecutions(), s.getRows(), s.getRoundTrips(),
+                    s.latency.percentile(50) / 1e6, s.latency.percentile(99) / 1e6,
+                    s.latency.getMax() / 1e6, s.latency.getSum() / 1e6, entry.getKey());
+        }
+    }
+
+    private static SqlStats stats(String sql) {
+        return STATS.computeIfAbsent(template(sql), k -> new SqlStats());
+    }
+
+    private static void finished(String sql, SqlStats stats, long startNanos, long rows, long roundTrips) {
+        long elapsed = System.nanoTime() - startNanos;
+        stats.executions.increment();
+        stats.roundTrips.add(roundTrips);
+        stats.rows.add(rows);
+        stats.latency.record(elapsed);
+        if (elapsed >= slowQueryNanos) {
+            String text = sql.length() > 500 ? sql.substring(0, 500) + "..." : sql;
+            System.err.printf("Slow query (%.1f ms): %s\n", elapsed / 1e6, text);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(JdbcTracer.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Execution statistics for one SQL template.
+     */
+    public static class SqlStats {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final Metrics.Histogram latency = new Metrics.Histogram();
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getRoundTrips() {
+            return roundTrips.sum();
+        }
+
+        /**
+         * @return execution latencies in nanoseconds
+         */
+        public Metrics.Histogram getLatency() {
+            return latency;
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        // The proxy handed out for this connection, returned by Statement.getConnection()
+        Connection self;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("commit") || name.equals("rollback")) {
+                String sql = name.toUpperCase();
+                long start = System.nanoTime();
+                Object result = JdbcTracer.invoke(target, method, args);
+                finished(sql, stats(sql), start, 0, 1);
+                return result;
+            }
+            Object result = JdbcTracer.invoke(target, method, args);
+            if (result instanceof Statement statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                return proxy(method.getReturnType(), new StatementHandler(statement, sql, self));
+            }
+            return result;
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String preparedSql;
+        private final Connection connection;
+        private int batched;
+
+        StatementHandler(Statement target, String preparedSql, Connection connection) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getConnection")) {
+                return connection;
+            }
+            if (name.equals("addBatch")) {
+                batched++;
+                return JdbcTracer.invoke(target, method, args);
+            }
+            if (name.equals("clearBatch")) {
+                batched = 0;
+                return JdbcTracer.invoke(target, method, args);
+            }
+            if (!name.startsWith("execute")) {
+                Object result = JdbcTracer.invoke(target, method, args);
+                if (result instanceof ResultSet rs && preparedSql != null) {
+                    return wrapResultSet(rs, stats(preparedSql));
+                }
+                return result;
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql;
+            if (sql == null) {
+                return JdbcTracer.invoke(target, method, args);
+            }
+            SqlStats stats = stats(sql);
+            long start = System.nanoTime();
+            Object result = JdbcTracer.invoke(target, method, args);
+
+            long rows = 0;
+            long trips = 1;
+            if (result instanceof int[] counts) {
+                for (int c : counts) {
+                    rows += Math.max(0, c);
+                }
+                trips = Math.max(1, batched);
+                batched = 0;
+            } else if (result instanceof long[] counts) {
+                for (long c : counts) {
+                    rows += Math.max(0, c);
+                }
+                trips = Math.max(1, batched);
+                batched = 0;
+            } else if (result instanceof Number count) {
+                rows = Math.max(0, count.longValue());
+            }
+            finished(sql, stats, start, rows, trips);
+
+            if (result instanceof ResultSet rs) {
+                // Rows returned are added as the caller reads them
+                return wrapResultSet(rs, stats);
+            }
+            return result;
+        }
+
+        private ResultSet wrapResultSet(ResultSet rs, SqlStats stats) {
+            return proxy(ResultSet.class, (p, method, args) -> {
+                Object result = JdbcTracer.invoke(rs, method, args);
+                if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                    stats.rows.increment();
+                }
+                return result;
+            });
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class JdbcTracerTests {
+
+    @Test
+    public void testTemplatesCollapseLiteralsAndLists() {
+        assertEquals("SELECT * FROM Invoice WHERE invoice_uuid IN (?...) AND companyId = ?",
+                JdbcTracer.template("SELECT *  FROM Invoice\n WHERE invoice_uuid IN (?, ?, ?) AND companyId = 42"));
+        assertEquals("INSERT INTO Email (person_uuid, email_address) VALUES (?, ?), ...",
+                JdbcTracer.template("INSERT INTO Email (person_uuid, email_address) VALUES ('a', 'b'), ('c', 'it''s')"));
+        assertEquals("SELECT model_no FROM Item WHERE name = ?",
+                JdbcTracer.template("SELECT model_no FROM Item WHERE name = 'V2'"));
+    }
+
+    @Test
+    public void testStatementsAreCountedPerTemplate() throws SQLException {
+        Connection raw;
+        try {
+            raw = DriverManager.getConnection("jdbc:h2:mem:tracer");
+        } catch (SQLException e) {
+            raw = null;
+        }
+        assumeTrue(raw != null, "H2 driver not on the classpath");
+
+        boolean was = JdbcTracer.isEnabled();
+        JdbcTracer.setEnabled(true);
+        JdbcTracer.reset();
+        try (Connection conn = JdbcTracer.wrap(raw)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE t (id INT)");
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO t VALUES (?)")) {
+                for (int i = 0; i < 5; i++) {
+                    ps.setInt(1, i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM t WHERE id >= ?")) {
+                    ps.setInt(1, 2);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) { }
+                    }
+                }
+            }
+        } finally {
+            JdbcTracer.setEnabled(was);
+        }
+
+        JdbcTracer.SqlStats insert = JdbcTracer.getStats().get("INSERT INTO t VALUES (?)");
+        assertEquals(1, insert.getExecutions());
+        assertEquals(5, insert.getRows());
+        assertEquals(5, insert.getRoundTrips());
+
+        JdbcTracer.SqlStats select = JdbcTracer.getStats().get("SELECT id FROM t WHERE id >= ?");
+        assertEquals(3, select.getExecutions());
+        assertEquals(9, select.getRows());
+        assertEquals(3, select.getLatency().getCount());
+    }
+}
@@ -0,0 +1,57 @@
+package com.vgb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one loader phase, e.g. reading the persons from the
+ * database or parsing the invoice items CSV file.
+ */
+@Name("com.vgb.LoadPhase")
+@Label("Load Phase")
+@Category({"VGB", "Loading"})
+@Description("Reading one kind of record from the database or a CSV file")
+public class LoadPhaseEvent extends Event {
+
+    @Label("Source")
+    @Description("db or csv")
+    String source;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @Description("Size of the input read, when known")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Creates and starts the event for a phase.
+     */
+    public static LoadPhaseEvent begin(String source, String phase) {
+        LoadPhaseEvent event = new LoadPhaseEvent();
+        event.source = source;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the phase and commits the event if a recording wants it.
+     */
+    public void end(long rows, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
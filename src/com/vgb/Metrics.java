@@ -0,0 +1,281 @@
+package com.vgb;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Process-wide registry of counters and latency histograms.
+ *
+ * Metrics are off unless <code>vgb.metrics.enabled=true</code>. When off,
+ * {@link #start()} returns 0 and every recording method returns after a
+ * single flag check, so instrumented code pays almost nothing. Timing a block
+ * looks like:
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     Metrics.record("db.readPersons", start);
+ * }
+ * </pre>
+ *
+ * At the end of a run {@link #dump()} writes everything as JSON and in the
+ * Prometheus text format.
+ */
+public class Metrics {
+
+    private static volatile boolean enabled = Config.getBoolean("vgb.metrics.enabled", false);
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns a start time for {@link #record}, or 0 when metrics are off.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since <code>start</code> in the named timer.
+     * A start of 0 (metrics were off when it was taken) records nothing.
+     */
+    public static void record(String timer, long start) {
+        if (start != 0 && enabled) {
+            timer(timer).record(System.nanoTime() - start);
+        }
+    }
+
+    public static void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public static void add(String counter, long amount) {
+        if (enabled) {
+            counter(counter).add(amount);
+        }
+    }
+
+    /**
+     * Records a value, such as a row or byte count, in the named histogram.
+     */
+    public static void observe(String histogram, long value) {
+        if (enabled) {
+            HISTOGRAMS.computeIfAbsent(histogram, k -> new Histogram()).record(value);
+        }
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Returns the named timer; its values are in nanoseconds.
+     */
+    public static Histogram timer(String name) {
+        return TIMERS.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    public static void reset() {
+        COUNTERS.clear();
+        TIMERS.clear();
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * Writes all metrics to <code>&lt;vgb.metrics.output&gt;.json</code> and
+     * <code>.prom</code> if metrics are on.
+     */
+    public static void dump() {
+        if (!enabled) {
+            return;
+        }
+        String prefix = Config.get("vgb.metrics.output", "metrics");
+        try (Writer json = new FileWriter(prefix + ".json");
+             Writer prom = new FileWriter(prefix + ".prom")) {
+            json.write(toJson());
+            prom.write(toPrometheus());
+            System.out.println("Metrics written to " + prefix + ".json and " + prefix + ".prom");
+        } catch (IOException e) {
+            System.err.println("Could not write metrics: " + e.getMessage());
+        }
+    }
+
+    public static String toJson() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        Map<String, Object> counters = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> counters.put(name, counter.get()));
+        Map<String, Object> timers = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> timers.put(name, timer.toMap(1e6)));
+        Map<String, Object> histograms = new TreeMap<>();
+        HISTOGRAMS.forEach((name, histogram) -> histograms.put(name, histogram.toMap(1)));
+        root.put("counters", counters);
+        root.put("timersMillis", timers);
+        root.put("histograms", histograms);
+        try {
+            return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(root);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serialize metrics", e);
+        }
+    }
+
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(COUNTERS).forEach((name, counter) -> {
+            String metric = prometheusName(name) + "_total";
+            out.append("# TYPE ").append(metric).append(" counter\n");
+            out.append(metric).append(' ').append(counter.get()).append('\n');
+        });
+        new TreeMap<>(TIMERS).forEach((name, timer) ->
+                appendSummary(out, prometheusName(name) + "_seconds", timer, 1e9));
+        new TreeMap<>(HISTOGRAMS).forEach((name, histogram) ->
+                appendSummary(out, prometheusName(name), histogram, 1));
+        return out.toString();
+    }
+
+    private static void appendSummary(StringBuilder out, String metric, Histogram histogram, double scale) {
+        out.append("# TYPE ").append(metric).append(" summary\n");
+        for (double q : QUANTILES) {
+            out.append(metric).append("{quantile=\"").append(q).append("\"} ")
+               .append(histogram.percentile(q * 100) / scale).append('\n');
+        }
+        out.append(metric).append("_sum ").append(histogram.getSum() / scale).append('\n');
+        out.append(metric).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static String prometheusName(String name) {
+        return "vgb_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A lock-free histogram of non-negative longs with log-linear buckets in
+     * the style of HdrHistogram: each power of two is split into 32 linear
+     * sub-buckets, so any recorded value is reported within about 3% while the
+     * whole range of a long fits in under 2,000 counters.
+     */
+    public static class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts.incrementAndGet(indexOf(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        static long lowerBound(int index) {
+            if (index < SUB_COUNT) {
+                return index;
+            }
+            int shift = index / SUB_COUNT - 1;
+            return (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) getSum() / n;
+        }
+
+        /**
+         * Returns the value at the given percentile (0-100), as the midpoint of
+         * the bucket it falls in.
+         */
+        public long percentile(double percentile) {
+            long total = getCount();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    long low = lowerBound(i);
+                    long high = i + 1 < BUCKETS ? lowerBound(i + 1) : Long.MAX_VALUE;
+                    return Math.min(getMax(), low + (high - low - 1) / 2);
+                }
+            }
+            return getMax();
+        }
+
+        Map<String, Object> toMap(double scale) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", getCount());
+            map.put("mean", getMean() / scale);
+            map.put("p50", percentile(50) / scale);
+            map.put("p90", percentile(90) / scale);
+            map.put("p99", percentile(99) / scale);
+            map.put("p999", percentile(99.9) / scale);
+            map.put("max", getMax() / scale);
+            return map;
+        }
+    }
+}
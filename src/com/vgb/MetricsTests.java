@@ -0,0 +1,36 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class MetricsTests {
+
+    @Test
+    public void testHistogramPercentilesAreWithinBucketPrecision() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000, histogram.percentile(50), 50000 * 0.04);
+        assertEquals(99000, histogram.percentile(99), 99000 * 0.04);
+        assertEquals(1, histogram.percentile(0));
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenDisabled() {
+        boolean was = Metrics.isEnabled();
+        Metrics.setEnabled(false);
+        try {
+            long start = Metrics.start();
+            Metrics.record("test.disabled", start);
+            Metrics.increment("test.disabled");
+            assertEquals(0, start);
+            assertEquals(0, Metrics.timer("test.disabled").getCount());
+            assertEquals(0, Metrics.counter("test.disabled").get());
+        } finally {
+            Metrics.setEnabled(was);
+        }
+    }
+}
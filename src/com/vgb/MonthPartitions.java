@@ -0,0 +1,247 @@
+package com.vgb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Month partitioned layout of the invoice CSV files.
+ *
+ * {@link #partition(String)} splits <code>Invoices.csv</code> and
+ * <code>InvoiceItems.csv</code> of a data directory into
+ * <code>invoices/yyyy-MM/Invoices.csv</code> and
+ * <code>invoices/yyyy-MM/InvoiceItems.csv</code>, each line item going to the
+ * month of its invoice. The size and modification time of both source files
+ * are recorded in <code>invoices/source</code>, written last. While they
+ * still match, {@link CSVInvoiceRepository} reads invoices from the
+ * partitions, and a date range read only opens the partitions of the months
+ * the range overlaps. Folders under <code>invoices</code> not named like a
+ * month are ignored.
+ */
+public class MonthPartitions {
+
+    static final String DIR = "invoices";
+    static final String INVOICES = "Invoices.csv";
+    static final String INVOICE_ITEMS = "InvoiceItems.csv";
+    static final String SOURCE = "source";
+
+    /**
+     * Partitions the directory given as the first argument, or
+     * <code>vgb.repository.dataDir</code>.
+     */
+    public static void main(String[] args) {
+        String dataDir = args.length > 0 ? args[0] : Config.get("vgb.repository.dataDir", "data");
+        try {
+            int months = partition(dataDir);
+            System.out.println("Partitioned " + dataDir + " into " + months + " months");
+        } catch (IOException e) {
+            System.err.println("Could not partition " + dataDir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the month partitions of a data directory from its
+     * <code>Invoices.csv</code> and <code>InvoiceItems.csv</code>, replacing
+     * any partitions written before. Invoices without a valid date and line
+     * items of unknown invoices are left out and sent to the reject file (see
+     * {@link CsvRejects}), counted in <code>csv.partition.rejected</code>.
+     *
+     * @return the number of months written
+     */
+    public static int partition(String dataDir) throws IOException {
+        long start = Metrics.start();
+        try {
+            Path root = Paths.get(dataDir, DIR);
+            if (Files.exists(root)) {
+                try (Stream<Path> old = Files.walk(root)) {
+                    for (Path path : old.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.delete(path);
+                    }
+                }
+            }
+
+            // Taken before reading, so a file changed meanwhile leaves the partitions stale
+            List<String> source = List.of(describe(dataDir, INVOICES), describe(dataDir, INVOICE_ITEMS));
+            Map<String, YearMonth> invoiceMonths = new HashMap<>();
+            Map<YearMonth, BufferedWriter> writers = new HashMap<>();
+            Path invoices = Paths.get(dataDir, INVOICES);
+            try (BufferedReader in = Files.newBufferedReader(invoices)) {
+                String header = in.readLine();
+                long lineNumber = 1;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    String[] tokens = line.trim().split(",", -1);
+                    if (line.isBlank()) continue;
+                    if (tokens.length < 4 || tokens[0].isEmpty()) {
+                        reject(invoices, lineNumber, "expected 4 columns", line);
+                        continue;
+                    }
+
+                    YearMonth month;
+                    try {
+                        month = YearMonth.from(LocalDate.parse(tokens[3]));
+                    } catch (DateTimeParseException e) {
+                        reject(invoices, lineNumber, "malformed: " + e.getMessage(), line);
+                        continue;
+                    }
+                    invoiceMonths.put(tokens[0], month);
+                    write(writer(writers, dataDir, month, INVOICES, header), line);
+                }
+            } finally {
+                close(writers);
+            }
+
+            Path invoiceItems = Paths.get(dataDir, INVOICE_ITEMS);
+            try (BufferedReader in = Files.newBufferedReader(invoiceItems)) {
+                String header = in.readLine();
+                // Every month gets an items file, even if none of its invoices has items
+                for (YearMonth month : invoiceMonths.values()) {
+                    writer(writers, dataDir, month, INVOICE_ITEMS, header);
+                }
+                long lineNumber = 1;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    String[] tokens = line.trim().split(",", -1);
+                    if (line.isBlank()) continue;
+                    if (tokens.length < 3 || tokens[0].isEmpty()) {
+                        reject(invoiceItems, lineNumber, "expected at least 3 columns", line);
+                        continue;
+                    }
+
+                    YearMonth month = invoiceMonths.get(tokens[0]);
+                    if (month == null) {
+                        reject(invoiceItems, lineNumber, "unknown invoice " + tokens[0], line);
+                        continue;
+                    }
+                    write(writers.get(month), line);
+                }
+            } finally {
+                close(writers);
+                CsvRejects.flush();
+            }
+            Files.write(root.resolve(SOURCE), source);
+            return (int) invoiceMonths.values().stream().distinct().count();
+        } finally {
+            Metrics.record("csv.partition", start);
+        }
+    }
+
+    /**
+     * Whether the directory holds month partitions.
+     */
+    public static boolean exists(String dataDir) {
+        return Files.isDirectory(Paths.get(dataDir, DIR));
+    }
+
+    /**
+     * Whether the directory holds month partitions written from its current
+     * <code>Invoices.csv</code> and <code>InvoiceItems.csv</code>: both have
+     * the size and modification time recorded when they were partitioned.
+     */
+    public static boolean isCurrent(String dataDir) {
+        try {
+            return Files.readAllLines(Paths.get(dataDir, DIR, SOURCE))
+                    .equals(List.of(describe(dataDir, INVOICES), describe(dataDir, INVOICE_ITEMS)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the partitioned months of a data directory in order.
+     */
+    public static List<YearMonth> months(String dataDir) {
+        return months(dataDir, null, null);
+    }
+
+    /**
+     * Returns the partitioned months that overlap a date range, in order.
+     *
+     * @param from first date included, or null for no lower bound
+     * @param to   last date included, or null for no upper bound
+     */
+    public static List<YearMonth> months(String dataDir, LocalDate from, LocalDate to) {
+        List<YearMonth> months = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(Paths.get(dataDir, DIR))) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                YearMonth month;
+                try {
+                    month = YearMonth.parse(dir.getFileName().toString());
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                if ((from == null || !month.atEndOfMonth().isBefore(from))
+                        && (to == null || !month.atDay(1).isAfter(to))) {
+                    months.add(month);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not list partitions of " + dataDir + ": " + e.getMessage());
+        }
+        months.sort(null);
+        return months;
+    }
+
+    /**
+     * Path of one file of a month partition.
+     */
+    public static String path(String dataDir, YearMonth month, String file) {
+        return Paths.get(dataDir, DIR, month.toString(), file).toString();
+    }
+
+    /**
+     * One line of the source record: file name, size and modification time.
+     */
+    private static String describe(String dataDir, String file) throws IOException {
+        Path path = Paths.get(dataDir, file);
+        return file + " " + Files.size(path) + " " + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Returns the open writer of a partition file, creating the file with the
+     * given header on first use.
+     */
+    private static BufferedWriter writer(Map<YearMonth, BufferedWriter> writers, String dataDir, YearMonth month,
+                                         String file, String header) throws IOException {
+        BufferedWriter out = writers.get(month);
+        if (out == null) {
+            Path path = Paths.get(path(dataDir, month, file));
+            Files.createDirectories(path.getParent());
+            out = Files.newBufferedWriter(path);
+            write(out, header);
+            writers.put(month, out);
+        }
+        return out;
+    }
+
+    private static void reject(Path file, long lineNumber, String reason, String line) {
+        Metrics.increment("csv.partition.rejected");
+        CsvRejects.reject(file.toString(), "line " + lineNumber, reason, line.trim());
+    }
+
+    private static void write(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.newLine();
+    }
+
+    private static void close(Map<YearMonth, BufferedWriter> writers) throws IOException {
+        for (BufferedWriter out : writers.values()) {
+            out.close();
+        }
+        writers.clear();
+    }
+}
@@ -0,0 +1,249 @@
+package com.vgb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Load test for the persistence layer. Replays the CSV data (or the
+ * repository named by <code>vgb.repository</code>) through the InvoiceData
+ * insert API and reads it back through a {@link JdbcInvoiceRepository},
+ * reporting the latency of every operation. Run it once per backend to
+ * compare them, e.g. with <code>-Dvgb.db.backend=h2</code> for the embedded
+ * database. It finishes by timing a full read from each kind of
+ * {@link InvoiceRepository}.
+ *
+ * Usage: <code>PersistenceBenchmark [rounds]</code> (default 5)
+ */
+public class PersistenceBenchmark {
+
+    private static final Map<String, List<Long>> latencies = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        InvoiceRepository source = InvoiceRepository.fromConfig("csv");
+        Map<UUID, Person> persons = source.readPersons();
+        Map<UUID, Company> companies = source.readCompanies(persons);
+        Map<UUID, Item> items = source.readItems(companies);
+        Map<UUID, Invoice> invoices = source.readInvoices(persons, companies, items);
+        InvoiceRepository db = new JdbcInvoiceRepository();
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            InvoiceData.clearDatabase();
+            record("clearDatabase", start);
+
+            insertAll("", persons, companies, items, invoices);
+
+            start = System.nanoTime();
+            Map<UUID, Person> dbPersons = db.readPersons();
+            record("readPersons", start);
+            start = System.nanoTime();
+            Map<UUID, Company> dbCompanies = db.readCompanies(dbPersons);
+            record("readCompanies", start);
+            start = System.nanoTime();
+            Map<UUID, Item> dbItems = db.readItems(dbCompanies);
+            record("readItems", start);
+            start = System.nanoTime();
+            db.readInvoices(dbPersons, dbCompanies, dbItems);
+            record("readInvoices", start);
+
+            // Same inserts with one connection and its prepared statements reused
+            InvoiceData.clearDatabase();
+            StatementSession.bind(() -> insertAll("reused.", persons, companies, items, invoices));
+        }
+
+        InvoiceData.clearDatabase();
+        long start = System.nanoTime();
+        insertAllConcurrent(persons, companies, items, invoices);
+        record("insertAllConcurrent", start);
+
+        List<InvoiceRepository> repositories = List.of(new CSVInvoiceRepository("data"), db,
+                InMemoryInvoiceRepository.copyOf(db), new CachingInvoiceRepository(db));
+        for (int round = 0; round < rounds; round++) {
+            for (InvoiceRepository repository : repositories) {
+                start = System.nanoTime();
+                readAll(repository);
+                record("read " + repository, start);
+            }
+        }
+
+        System.out.println("Backend: " + ConnectionFactory.getBackend() + " (" + ConnectionFactory.getUrl() + ")");
+        printLatencies();
+        printReuseComparison();
+        ReferenceDataCache.printStats();
+        Metrics.dump();
+        JdbcTracer.printReport();
+    }
+
+    private static void readAll(InvoiceRepository repository) {
+        Map<UUID, Person> persons = repository.readPersons();
+        Map<UUID, Company> companies = repository.readCompanies(persons);
+        Map<UUID, Item> items = repository.readItems(companies);
+        repository.readInvoices(persons, companies, items);
+    }
+
+    /**
+     * Inserts the whole object graph one row at a time through InvoiceData,
+     * recording each operation under <code>prefix + name</code>.
+     */
+    static void insertAll(String prefix, Map<UUID, Person> persons, Map<UUID, Company> companies,
+                          Map<UUID, Item> items, Map<UUID, Invoice> invoices) {
+        long start;
+        for (Person p : persons.values()) {
+            start = System.nanoTime();
+            InvoiceData.addPerson(p.getUuid(), p.getFirstName(), p.getLastName(), p.getPhone());
+            record(prefix + "addPerson", start);
+            for (String email : p.getEmails()) {
+                start = System.nanoTime();
+                InvoiceData.addEmail(p.getUuid(), email);
+                record(prefix + "addEmail", start);
+            }
+        }
+        for (Company c : companies.values()) {
+            Address a = c.getAddress();
+            start = System.nanoTime();
+            InvoiceData.addCompany(c.getUuid(), c.getCustomer().getUuid(), c.getName(),
+                    a.getStreet(), a.getCity(), a.getState(), a.getZip());
+            record(prefix + "addCompany", start);
+        }
+        for (Item i : items.values()) {
+            start = System.nanoTime();
+            if (i instanceof Equipment e) {
+                InvoiceData.addEquipment(i.getUuid(), i.getName(), e.getModelNumber(), e.getRetailPrice());
+                record(prefix + "addEquipment", start);
+            } else if (i instanceof Material m) {
+                InvoiceData.addMaterial(i.getUuid(), i.getName(), m.getUnit(), m.getCostPerUnit());
+                record(prefix + "addMaterial", start);
+            } else if (i instanceof Contract c) {
+                InvoiceData.addContract(i.getUuid(), i.getName(), c.getCompany().getUuid());
+                record(prefix + "addContract", start);
+            }
+        }
+        for (Invoice inv : invoices.values()) {
+            start = System.nanoTime();
+            InvoiceData.addInvoice(inv.getInvoiceId(), inv.getCompany().getUuid(),
+                    inv.getSalesperson().getUuid(), inv.getDate());
+            record(prefix + "addInvoice", start);
+            for (InvoiceItem ii : inv.getItems()) {
+                Item base = ii.getItem();
+                start = System.nanoTime();
+                if (base instanceof Lease) {
+                    InvoiceData.addEquipmentLeaseToInvoice(inv.getInvoiceId(), base.getUuid(),
+                            ii.getLeaseStart(), ii.getLeaseEnd());
+                } else if (base instanceof Rental) {
+                    InvoiceData.addEquipmentRentalToInvoice(inv.getInvoiceId(), base.getUuid(), ii.getRentalHours());
+                } else if (base instanceof Material) {
+                    InvoiceData.addMaterialToInvoice(inv.getInvoiceId(), base.getUuid(), ii.getQuantity());
+                } else if (base instanceof Contract) {
+                    InvoiceData.addContractToInvoice(inv.getInvoiceId(), base.getUuid(), ii.getContractAmount());
+                } else {
+                    InvoiceData.addEquipmentPurchaseToInvoice(inv.getInvoiceId(), base.getUuid());
+                }
+                record(prefix + "addLineItem", start);
+            }
+        }
+    }
+
+    /**
+     * Inserts the object graph through an {@link InvoiceWriter}: reference data
+     * first, then all invoices in parallel. A failed write stops the run with
+     * a CompletionException once its phase has finished.
+     */
+    static void insertAllConcurrent(Map<UUID, Person> persons, Map<UUID, Company> companies,
+                                    Map<UUID, Item> items, Map<UUID, Invoice> invoices) {
+        try (InvoiceWriter writer = new InvoiceWriter()) {
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            for (Person p : persons.values()) {
+                pending.add(writer.addPerson(p.getUuid(), p.getFirstName(), p.getLastName(), p.getPhone()));
+                for (String email : p.getEmails()) {
+                    pending.add(writer.addEmail(p.getUuid(), email));
+                }
+            }
+            awaitAll(pending);
+            for (Company c : companies.values()) {
+                Address a = c.getAddress();
+                pending.add(writer.addCompany(c.getUuid(), c.getCustomer().getUuid(), c.getName(),
+                        a.getStreet(), a.getCity(), a.getState(), a.getZip()));
+            }
+            awaitAll(pending);
+            for (Item i : items.values()) {
+                if (i instanceof Equipment e) {
+                    pending.add(writer.addEquipment(i.getUuid(), i.getName(), e.getModelNumber(), e.getRetailPrice()));
+                } else if (i instanceof Material m) {
+                    pending.add(writer.addMaterial(i.getUuid(), i.getName(), m.getUnit(), m.getCostPerUnit()));
+                } else if (i instanceof Contract c) {
+                    pending.add(writer.addContract(i.getUuid(), i.getName(), c.getCompany().getUuid()));
+                }
+            }
+            awaitAll(pending);
+            for (Invoice inv : invoices.values()) {
+                UUID id = inv.getInvoiceId();
+                pending.add(writer.addInvoice(id, inv.getCompany().getUuid(), inv.getSalesperson().getUuid(), inv.getDate()));
+                for (InvoiceItem ii : inv.getItems()) {
+                    Item base = ii.getItem();
+                    if (base instanceof Lease) {
+                        pending.add(writer.addEquipmentLeaseToInvoice(id, base.getUuid(), ii.getLeaseStart(), ii.getLeaseEnd()));
+                    } else if (base instanceof Rental) {
+                        pending.add(writer.addEquipmentRentalToInvoice(id, base.getUuid(), ii.getRentalHours()));
+                    } else if (base instanceof Material) {
+                        pending.add(writer.addMaterialToInvoice(id, base.getUuid(), ii.getQuantity()));
+                    } else if (base instanceof Contract) {
+                        pending.add(writer.addContractToInvoice(id, base.getUuid(), ii.getContractAmount()));
+                    } else {
+                        pending.add(writer.addEquipmentPurchaseToInvoice(id, base.getUuid()));
+                    }
+                }
+            }
+            awaitAll(pending);
+        }
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        futures.clear();
+    }
+
+    private static void record(String operation, long startNanos) {
+        latencies.computeIfAbsent(operation, k -> new ArrayList<>()).add(System.nanoTime() - startNanos);
+    }
+
+    private static void printLatencies() {
+        System.out.printf("%-20s %8s %10s %10s %10s %10s\n", "Operation", "Count", "Mean ms", "p50 ms", "p99 ms", "Max ms");
+        for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+            long[] sorted = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            double mean = Arrays.stream(sorted).average().orElse(0);
+            System.out.printf("%-20s %8d %10.3f %10.3f %10.3f %10.3f\n", entry.getKey(), sorted.length,
+                    mean / 1e6, percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Prints the mean latency of each insert with a fresh connection per call
+     * against the same insert inside a {@link StatementSession}.
+     */
+    private static void printReuseComparison() {
+        System.out.printf("\n%-20s %12s %12s %8s\n", "Insert", "Per-call ms", "Reused ms", "Speedup");
+        for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+            List<Long> reused = latencies.get("reused." + entry.getKey());
+            if (reused == null) {
+                continue;
+            }
+            double before = entry.getValue().stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+            double after = reused.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+            System.out.printf("%-20s %12.3f %12.3f %7.1fx\n", entry.getKey(), before, after, before / after);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,93 @@
+package com.vgb;
+
+import java.util.Comparator;
+
+/**
+ * An invoice together with its computed totals, so the totals are calculated
+ * once and can be reported without touching the line items again.
+ *
+ * Amounts are kept as whole cents. Each line item is already rounded to the
+ * cent, so summing cents is exact and gives the same result in any order,
+ * which is what lets {@link PricingService} add invoices up in parallel.
+ */
+public class PricedInvoice {
+
+    /** Largest total first, ties broken by invoice UUID. */
+    public static final Comparator<PricedInvoice> BY_TOTAL_DESC = Comparator
+            .comparingLong(PricedInvoice::getTotalCents).reversed()
+            .thenComparing(p -> p.getInvoice().getInvoiceId());
+
+    /** By customer name, ties broken by invoice UUID. */
+    public static final Comparator<PricedInvoice> BY_CUSTOMER = Comparator
+            .comparing((PricedInvoice p) -> p.getInvoice().getCompany().getName())
+            .thenComparing(p -> p.getInvoice().getInvoiceId());
+
+    private final Invoice invoice;
+    private final int itemCount;
+    private final long subtotalCents;
+    private final long taxCents;
+
+    public PricedInvoice(Invoice invoice, int itemCount, long subtotalCents, long taxCents) {
+        this.invoice = invoice;
+        this.itemCount = itemCount;
+        this.subtotalCents = subtotalCents;
+        this.taxCents = taxCents;
+    }
+
+    /**
+     * Prices an invoice from its line items.
+     */
+    public static PricedInvoice of(Invoice invoice) {
+        long subtotal = 0;
+        long tax = 0;
+        for (InvoiceItem item : invoice.getItems()) {
+            subtotal += toCents(item.getSubtotal());
+            tax += toCents(item.getTax());
+        }
+        return new PricedInvoice(invoice, invoice.getItems().size(), subtotal, tax);
+    }
+
+    /**
+     * Converts a dollar amount that has already been rounded to two decimal
+     * places into cents.
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    public Invoice getInvoice() {
+        return invoice;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public long getSubtotalCents() {
+        return subtotalCents;
+    }
+
+    public long getTaxCents() {
+        return taxCents;
+    }
+
+    public long getTotalCents() {
+        return subtotalCents + taxCents;
+    }
+
+    public double getSubtotal() {
+        return toDollars(subtotalCents);
+    }
+
+    public double getTax() {
+        return toDollars(taxCents);
+    }
+
+    public double getTotal() {
+        return toDollars(getTotalCents());
+    }
+}
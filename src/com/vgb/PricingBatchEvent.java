@@ -0,0 +1,26 @@
+package com.vgb;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one leaf task of {@link PricingService}.
+ */
+@Name("com.vgb.PricingBatch")
+@Label("Pricing Batch")
+@Category({"VGB", "Pricing"})
+@Description("Pricing a contiguous range of invoices on one fork/join worker")
+public class PricingBatchEvent extends Event {
+
+    @Label("Invoices")
+    int invoices;
+
+    @Label("Line Items")
+    int items;
+
+    @Label("Total Cents")
+    long totalCents;
+}
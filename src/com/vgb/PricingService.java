@@ -0,0 +1,153 @@
+package com.vgb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Prices a whole list of invoices in parallel on a {@link ForkJoinPool}.
+ *
+ * The list is split in half until the pieces are small enough to price
+ * directly; each piece returns its totals in cents and the halves are added
+ * back together. Because cents are added as longs the grand totals are exact
+ * and identical however many threads were used or in which order pieces
+ * finished. Priced invoices come back in the same order as the input.
+ */
+public class PricingService {
+
+    // Below this many invoices a task prices its range directly
+    static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /**
+     * Prices the invoices on the common fork/join pool.
+     */
+    public static Result priceAll(List<Invoice> invoices) {
+        return priceAll(invoices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prices the invoices using the given number of threads.
+     */
+    public static Result priceAll(List<Invoice> invoices, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return priceAll(invoices, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static Result priceAll(List<Invoice> invoices, ForkJoinPool pool) {
+        long start = Metrics.start();
+        PricedInvoice[] priced = new PricedInvoice[invoices.size()];
+        Totals totals = pool.invoke(new PriceTask(invoices, priced, 0, priced.length));
+        Metrics.record("pricing.priceAll", start);
+        Metrics.add("pricing.invoices", priced.length);
+        Metrics.add("pricing.items", totals.itemCount);
+        return new Result(Arrays.asList(priced), totals);
+    }
+
+    /**
+     * Priced invoices in input order, with their summed totals.
+     */
+    public static class Result {
+        private final List<PricedInvoice> invoices;
+        private final Totals totals;
+
+        Result(List<PricedInvoice> invoices, Totals totals) {
+            this.invoices = Collections.unmodifiableList(invoices);
+            this.totals = totals;
+        }
+
+        public List<PricedInvoice> getInvoices() {
+            return invoices;
+        }
+
+        public int getItemCount() {
+            return totals.itemCount;
+        }
+
+        public long getSubtotalCents() {
+            return totals.subtotalCents;
+        }
+
+        public long getTaxCents() {
+            return totals.taxCents;
+        }
+
+        public long getTotalCents() {
+            return totals.subtotalCents + totals.taxCents;
+        }
+
+        public double getTax() {
+            return PricedInvoice.toDollars(getTaxCents());
+        }
+
+        public double getTotal() {
+            return PricedInvoice.toDollars(getTotalCents());
+        }
+    }
+
+    private static class Totals {
+        int itemCount;
+        long subtotalCents;
+        long taxCents;
+
+        void add(PricedInvoice invoice) {
+            itemCount += invoice.getItemCount();
+            subtotalCents += invoice.getSubtotalCents();
+            taxCents += invoice.getTaxCents();
+        }
+
+        void add(Totals other) {
+            itemCount += other.itemCount;
+            subtotalCents += other.subtotalCents;
+            taxCents += other.taxCents;
+        }
+    }
+
+    // Never serialized; ForkJoinTask is Serializable only by inheritance
+    @SuppressWarnings("serial")
+    private static class PriceTask extends RecursiveTask<Totals> {
+        private final List<Invoice> invoices;
+        private final PricedInvoice[] priced;
+        private final int from;
+        private final int to;
+
+        PriceTask(List<Invoice> invoices, PricedInvoice[] priced, int from, int to) {
+            this.invoices = invoices;
+            this.priced = priced;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                PricingBatchEvent event = new PricingBatchEvent();
+                event.begin();
+                Totals totals = new Totals();
+                for (int i = from; i < to; i++) {
+                    priced[i] = PricedInvoice.of(invoices.get(i));
+                    totals.add(priced[i]);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.invoices = to - from;
+                    event.items = totals.itemCount;
+                    event.totalCents = totals.subtotalCents + totals.taxCents;
+                    event.commit();
+                }
+                return totals;
+            }
+            int mid = (from + to) >>> 1;
+            PriceTask left = new PriceTask(invoices, priced, from, mid);
+            left.fork();
+            Totals totals = new PriceTask(invoices, priced, mid, to).compute();
+            totals.add(left.join());
+            return totals;
+        }
+    }
+}
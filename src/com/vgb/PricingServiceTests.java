@@ -0,0 +1,52 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+public class PricingServiceTests {
+
+    private static List<Invoice> randomInvoices(int count) {
+        Random random = new Random(42);
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Invoice invoice = new Invoice(UUID.randomUUID(), null, null, null);
+            for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                Material material = new Material(UUID.randomUUID(), "Gravel", "ton", random.nextInt(100000) / 100.0);
+                InvoiceItem item = new InvoiceItem(invoice.getInvoiceId(), material);
+                item.setQuantity(1 + random.nextInt(50));
+                invoice.addItem(item);
+            }
+            invoices.add(invoice);
+        }
+        return invoices;
+    }
+
+    @Test
+    public void testTotalsDoNotDependOnThreadCount() {
+        List<Invoice> invoices = randomInvoices(5000);
+        PricingService.Result serial = PricingService.priceAll(invoices, 1);
+        PricingService.Result parallel = PricingService.priceAll(invoices, 8);
+
+        assertEquals(serial.getTotalCents(), parallel.getTotalCents());
+        assertEquals(serial.getTaxCents(), parallel.getTaxCents());
+        assertEquals(serial.getItemCount(), parallel.getItemCount());
+    }
+
+    @Test
+    public void testPricedInvoicesKeepInputOrder() {
+        List<Invoice> invoices = randomInvoices(500);
+        PricingService.Result result = PricingService.priceAll(invoices, 4);
+
+        assertEquals(invoices.size(), result.getInvoices().size());
+        for (int i = 0; i < invoices.size(); i++) {
+            PricedInvoice priced = result.getInvoices().get(i);
+            assertSame(invoices.get(i), priced.getInvoice());
+            assertEquals(invoices.get(i).getTotalAmount(), priced.getTotal(), InvoiceTests.TOLERANCE);
+        }
+    }
+}
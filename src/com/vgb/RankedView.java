@@ -0,0 +1,127 @@
+package com.vgb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A ranking of a collection that is only sorted as far as it is read.
+ *
+ * Creating the view copies the elements into a binary heap in O(n). Reading
+ * the first <code>m</code> ranks then costs O(m log n), so showing the first
+ * page of a large population is far cheaper than sorting all of it. Ranks
+ * already produced are kept, so pages can be re-read in any order.
+ *
+ * The view is a snapshot of the collection it was created from and is not
+ * thread-safe.
+ */
+public class RankedView<E> implements Iterable<E> {
+    private final Comparator<? super E> comparator;
+    private final Object[] heap;
+    private int heapSize;
+    private final List<E> ranked = new ArrayList<>();
+
+    public RankedView(Collection<? extends E> elements, Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.heap = elements.toArray();
+        this.heapSize = heap.length;
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Returns the total number of elements being ranked.
+     */
+    public int size() {
+        return ranked.size() + heapSize;
+    }
+
+    /**
+     * Returns the element at the given rank, starting at 0.
+     */
+    public E get(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException(rank);
+        }
+        materialize(rank + 1);
+        return ranked.get(rank);
+    }
+
+    /**
+     * Returns one page of the ranking; the last page may be short and pages
+     * past the end are empty.
+     *
+     * @param page     page number, starting at 0
+     * @param pageSize ranks per page
+     */
+    public List<E> page(int page, int pageSize) {
+        int from = (int) Math.min(size(), (long) page * pageSize);
+        int to = (int) Math.min(size(), (long) from + pageSize);
+        materialize(to);
+        return new ArrayList<>(ranked.subList(from, to));
+    }
+
+    /**
+     * Returns the first <code>k</code> elements.
+     */
+    public List<E> top(int k) {
+        return page(0, k);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Pops the heap until at least <code>count</code> ranks are known.
+     */
+    @SuppressWarnings("unchecked")
+    private void materialize(int count) {
+        while (ranked.size() < count && heapSize > 0) {
+            ranked.add((E) heap[0]);
+            heap[0] = heap[--heapSize];
+            heap[heapSize] = null;
+            siftDown(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && comparator.compare((E) heap[left], (E) heap[smallest]) < 0) {
+                smallest = left;
+            }
+            if (right < heapSize && comparator.compare((E) heap[right], (E) heap[smallest]) < 0) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            Object swap = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = swap;
+            index = smallest;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class RankingTests {
+
+    private static List<Integer> randomInts(int count) {
+        Random random = new Random(7);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(random.nextInt(1000));
+        }
+        return values;
+    }
+
+    @Test
+    public void testTopKMatchesPrefixOfFullSort() {
+        List<Integer> values = randomInts(10000);
+        List<Integer> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.reverseOrder());
+
+        assertEquals(sorted.subList(0, 100), TopK.of(values, 100, Comparator.reverseOrder()));
+        assertEquals(sorted, TopK.of(values, 20000, Comparator.reverseOrder()));
+        assertTrue(TopK.of(values, 0, Comparator.<Integer>naturalOrder()).isEmpty());
+        assertEquals(sorted, TopK.of(values, Integer.MAX_VALUE, Comparator.reverseOrder()));
+    }
+
+    @Test
+    public void testRankedViewPagesMatchFullSort() {
+        List<Integer> values = randomInts(1000);
+        List<Integer> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.naturalOrder());
+        RankedView<Integer> view = new RankedView<>(values, Comparator.naturalOrder());
+
+        assertEquals(sorted.subList(300, 400), view.page(3, 100));
+        assertEquals(sorted.subList(0, 100), view.page(0, 100));
+        assertEquals(sorted.subList(900, 1000), view.page(6, 150));
+        assertTrue(view.page(20, 100).isEmpty());
+        assertTrue(view.page(Integer.MAX_VALUE, 100).isEmpty());
+        assertEquals(sorted, view.top(Integer.MAX_VALUE));
+        assertEquals(1000, view.size());
+
+        List<Integer> iterated = new ArrayList<>();
+        view.forEach(iterated::add);
+        assertEquals(sorted, iterated);
+    }
+}
@@ -0,0 +1,68 @@
+package com.vgb;
+
+import java.util.UUID;
+
+/**
+ * The shared caches for reference data read by {@link DBReaderUtil}: persons,
+ * companies and items. These catalogs change rarely, so repeated reports and
+ * lookups are served from memory until {@link InvoiceData} writes invalidate
+ * them or their entries expire.
+ *
+ * Companies hold their contact Person and contracts hold their Company, so a
+ * change to a person also drops the cached companies and items, and a change
+ * to a company drops the cached items.
+ *
+ * Settings: <code>vgb.cache.maxSize</code> (entries per cache, default 10000,
+ * 0 disables caching) and <code>vgb.cache.ttlSeconds</code> (default 300).
+ */
+public class ReferenceDataCache {
+
+    private static final int MAX_SIZE = Config.getInt("vgb.cache.maxSize", 10_000);
+    private static final long TTL_SECONDS = Config.getLong("vgb.cache.ttlSeconds", 300);
+
+    static final EntityCache<UUID, Person> PERSONS = new EntityCache<>("persons", MAX_SIZE, TTL_SECONDS);
+    static final EntityCache<UUID, Company> COMPANIES = new EntityCache<>("companies", MAX_SIZE, TTL_SECONDS);
+    static final EntityCache<UUID, Item> ITEMS = new EntityCache<>("items", MAX_SIZE, TTL_SECONDS);
+
+    /**
+     * Called after a person or one of their emails is written.
+     */
+    public static void personChanged(UUID personUuid) {
+        PERSONS.invalidate(personUuid);
+        COMPANIES.invalidateAll();
+        ITEMS.invalidateAll();
+    }
+
+    /**
+     * Called after a company is written.
+     */
+    public static void companyChanged(UUID companyUuid) {
+        COMPANIES.invalidate(companyUuid);
+        ITEMS.invalidateAll();
+    }
+
+    /**
+     * Called after an item is written.
+     */
+    public static void itemChanged(UUID itemUuid) {
+        ITEMS.invalidate(itemUuid);
+    }
+
+    /**
+     * Drops everything, e.g. after the database is cleared or bulk loaded.
+     */
+    public static void invalidateAll() {
+        PERSONS.invalidateAll();
+        COMPANIES.invalidateAll();
+        ITEMS.invalidateAll();
+    }
+
+    /**
+     * Prints hit/miss statistics for each cache.
+     */
+    public static void printStats() {
+        System.out.println(PERSONS);
+        System.out.println(COMPANIES);
+        System.out.println(ITEMS);
+    }
+}
@@ -0,0 +1,295 @@
+package com.vgb;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Produces the invoice summary report as a three-stage pipeline so loading,
+ * pricing and printing overlap instead of running one after another:
+ * <ol>
+ * <li>a reader thread streams invoices from an {@link InvoiceSource},</li>
+ * <li>a pool of pricing threads computes each invoice's totals,</li>
+ * <li>the calling thread prints the rows in the order the reader produced them.</li>
+ * </ol>
+ * The stages are connected by bounded queues, and at most
+ * <code>queueCapacity</code> invoices are in flight between reader and printer,
+ * so the pipeline itself holds a bounded number of invoices however large the
+ * input is. Whether the whole run is bounded depends on the source: only
+ * {@link #dbSource()} reads line items a batch at a time, while
+ * {@link #csvSource} and {@link #repositorySource} read the whole graph first.
+ *
+ * If reading or pricing an invoice fails, the reader stops, the invoices
+ * already in flight are drained without being printed, and {@link #run}
+ * throws once every stage has finished.
+ *
+ * Usage: <code>ReportPipeline [csv|db]</code> (default csv)
+ */
+public class ReportPipeline {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * Produces invoices, with their line items attached, into the pipeline.
+     */
+    @FunctionalInterface
+    public interface InvoiceSource {
+        void stream(Consumer<Invoice> sink);
+    }
+
+    public static void main(String[] args) {
+        InvoiceSource source = args.length > 0 && "db".equalsIgnoreCase(args[0]) ? dbSource() : csvSource("data");
+        run(source, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, System.out);
+        Metrics.dump();
+        JdbcTracer.printReport();
+    }
+
+    /**
+     * Reads the CSV files in the given directory. Line items in
+     * InvoiceItems.csv are not grouped by invoice, so every file is read in
+     * full before the first invoice is streamed.
+     */
+    public static InvoiceSource csvSource(String dataDir) {
+        return repositorySource(new CSVInvoiceRepository(dataDir));
+    }
+
+    /**
+     * Reads the whole graph from a repository before streaming its invoices,
+     * so memory grows with the repository, not with the queue capacity.
+     */
+    public static InvoiceSource repositorySource(InvoiceRepository repository) {
+        return sink -> {
+            Map<UUID, Person> persons = repository.readPersons();
+            Map<UUID, Company> companies = repository.readCompanies(persons);
+            Map<UUID, Item> items = repository.readItems(companies);
+            repository.readInvoices(persons, companies, items).values().forEach(sink);
+        };
+    }
+
+    /**
+     * Reads from the database. Invoice headers are loaded up front and their
+     * line items are fetched one batch at a time, just before the batch is
+     * handed on, so item I/O overlaps with pricing of the previous batch.
+     */
+    public static InvoiceSource dbSource() {
+        return sink -> {
+            Map<UUID, Person> persons = DBReaderUtil.readPersons();
+            Map<UUID, Company> companies = DBReaderUtil.readCompanies(persons);
+            Map<UUID, Item> items = DBReaderUtil.readItems(companies);
+            Map<UUID, Invoice> invoices = DBReaderUtil.loadInvoicesLazy(persons, companies, items);
+            List<UUID> ids = new ArrayList<>(invoices.keySet());
+            for (int from = 0; from < ids.size(); from += DBReaderUtil.IN_BATCH_SIZE) {
+                List<UUID> batch = ids.subList(from, Math.min(ids.size(), from + DBReaderUtil.IN_BATCH_SIZE));
+                DBReaderUtil.loadInvoiceItems(invoices, items, batch);
+                for (UUID id : batch) {
+                    sink.accept(invoices.get(id));
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs the pipeline to completion, printing the summary report.
+     *
+     * @param source         where invoices come from
+     * @param pricingThreads number of threads in the pricing stage
+     * @param queueCapacity  maximum number of invoices in flight
+     * @param out            where the report is printed
+     * @throws IllegalStateException if an invoice could not be read or priced;
+     *         its cause is the original failure
+     */
+    public static void run(InvoiceSource source, int pricingThreads, int queueCapacity, PrintStream out) {
+        BlockingQueue<Slot> toPricing = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Slot> toWriter = new ArrayBlockingQueue<>(queueCapacity);
+        Semaphore inFlight = new Semaphore(queueCapacity);
+        // First failure of any stage; once set, the reader stops and the rest drain
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            long[] seq = {0};
+            try {
+                source.stream(invoice -> {
+                    try {
+                        if (failure.get() != null) {
+                            throw new CancellationException();
+                        }
+                        inFlight.acquire();
+                        toPricing.put(new Slot(seq[0]++, invoice));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Report reader interrupted", e);
+                    }
+                });
+            } catch (CancellationException e) {
+                // Stopped after a failure downstream
+            } catch (RuntimeException e) {
+                System.err.println("Error reading invoices: " + e.getMessage());
+                e.printStackTrace();
+                failure.compareAndSet(null, new IllegalStateException("Reading invoices failed", e));
+            } finally {
+                for (int i = 0; i < pricingThreads; i++) {
+                    putUninterruptibly(toPricing, Slot.END);
+                }
+            }
+        }, "report-reader");
+
+        List<Thread> pricers = new ArrayList<>();
+        for (int i = 0; i < pricingThreads; i++) {
+            pricers.add(new Thread(() -> {
+                while (true) {
+                    Slot slot = takeUninterruptibly(toPricing);
+                    if (slot == Slot.END) {
+                        putUninterruptibly(toWriter, Slot.END);
+                        return;
+                    }
+                    if (failure.get() != null) {
+                        // Drained unpriced; the writer discards it
+                        putUninterruptibly(toWriter, slot);
+                        continue;
+                    }
+                    try {
+                        putUninterruptibly(toWriter, new Slot(slot.seq, slot.invoice, PricedInvoice.of(slot.invoice)));
+                    } catch (RuntimeException e) {
+                        putUninterruptibly(toWriter, new Slot(slot.seq, slot.invoice, e));
+                    }
+                }
+            }, "report-pricer-" + i));
+        }
+
+        long start = Metrics.start();
+        reader.start();
+        pricers.forEach(Thread::start);
+        write(toWriter, inFlight, pricingThreads, out, failure);
+        Metrics.record("report.pipeline", start);
+        if (failure.get() != null) {
+            Metrics.increment("report.failures");
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Writer stage: prints rows in sequence order, holding back any that
+     * arrive early until the rows before them have been printed. After the
+     * first failed slot it records the failure and only drains, releasing the
+     * reader, until every pricer has finished.
+     */
+    private static void write(BlockingQueue<Slot> toWriter, Semaphore inFlight, int producers, PrintStream target,
+                              AtomicReference<RuntimeException> failure) {
+        CountingOutputStream counted = new CountingOutputStream(target);
+        PrintStream out = new PrintStream(counted, false, target.charset());
+        ReportSectionEvent section = ReportSectionEvent.begin("ReportPipeline", "Summary Report - By Total", counted);
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.println("| Summary Report - By Total                                                              |");
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.printf("%-40s %-30s %10s %12s %12s\n", "Invoice #", "Customer", "Num Items", "Tax", "Total");
+
+        Map<Long, PricedInvoice> early = new HashMap<>();
+        long next = 0;
+        long taxCents = 0, totalCents = 0;
+        int finished = 0;
+        while (finished < producers) {
+            Slot slot = takeUninterruptibly(toWriter);
+            if (slot == Slot.END) {
+                finished++;
+                continue;
+            }
+            if (slot.failure != null && failure.compareAndSet(null, new IllegalStateException(
+                    "Pricing invoice " + slot.invoice.getInvoiceId() + " failed", slot.failure))) {
+                // Free the permits of the rows held back, so a blocked reader sees the failure
+                inFlight.release(early.size());
+                early.clear();
+            }
+            if (failure.get() != null) {
+                inFlight.release();
+                continue;
+            }
+            early.put(slot.seq, slot.priced);
+            PricedInvoice priced;
+            while ((priced = early.remove(next)) != null) {
+                Invoice invoice = priced.getInvoice();
+                out.printf("%-40s %-30s %10d %12s %12s\n",
+                        invoice.getInvoiceId(),
+                        invoice.getCompany().getName(),
+                        priced.getItemCount(),
+                        String.format("$%,10.2f", priced.getTax()),
+                        String.format("$%,10.2f", priced.getTotal()));
+                taxCents += priced.getTaxCents();
+                totalCents += priced.getTotalCents();
+                next++;
+                inFlight.release();
+            }
+        }
+
+        if (failure.get() != null) {
+            out.flush();
+            section.end(next);
+            return;
+        }
+        out.println("+----------------------------------------------------------------------------------------+");
+        out.printf("%-71s %12s %12s\n\n", "", String.format("$%,10.2f", PricedInvoice.toDollars(taxCents)),
+                String.format("$%,10.2f", PricedInvoice.toDollars(totalCents)));
+        out.flush();
+        section.end(next);
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Slot> queue, Slot slot) {
+        while (true) {
+            try {
+                queue.put(slot);
+                return;
+            } catch (InterruptedException e) {
+                // Stage threads are only stopped by the END marker
+            }
+        }
+    }
+
+    private static Slot takeUninterruptibly(BlockingQueue<Slot> queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // Stage threads are only stopped by the END marker
+            }
+        }
+    }
+
+    /**
+     * An invoice moving through the pipeline, tagged with its position in the source.
+     */
+    private static class Slot {
+        static final Slot END = new Slot(-1, null);
+
+        final long seq;
+        final Invoice invoice;
+        final PricedInvoice priced;
+        // Set instead of priced when pricing the invoice failed
+        final RuntimeException failure;
+
+        Slot(long seq, Invoice invoice) {
+            this(seq, invoice, (PricedInvoice) null);
+        }
+
+        Slot(long seq, Invoice invoice, PricedInvoice priced) {
+            this.seq = seq;
+            this.invoice = invoice;
+            this.priced = priced;
+            this.failure = null;
+        }
+
+        Slot(long seq, Invoice invoice, RuntimeException failure) {
+            this.seq = seq;
+            this.invoice = invoice;
+            this.priced = null;
+            this.failure = failure;
+        }
+    }
+}
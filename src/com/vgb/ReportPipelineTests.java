@@ -0,0 +1,80 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class ReportPipelineTests {
+
+    private static Invoice invoice(Company company, Item item) {
+        Invoice invoice = new Invoice(UUID.randomUUID(), company, null, LocalDate.of(2024, 1, 1));
+        invoice.addItem(new InvoiceItem(invoice.getInvoiceId(), item));
+        return invoice;
+    }
+
+    @Test
+    public void testRowsMatchTheSummaryReportInOrder() {
+        // The reference report goes on to print contacts and addresses
+        Person salesperson = new Person(UUID.randomUUID(), "Ada", "Lovelace", "555-0100", new ArrayList<>());
+        Address address = new Address("1 Main", "Lincoln", "NE", "68508");
+        Company acme = new Company(UUID.randomUUID(), salesperson, "Acme", address);
+        Company globex = new Company(UUID.randomUUID(), salesperson, "Globex", address);
+        Item rental = new Rental(UUID.randomUUID(), "Car", "67890", 150, 20);
+        Item material = new Material(UUID.randomUUID(), "Gravel", "ton", 12.5);
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Invoice invoice = new Invoice(UUID.randomUUID(), i % 3 == 0 ? globex : acme, salesperson,
+                    LocalDate.of(2024, 1, 1).plusDays(i));
+            // Uneven sizes so pricers finish out of order
+            for (int j = 0; j < i % 17; j++) {
+                invoice.addItem(new InvoiceItem(invoice.getInvoiceId(), j % 2 == 0 ? rental : material));
+            }
+            invoices.add(invoice);
+        }
+
+        ByteArrayOutputStream piped = new ByteArrayOutputStream();
+        ReportPipeline.run(sink -> invoices.forEach(sink), 4, 8, new PrintStream(piped));
+
+        ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(reported));
+        try {
+            InvoiceReports.generateInvoiceReport(invoices, Map.of(acme.getUuid(), acme, globex.getUuid(), globex));
+        } finally {
+            System.setOut(stdout);
+        }
+
+        List<String> lines = piped.toString().lines().toList();
+        // Four header lines, the rows, then the separator, totals and a blank line
+        assertEquals(4 + invoices.size() + 3, lines.size());
+        for (int i = 0; i < invoices.size(); i++) {
+            assertTrue(lines.get(4 + i).startsWith(invoices.get(i).getInvoiceId().toString()));
+        }
+        assertEquals(reported.toString().lines().limit(lines.size()).toList(), lines);
+    }
+
+    @Test
+    public void testPricingFailureStopsThePipeline() {
+        Company company = new Company(UUID.randomUUID(), null, "Acme", null);
+        Item rental = new Rental(UUID.randomUUID(), "Car", "67890", 150, 20);
+        Item broken = new Lease(UUID.randomUUID(), "Office", "12345", 6000, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> ReportPipeline.run(sink -> {
+            for (int i = 0; i < 100; i++) {
+                sink.accept(invoice(company, i == 10 ? broken : rental));
+            }
+        }, 2, 4, new PrintStream(out)));
+        assertTrue(e.getMessage().startsWith("Pricing invoice"));
+        assertNotNull(e.getCause());
+        // No totals are printed under a report that is missing rows
+        assertEquals(2, out.toString().lines().filter(line -> line.startsWith("+---")).count());
+    }
+}
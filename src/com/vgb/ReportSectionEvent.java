@@ -0,0 +1,63 @@
+package com.vgb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering the rendering of one section of a report, with the
+ * rows and bytes it printed. The bytes are counted by the stream the report
+ * prints through.
+ */
+@Name("com.vgb.ReportSection")
+@Label("Report Section")
+@Category({"VGB", "Reporting"})
+@Description("Rendering one section of an invoice report")
+public class ReportSectionEvent extends Event {
+
+    @Label("Report")
+    String report;
+
+    @Label("Section")
+    String section;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @Description("Size of the section's printed output")
+    @DataAmount
+    long bytes;
+
+    private transient CountingOutputStream output;
+    private transient long startBytes;
+
+    /**
+     * Creates and starts the event for a section printed through
+     * <code>output</code>.
+     */
+    static ReportSectionEvent begin(String report, String section, CountingOutputStream output) {
+        ReportSectionEvent event = new ReportSectionEvent();
+        event.report = report;
+        event.section = section;
+        event.output = output;
+        event.startBytes = output.getCount();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the section and commits the event if a recording wants it.
+     */
+    public void end(long rows) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            this.bytes = output.getCount() - startBytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.vgb;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a ResultSet to an object. Mappers are created per
+ * ResultSet by {@link RowMappers}, which look the column indexes up once, so
+ * mapping a row only reads columns by position.
+ *
+ * @param <T> the type rows are mapped to
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Maps the row the ResultSet is positioned on.
+     *
+     * @param rs the ResultSet the mapper was created for
+     * @return the mapped object, or null if the row refers to something unknown
+     */
+    T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,163 @@
+package com.vgb;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Row mappers for the reader queries in {@link DBReaderUtil}, and the item and
+ * line item construction shared with {@link CSVReaderUtil}.
+ *
+ * Each factory method resolves the columns it needs with
+ * {@link ResultSet#findColumn(String)} once and returns a mapper that reads
+ * them by index, so no column name is looked up per row. Create the mapper
+ * after executing the query and reuse it for every row of that ResultSet.
+ */
+public class RowMappers {
+
+    public static RowMapper<Person> person(ResultSet rs) throws SQLException {
+        int uuid = rs.findColumn("person_uuid");
+        int firstName = rs.findColumn("first_name");
+        int lastName = rs.findColumn("last_name");
+        int phone = rs.findColumn("phone");
+        return r -> new Person(UUID.fromString(r.getString(uuid)), r.getString(firstName),
+                r.getString(lastName), r.getString(phone), new ArrayList<>());
+    }
+
+    /**
+     * @param contacts finds a company's contact person by UUID
+     */
+    public static RowMapper<Company> company(ResultSet rs, Function<UUID, Person> contacts) throws SQLException {
+        int uuid = rs.findColumn("company_uuid");
+        int contact = rs.findColumn("person_uuid");
+        int name = rs.findColumn("company_name");
+        int street = rs.findColumn("street");
+        int city = rs.findColumn("city");
+        int state = rs.findColumn("state");
+        int zip = rs.findColumn("postal_code");
+        return r -> {
+            Address address = new Address(r.getString(street), r.getString(city), r.getString(state), r.getString(zip));
+            return new Company(UUID.fromString(r.getString(uuid)), contacts.apply(UUID.fromString(r.getString(contact))),
+                    r.getString(name), address);
+        };
+    }
+
+    /**
+     * Maps Item rows. Rows of an unknown type map to null.
+     *
+     * @param servicers finds the company servicing a contract by UUID
+     */
+    public static RowMapper<Item> item(ResultSet rs, Function<UUID, Company> servicers) throws SQLException {
+        int uuid = rs.findColumn("item_uuid");
+        int type = rs.findColumn("type");
+        int name = rs.findColumn("name");
+        int modelNo = rs.findColumn("model_no");
+        int retailPrice = rs.findColumn("retail_price");
+        int unit = rs.findColumn("unit");
+        int unitCost = rs.findColumn("unit_cost");
+        int contractFee = rs.findColumn("contract_fee");
+        int servicer = rs.findColumn("servicer_uuid");
+        return r -> {
+            String servicerUuid = r.getString(servicer);
+            Company company = servicerUuid == null ? null : servicers.apply(UUID.fromString(servicerUuid));
+            return item(UUID.fromString(r.getString(uuid)), r.getString(type), r.getString(name),
+                    r.getString(modelNo), r.getDouble(retailPrice), r.getString(unit), r.getDouble(unitCost),
+                    company, r.getDouble(contractFee));
+        };
+    }
+
+    public static RowMapper<Invoice> invoice(ResultSet rs, Map<UUID, Person> persons, Map<UUID, Company> companies)
+            throws SQLException {
+        int uuid = rs.findColumn("invoice_uuid");
+        int company = rs.findColumn("company_uuid");
+        int salesperson = rs.findColumn("person_uuid");
+        int date = rs.findColumn("invoice_date");
+        return r -> new Invoice(UUID.fromString(r.getString(uuid)),
+                companies.get(UUID.fromString(r.getString(company))),
+                persons.get(UUID.fromString(r.getString(salesperson))),
+                r.getDate(date).toLocalDate());
+    }
+
+    /**
+     * Maps rows of {@link DBReaderUtil#INVOICE_ITEM_SQL}. Rows whose item is
+     * not in the given map map to null.
+     */
+    public static RowMapper<InvoiceItem> invoiceItem(ResultSet rs, Map<UUID, Item> items) throws SQLException {
+        int invoice = rs.findColumn("invoice_uuid");
+        int item = rs.findColumn("item_uuid");
+        int purchaseType = rs.findColumn("purchase_type");
+        int quantity = rs.findColumn("quantity");
+        int leaseStart = rs.findColumn("lease_start_date");
+        int leaseEnd = rs.findColumn("lease_end_date");
+        int rentalHours = rs.findColumn("rental_hours");
+        return r -> {
+            Item base = items.get(UUID.fromString(r.getString(item)));
+            if (base == null) {
+                return null;
+            }
+            return invoiceItem(UUID.fromString(r.getString(invoice)), base, r.getString(purchaseType),
+                    r.getInt(quantity), toLocalDate(r.getDate(leaseStart)), toLocalDate(r.getDate(leaseEnd)),
+                    r.getDouble(rentalHours));
+        };
+    }
+
+    /**
+     * Builds an Equipment (type E), Material (M) or Contract (C). Only the
+     * fields of the given type are used.
+     *
+     * @return the item, or null for an unknown type
+     */
+    public static Item item(UUID uuid, String type, String name, String modelNumber, double retailPrice,
+                            String unit, double unitCost, Company servicer, double contractFee) {
+        switch (type) {
+            case "E":
+                return new Equipment(uuid, name, modelNumber, retailPrice);
+            case "M":
+                return new Material(uuid, name, unit, unitCost);
+            case "C":
+                return new Contract(uuid, name, servicer, contractFee);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Builds the line item for an item on an invoice. Equipment bought with
+     * purchase type L or R becomes a {@link Lease} or {@link Rental} of that
+     * equipment; only the fields of the resulting kind of line item are used.
+     */
+    public static InvoiceItem invoiceItem(UUID invoiceId, Item item, String purchaseType, int quantity,
+                                          LocalDate leaseStart, LocalDate leaseEnd, double rentalHours) {
+        if (item instanceof Material) {
+            InvoiceItem invoiceItem = new InvoiceItem(invoiceId, item);
+            invoiceItem.setQuantity(quantity);
+            return invoiceItem;
+        }
+        if (item instanceof Equipment equipment) {
+            if ("L".equalsIgnoreCase(purchaseType)) {
+                Lease lease = new Lease(equipment.getUuid(), equipment.getName(), equipment.getModelNumber(),
+                        equipment.getRetailPrice(), leaseStart, leaseEnd);
+                InvoiceItem invoiceItem = new InvoiceItem(invoiceId, lease);
+                invoiceItem.setLeaseDates(leaseStart, leaseEnd);
+                return invoiceItem;
+            }
+            if ("R".equalsIgnoreCase(purchaseType)) {
+                Rental rental = new Rental(equipment.getUuid(), equipment.getName(), equipment.getModelNumber(),
+                        equipment.getRetailPrice(), rentalHours);
+                InvoiceItem invoiceItem = new InvoiceItem(invoiceId, rental);
+                invoiceItem.setRentalHours(rentalHours);
+                return invoiceItem;
+            }
+        }
+        return new InvoiceItem(invoiceId, item);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+}
@@ -0,0 +1,190 @@
+package com.vgb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Applies the versioned SQL scripts in <code>resources/db/migration</code> to
+ * the database. Scripts are named <code>V&lt;n&gt;__&lt;description&gt;.sql</code>
+ * and run in version order; each applied version is recorded in the
+ * <code>schema_version</code> table so it is never run twice.
+ *
+ * DDL is not transactional on MySQL, so a script that fails part way leaves
+ * its earlier statements applied. Running it again is safe: tables are
+ * created <code>IF NOT EXISTS</code>, and <code>ALTER TABLE ... ADD
+ * CONSTRAINT</code> and <code>CREATE INDEX</code> statements are skipped
+ * when the named constraint or index already exists, since MySQL has no
+ * <code>IF NOT EXISTS</code> for either.
+ */
+public class SchemaMigrator {
+
+    static final String MIGRATION_DIR = "resources/db/migration";
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final Pattern ADD_CONSTRAINT = Pattern.compile("ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+CONSTRAINT\\s+(\\w+)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CREATE_INDEX = Pattern.compile("CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Brings the schema up to the latest migration version.
+     *
+     * @param conn an open connection to the target database
+     * @throws SQLException if a migration statement fails; the message names
+     *         the migration and the statement
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version INT NOT NULL PRIMARY KEY, "
+                    + "description VARCHAR(255) NOT NULL, "
+                    + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        int current = currentVersion(conn);
+
+        for (Migration m : findMigrations()) {
+            if (m.version <= current) continue;
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : m.statements) {
+                    if (alreadyApplied(conn, sql)) {
+                        continue;
+                    }
+                    try {
+                        stmt.execute(sql);
+                    } catch (SQLException e) {
+                        throw new SQLException("Schema migration V" + m.version + " (" + m.description
+                                + ") failed on: " + sql + ": " + e.getMessage(), e.getSQLState(), e);
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.executeUpdate();
+            }
+            System.out.println("Applied schema migration V" + m.version + " " + m.description);
+        }
+    }
+
+    /**
+     * Whether the statement adds a constraint or index that already exists,
+     * e.g. one applied before an earlier run of its migration failed.
+     */
+    static boolean alreadyApplied(Connection conn, String sql) throws SQLException {
+        Matcher m = ADD_CONSTRAINT.matcher(sql);
+        if (m.matches()) {
+            return constraintExists(conn, m.group(1), m.group(2));
+        }
+        m = CREATE_INDEX.matcher(sql);
+        if (m.matches()) {
+            return indexExists(conn, m.group(2), m.group(1));
+        }
+        return false;
+    }
+
+    private static boolean constraintExists(Connection conn, String table, String constraint) throws SQLException {
+        // MySQL names the database as catalog and has no schema; H2 has both
+        String schema = conn.getSchema() != null ? conn.getSchema() : conn.getCatalog();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS"
+                + " WHERE TABLE_SCHEMA = ? AND UPPER(TABLE_NAME) = UPPER(?) AND UPPER(CONSTRAINT_NAME) = UPPER(?)")) {
+            ps.setString(1, schema);
+            ps.setString(2, table);
+            ps.setString(3, constraint);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        String name = meta.storesUpperCaseIdentifiers() ? table.toUpperCase() : table;
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), conn.getSchema(), name, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the highest applied migration version, or 0 for an empty schema.
+     */
+    static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Reads all migration scripts from disk, sorted by version.
+     */
+    static List<Migration> findMigrations() throws SQLException {
+        List<Migration> migrations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Paths.get(MIGRATION_DIR))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = SCRIPT_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    migrations.add(new Migration(Integer.parseInt(m.group(1)),
+                            m.group(2).replace('_', ' '), splitStatements(Files.readString(file))));
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read migrations from " + MIGRATION_DIR, e);
+        }
+        migrations.sort(Comparator.comparingInt(m -> m.version));
+        return migrations;
+    }
+
+    /**
+     * Splits a script into statements on semicolons, dropping <code>--</code> comment lines.
+     */
+    static List<String> splitStatements(String script) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sb.append(line).append('\n');
+            }
+        }
+        List<String> statements = new ArrayList<>();
+        for (String sql : sb.toString().split(";")) {
+            if (!sql.isBlank()) {
+                statements.add(sql.trim());
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * A single versioned script.
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+
+        Migration(int version, String description, List<String> statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+public class SchemaMigratorTests {
+
+    @Test
+    public void testPartlyAppliedMigrationsRunAgain() throws SQLException {
+        Connection conn = connect();
+        assumeTrue(conn != null, "H2 driver not on the classpath");
+
+        try (conn) {
+            SchemaMigrator.migrate(conn);
+            // As if every migration after V1 had failed after its last statement
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM schema_version WHERE version > 1");
+            }
+            assertTrue(SchemaMigrator.alreadyApplied(conn,
+                    "ALTER TABLE Person ADD CONSTRAINT uq_person_uuid UNIQUE (person_uuid)"));
+            assertTrue(SchemaMigrator.alreadyApplied(conn, "CREATE INDEX ix_invoice_date ON Invoice (invoice_date)"));
+            assertFalse(SchemaMigrator.alreadyApplied(conn, "CREATE INDEX ix_missing ON Invoice (invoice_date)"));
+
+            SchemaMigrator.migrate(conn);
+            List<SchemaMigrator.Migration> migrations = SchemaMigrator.findMigrations();
+            assertEquals(migrations.get(migrations.size() - 1).version, SchemaMigrator.currentVersion(conn));
+        }
+    }
+
+    /**
+     * A private in-memory H2 database, or null if the driver is missing.
+     */
+    private static Connection connect() {
+        try {
+            return DriverManager.getConnection("jdbc:h2:mem:migrator;MODE=MySQL");
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
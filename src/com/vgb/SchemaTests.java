@@ -0,0 +1,126 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checks the query plans of the reader and lookup queries against a migrated
+ * MySQL schema. Skipped when the database is not reachable.
+ */
+public class SchemaTests {
+
+    private static Connection conn;
+
+    @BeforeAll
+    static void connect() throws SQLException {
+        try {
+            conn = ConnectionFactory.getConnection();
+        } catch (SQLException e) {
+            conn = null;
+        }
+        assumeTrue(conn != null, "database not reachable");
+        assumeTrue(conn.getMetaData().getDatabaseProductName().contains("MySQL"), "EXPLAIN checks need MySQL");
+        // Migrations are off by default on MySQL
+        SchemaMigrator.migrate(conn);
+    }
+
+    @AfterAll
+    static void close() {
+        ConnectionFactory.closeConnection(conn);
+    }
+
+    @Test
+    public void testSchemaIsAtLatestVersion() throws SQLException {
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.findMigrations();
+        assertEquals(migrations.get(migrations.size() - 1).version, SchemaMigrator.currentVersion(conn));
+    }
+
+    @Test
+    public void testReaderJoinsUseIndexes() throws SQLException {
+        assertJoinsIndexed(DBReaderUtil.COMPANY_SQL);
+        assertJoinsIndexed(DBReaderUtil.INVOICE_SQL);
+        assertJoinsIndexed(DBReaderUtil.INVOICE_ITEM_SQL);
+    }
+
+    @Test
+    public void testUuidLookupsUseIndexes() throws SQLException {
+        assertLookupIndexed(InvoiceData.PERSON_ID_SQL);
+        assertLookupIndexed(InvoiceData.COMPANY_ID_SQL);
+        assertLookupIndexed(SummaryTables.INVOICE_KEY_SQL);
+    }
+
+    @Test
+    public void testInvoiceQueriesUseIndexes() throws SQLException {
+        UUID someone = UUID.randomUUID();
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        assertQueryIndexed(new InvoiceQuery().forCompany(someone).between(day, day.plusMonths(1)));
+        assertQueryIndexed(new InvoiceQuery().forSalesperson(someone).after(new InvoiceQuery.Cursor(day, someone)));
+        assertQueryIndexed(new InvoiceQuery().between(day, day.plusMonths(1)));
+    }
+
+    /**
+     * Every table in a filtered invoice query must be reachable through an index.
+     */
+    private static void assertQueryIndexed(InvoiceQuery query) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = DBReaderUtil.invoiceQuerySql(query, params);
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String extra = rs.getString("Extra");
+                    assertTrue(rs.getString("possible_keys") != null
+                            || (extra != null && extra.contains("no matching row in const table")),
+                            "table " + rs.getString("table") + " read without an index in: " + sql);
+                }
+            }
+        }
+    }
+
+    /**
+     * Full loads scan their driving table by design; every joined table after
+     * it must be reachable through an index.
+     */
+    private static void assertJoinsIndexed(String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next(), "no plan for " + sql);
+            while (rs.next()) {
+                assertNotNull(rs.getString("possible_keys"),
+                        "table " + rs.getString("table") + " joined without an index in: " + sql);
+            }
+        }
+    }
+
+    /**
+     * A lookup must use a key, or be resolved as a unique-key const lookup that
+     * found no row.
+     */
+    private static void assertLookupIndexed(String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql)) {
+            ps.setString(1, UUID.randomUUID().toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next(), "no plan for " + sql);
+                String extra = rs.getString("Extra");
+                assertTrue(rs.getString("key") != null
+                        || (extra != null && extra.contains("no matching row in const table")),
+                        "lookup does not use an index: " + sql);
+            }
+        }
+    }
+}
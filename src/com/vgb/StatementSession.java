@@ -0,0 +1,240 @@
+package com.vgb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A connection bound to the current thread together with the prepared
+ * statements created on it, so repeated {@link InvoiceData} calls reuse both
+ * instead of opening a connection and re-preparing their SQL every time.
+ *
+ * <pre>
+ * StatementSession.bind(() -&gt; {
+ *     for (...) {
+ *         InvoiceData.addPerson(...);   // same connection, same statement
+ *     }
+ * });
+ * </pre>
+ *
+ * Opening a session while one is already bound to the thread joins it; only
+ * the outermost close releases the statements and the connection. Every
+ * InvoiceData method opens a session itself, so without an outer session a
+ * call still gets one connection for all the statements it runs (e.g. the id
+ * lookups in addInvoice) and releases it on return.
+ *
+ * Work that must only happen once a write is committed (see
+ * {@link #afterCommit(Runnable)}) waits for the transaction open on the
+ * session's connection, so a caller that groups writes in one must end it
+ * with {@link #inTransaction}, {@link #commit()} or {@link #rollback()}
+ * rather than on the connection itself.
+ *
+ * The connection is opened on first use, so opening a session is free until
+ * it runs a statement. Sessions are confined to the thread that opened them
+ * and must be closed on that thread.
+ */
+public class StatementSession implements AutoCloseable {
+
+    private static final ThreadLocal<StatementSession> CURRENT = new ThreadLocal<>();
+
+    private Connection conn;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private final Map<String, PreparedStatement> keyStatements = new HashMap<>();
+    // Run when the open transaction commits, dropped if it rolls back
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private int joined;
+
+    private StatementSession() {
+    }
+
+    /**
+     * Joins the session bound to this thread, or binds a new one if there is none.
+     */
+    public static StatementSession open() {
+        StatementSession current = CURRENT.get();
+        if (current != null) {
+            current.joined++;
+            return current;
+        }
+        StatementSession session = new StatementSession();
+        CURRENT.set(session);
+        return session;
+    }
+
+    /**
+     * Runs the calls with a session bound to this thread, for callers that
+     * only need the calls they make to share it and never touch the session.
+     */
+    public static void bind(Runnable calls) {
+        StatementSession session = open();
+        try {
+            calls.run();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the session's connection, opening it on first use.
+     *
+     * @throws SQLException if a connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (conn == null) {
+            conn = ConnectionFactory.getConnection();
+        }
+        return conn;
+    }
+
+    /**
+     * Whether the session's connection is still usable. A session that has
+     * not opened its connection yet is.
+     */
+    public boolean isValid() {
+        try {
+            return conn == null || conn.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a prepared statement for the SQL, preparing it on first use.
+     * The statement belongs to the session and must not be closed by the caller.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = getConnection().prepareStatement(sql);
+            statements.put(sql, ps);
+            Metrics.increment("db.statements.prepared");
+        } else {
+            ps.clearParameters();
+            Metrics.increment("db.statements.reused");
+        }
+        return ps;
+    }
+
+    /**
+     * Like {@link #prepare(String)}, for an INSERT whose generated keys are read back.
+     */
+    public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+        PreparedStatement ps = keyStatements.get(sql);
+        if (ps == null) {
+            ps = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            keyStatements.put(sql, ps);
+            Metrics.increment("db.statements.prepared");
+        } else {
+            ps.clearParameters();
+            Metrics.increment("db.statements.reused");
+        }
+        return ps;
+    }
+
+    /**
+     * Work run by {@link #inTransaction(Work)}.
+     */
+    @FunctionalInterface
+    public interface Work {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs the work as one transaction on the session's connection, committing
+     * if it completes and rolling back if it throws. If a transaction is
+     * already open on the connection the work joins it instead.
+     */
+    public void inTransaction(Work work) throws SQLException {
+        Connection c = getConnection();
+        if (!c.getAutoCommit()) {
+            work.run();
+            return;
+        }
+        c.setAutoCommit(false);
+        try {
+            work.run();
+            commit();
+        } catch (SQLException | RuntimeException e) {
+            rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Runs the action once what the session has written is committed: now if
+     * no transaction is open on its connection, otherwise when it commits.
+     * If the transaction rolls back, or the session closes first, the action
+     * is dropped.
+     */
+    public void afterCommit(Runnable action) throws SQLException {
+        if (conn == null || conn.getAutoCommit()) {
+            action.run();
+        } else {
+            afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Commits the transaction open on the session's connection and runs the
+     * actions waiting for it.
+     */
+    public void commit() throws SQLException {
+        getConnection().commit();
+        List<Runnable> actions = new ArrayList<>(afterCommit);
+        afterCommit.clear();
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Rolls back the transaction open on the session's connection and drops
+     * the actions waiting for it.
+     */
+    public void rollback() throws SQLException {
+        afterCommit.clear();
+        getConnection().rollback();
+    }
+
+    /**
+     * Leaves the session. The outermost close closes the cached statements
+     * and the connection and unbinds the session from the thread.
+     */
+    @Override
+    public void close() {
+        if (joined > 0) {
+            joined--;
+            return;
+        }
+        CURRENT.remove();
+        if (!afterCommit.isEmpty()) {
+            Metrics.add("db.afterCommit.dropped", afterCommit.size());
+            afterCommit.clear();
+        }
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        for (PreparedStatement ps : keyStatements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+        keyStatements.clear();
+        ConnectionFactory.closeConnection(conn);
+        conn = null;
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatementSessionTests {
+
+    @Test
+    public void testAfterCommitWaitsForTheOuterTransaction() throws Exception {
+        assumeTrue(ConnectionFactory.getBackend() == DatabaseBackend.H2, "needs the H2 backend");
+        List<String> ran = new ArrayList<>();
+        try (StatementSession session = StatementSession.open()) {
+            session.afterCommit(() -> ran.add("autocommit"));
+            assertEquals(List.of("autocommit"), ran);
+
+            session.inTransaction(() -> {
+                session.inTransaction(() -> session.afterCommit(() -> ran.add("nested")));
+                assertEquals(1, ran.size());
+            });
+            assertEquals(List.of("autocommit", "nested"), ran);
+
+            Connection conn = session.getConnection();
+            conn.setAutoCommit(false);
+            try {
+                session.afterCommit(() -> ran.add("rolled back"));
+                session.rollback();
+                session.afterCommit(() -> ran.add("committed"));
+                assertEquals(2, ran.size());
+                session.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        assertEquals(List.of("autocommit", "nested", "committed"), ran);
+    }
+}
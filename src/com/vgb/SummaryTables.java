@@ -0,0 +1,279 @@
+package com.vgb;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Maintains the CompanyTotals, SalespersonTotals and DailyTotals tables, which
+ * hold invoice counts, line item counts and amounts per company, salesperson
+ * and invoice date, so reports can read totals instead of pricing every
+ * invoice.
+ *
+ * The totals are kept up to date in-process by every write path rather than
+ * by triggers, since line item prices come from the Java pricing rules:
+ * <ul>
+ * <li>{@link InvoiceData} applies one invoice or line item per call, in the
+ * same transaction as the insert,</li>
+ * <li>{@link BulkLoader} and {@link InvoiceItemIngester} accumulate a
+ * {@link Delta} for the whole load or batch and apply it before committing.</li>
+ * </ul>
+ * The totals use the same prices as pricing the invoices read back from the
+ * database. A contract line item is priced at its contract's current fee,
+ * which is set by the last line item added for the contract, so when a write
+ * changes the fee it also reprices the contract's existing line items with
+ * {@link #contractFeeChanged}.
+ *
+ * For a database loaded some other way, {@link #rebuild()} (or running this
+ * class) recomputes all three tables from the invoices.
+ */
+public class SummaryTables {
+
+    static final String INVOICE_KEY_SQL =
+            "SELECT invoiceId, companyId, personId, invoice_date FROM Invoice WHERE invoice_uuid = ?";
+
+    static final String[] TABLES = {"CompanyTotals", "SalespersonTotals", "DailyTotals"};
+
+    static final String CONTRACT_FEE_SQL = "SELECT contract_fee FROM Item WHERE item_uuid = ? FOR UPDATE";
+
+    static final String CONTRACT_LINES_SQL = "SELECT inv.companyId, inv.personId, inv.invoice_date, COUNT(*)"
+            + " FROM InvoiceItems ii JOIN Invoice inv ON ii.invoiceId = inv.invoiceId"
+            + " WHERE ii.item_uuid = ? GROUP BY inv.companyId, inv.personId, inv.invoice_date";
+
+    private static final String COLUMNS = "invoice_count, item_count, subtotal_cents, tax_cents";
+    private static final String ON_DUPLICATE = " ON DUPLICATE KEY UPDATE"
+            + " invoice_count = invoice_count + VALUES(invoice_count),"
+            + " item_count = item_count + VALUES(item_count),"
+            + " subtotal_cents = subtotal_cents + VALUES(subtotal_cents),"
+            + " tax_cents = tax_cents + VALUES(tax_cents)";
+
+    static final String COMPANY_UPSERT_SQL =
+            "INSERT INTO CompanyTotals (companyId, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?)" + ON_DUPLICATE;
+    static final String SALESPERSON_UPSERT_SQL =
+            "INSERT INTO SalespersonTotals (personId, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?)" + ON_DUPLICATE;
+    static final String DAILY_UPSERT_SQL =
+            "INSERT INTO DailyTotals (invoice_date, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?)" + ON_DUPLICATE;
+
+    public static void main(String[] args) {
+        rebuild();
+        Metrics.dump();
+        JdbcTracer.printReport();
+    }
+
+    /**
+     * Empties the summary tables and recomputes them from the invoices and
+     * line items in the database, in one transaction.
+     */
+    public static void rebuild() {
+        long start = Metrics.start();
+        InvoiceRepository db = new JdbcInvoiceRepository();
+        Map<UUID, Person> persons = db.readPersons();
+        Map<UUID, Company> companies = db.readCompanies(persons);
+        Map<UUID, Item> items = db.readItems(companies);
+        Map<UUID, Invoice> invoices = db.readInvoices(persons, companies, items);
+
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<UUID, InvoiceKey> keys = new HashMap<>();
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery(
+                             "SELECT invoice_uuid, invoiceId, companyId, personId, invoice_date FROM Invoice")) {
+                    while (rs.next()) {
+                        keys.put(UUID.fromString(rs.getString(1)), new InvoiceKey(rs.getInt(2), rs.getInt(3),
+                                rs.getInt(4), rs.getDate(5).toLocalDate()));
+                    }
+                }
+                Delta delta = new Delta();
+                for (Invoice invoice : invoices.values()) {
+                    InvoiceKey key = keys.get(invoice.getInvoiceId());
+                    delta.invoice(key);
+                    for (InvoiceItem item : invoice.getItems()) {
+                        delta.item(key, item);
+                    }
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    for (String table : TABLES) {
+                        stmt.executeUpdate("DELETE FROM " + table);
+                    }
+                }
+                delta.apply(conn);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Metrics.increment("db.errors");
+            e.printStackTrace();
+        } finally {
+            Metrics.record("db.rebuildSummaryTables", start);
+        }
+    }
+
+    /**
+     * Adds to the delta the change in the totals of a contract's line items
+     * already in the database when its fee is set to <code>fee</code>. Must be
+     * called in the transaction that sets the fee, before it inserts any new
+     * line items of the contract; the fee row stays locked until it ends.
+     */
+    static void contractFeeChanged(Connection conn, Contract contract, double fee, Delta delta) throws SQLException {
+        double oldFee;
+        try (PreparedStatement ps = conn.prepareStatement(CONTRACT_FEE_SQL)) {
+            ps.setString(1, contract.getUuid().toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                oldFee = rs.getDouble(1);
+            }
+        }
+        InvoiceItem before = new InvoiceItem(null, new Contract(contract.getUuid(), contract.getName(),
+                contract.getCompany(), oldFee));
+        InvoiceItem after = new InvoiceItem(null, new Contract(contract.getUuid(), contract.getName(),
+                contract.getCompany(), fee));
+        long subtotalCents = PricedInvoice.toCents(after.getSubtotal()) - PricedInvoice.toCents(before.getSubtotal());
+        long taxCents = PricedInvoice.toCents(after.getTax()) - PricedInvoice.toCents(before.getTax());
+        if (subtotalCents == 0 && taxCents == 0) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(CONTRACT_LINES_SQL)) {
+            ps.setString(1, contract.getUuid().toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    InvoiceKey key = new InvoiceKey(0, rs.getInt(1), rs.getInt(2), rs.getDate(3).toLocalDate());
+                    long lines = rs.getLong(4);
+                    delta.add(key, 0, 0, lines * subtotalCents, lines * taxCents);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the keys of an invoice the summary rows are grouped by.
+     *
+     * @throws SQLException if there is no such invoice
+     */
+    static InvoiceKey invoiceKey(StatementSession session, UUID invoiceUuid) throws SQLException {
+        PreparedStatement ps = session.prepare(INVOICE_KEY_SQL);
+        ps.setString(1, invoiceUuid.toString());
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("Invoice UUID not found");
+            }
+            return new InvoiceKey(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getDate(4).toLocalDate());
+        }
+    }
+
+    /**
+     * The surrogate keys and date of an invoice.
+     */
+    static class InvoiceKey {
+        final int invoiceId;
+        final int companyId;
+        final int personId;
+        final LocalDate date;
+
+        InvoiceKey(int invoiceId, int companyId, int personId, LocalDate date) {
+            this.invoiceId = invoiceId;
+            this.companyId = companyId;
+            this.personId = personId;
+            this.date = date;
+        }
+    }
+
+    /**
+     * Changes to the summary tables, accumulated in memory and applied as one
+     * upsert per affected row.
+     */
+    static class Delta {
+        // invoice_count, item_count, subtotal_cents, tax_cents
+        private final Map<Integer, long[]> companies = new HashMap<>();
+        private final Map<Integer, long[]> salespersons = new HashMap<>();
+        private final Map<LocalDate, long[]> days = new HashMap<>();
+
+        void invoice(InvoiceKey key) {
+            add(key, 1, 0, 0, 0);
+        }
+
+        void item(InvoiceKey key, InvoiceItem item) {
+            add(key, 0, 1, PricedInvoice.toCents(item.getSubtotal()), PricedInvoice.toCents(item.getTax()));
+        }
+
+        boolean isEmpty() {
+            return days.isEmpty();
+        }
+
+        /**
+         * Applies the changes with statements prepared on the given connection.
+         */
+        void apply(Connection conn) throws SQLException {
+            try (PreparedStatement company = conn.prepareStatement(COMPANY_UPSERT_SQL);
+                 PreparedStatement salesperson = conn.prepareStatement(SALESPERSON_UPSERT_SQL);
+                 PreparedStatement daily = conn.prepareStatement(DAILY_UPSERT_SQL)) {
+                apply(company, salesperson, daily, true);
+            }
+        }
+
+        /**
+         * Applies the changes with the session's statements.
+         */
+        void apply(StatementSession session) throws SQLException {
+            apply(session.prepare(COMPANY_UPSERT_SQL), session.prepare(SALESPERSON_UPSERT_SQL),
+                    session.prepare(DAILY_UPSERT_SQL), false);
+        }
+
+        private void apply(PreparedStatement company, PreparedStatement salesperson, PreparedStatement daily,
+                           boolean batch) throws SQLException {
+            for (Map.Entry<Integer, long[]> row : companies.entrySet()) {
+                company.setInt(1, row.getKey());
+                execute(company, row.getValue(), batch);
+            }
+            for (Map.Entry<Integer, long[]> row : salespersons.entrySet()) {
+                salesperson.setInt(1, row.getKey());
+                execute(salesperson, row.getValue(), batch);
+            }
+            for (Map.Entry<LocalDate, long[]> row : days.entrySet()) {
+                daily.setDate(1, Date.valueOf(row.getKey()));
+                execute(daily, row.getValue(), batch);
+            }
+            if (batch) {
+                company.executeBatch();
+                salesperson.executeBatch();
+                daily.executeBatch();
+            }
+        }
+
+        private static void execute(PreparedStatement ps, long[] totals, boolean batch) throws SQLException {
+            ps.setInt(2, (int) totals[0]);
+            ps.setInt(3, (int) totals[1]);
+            ps.setLong(4, totals[2]);
+            ps.setLong(5, totals[3]);
+            if (batch) {
+                ps.addBatch();
+            } else {
+                ps.executeUpdate();
+            }
+        }
+
+        private void add(InvoiceKey key, long invoices, long items, long subtotalCents, long taxCents) {
+            add(companies.computeIfAbsent(key.companyId, k -> new long[4]), invoices, items, subtotalCents, taxCents);
+            add(salespersons.computeIfAbsent(key.personId, k -> new long[4]), invoices, items, subtotalCents, taxCents);
+            add(days.computeIfAbsent(key.date, k -> new long[4]), invoices, items, subtotalCents, taxCents);
+        }
+
+        private static void add(long[] totals, long invoices, long items, long subtotalCents, long taxCents) {
+            totals[0] += invoices;
+            totals[1] += items;
+            totals[2] += subtotalCents;
+            totals[3] += taxCents;
+        }
+    }
+}
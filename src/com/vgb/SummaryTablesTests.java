@@ -0,0 +1,106 @@
+package com.vgb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Checks that the summary tables kept by each write path match both a
+ * rebuild and pricing the invoices read back. Runs only against the
+ * embedded H2 backend (<code>-Dvgb.db.backend=h2</code>), since it replaces
+ * the data in the database.
+ */
+public class SummaryTablesTests {
+
+    private static final LocalDate ALL_FROM = LocalDate.of(1900, 1, 1);
+    private static final LocalDate ALL_TO = LocalDate.of(2999, 12, 31);
+
+    @Test
+    public void testEveryWritePathMatchesRebuildAndLivePricing() {
+        assumeTrue(ConnectionFactory.getBackend() == DatabaseBackend.H2, "needs the H2 backend");
+        InvoiceRepository csv = new CSVInvoiceRepository("data");
+        Map<UUID, Person> persons = csv.readPersons();
+        Map<UUID, Company> companies = csv.readCompanies(persons);
+        Map<UUID, Item> items = csv.readItems(companies);
+        Map<UUID, Invoice> invoices = csv.readInvoices(persons, companies, items);
+        InvoiceData.truncateDatabase();
+        assertTrue(BulkLoader.load(persons, companies, items, invoices));
+        assertConsistent("BulkLoader");
+
+        List<UUID> invoiceIds = new ArrayList<>(invoices.keySet());
+        UUID contract = null;
+        UUID material = null;
+        for (Item item : items.values()) {
+            if (item instanceof Contract && contract == null) {
+                contract = item.getUuid();
+            } else if (item instanceof Material && material == null) {
+                material = item.getUuid();
+            }
+        }
+
+        // A new fee reprices the contract's earlier line items
+        InvoiceData.addContractToInvoice(invoiceIds.get(0), contract, 1234.56);
+        InvoiceData.addContractToInvoice(invoiceIds.get(1), contract, 99.99);
+        InvoiceData.addMaterialToInvoice(invoiceIds.get(2), material, 7);
+        assertConsistent("InvoiceData");
+
+        try (InvoiceItemIngester ingester = new InvoiceItemIngester(100)) {
+            ingester.addContract(invoiceIds.get(2), contract, 500.01);
+            ingester.addMaterial(invoiceIds.get(0), material, 3);
+            ingester.addContract(invoiceIds.get(1), contract, 42.42);
+            assertTrue(ingester.flush());
+        }
+        assertConsistent("InvoiceItemIngester");
+    }
+
+    /**
+     * Asserts the company totals equal those of the invoices priced as read
+     * back, and that a rebuild leaves all three tables unchanged.
+     */
+    private static void assertConsistent(String writer) {
+        Map<UUID, String> companyTotals = format(DBReaderUtil.readCompanyTotals());
+        Map<UUID, String> salespersonTotals = format(DBReaderUtil.readSalespersonTotals());
+        String dailyTotals = format(DBReaderUtil.readDailyTotals(ALL_FROM, ALL_TO)).toString();
+
+        InvoiceRepository db = new JdbcInvoiceRepository();
+        Map<UUID, Person> persons = db.readPersons();
+        Map<UUID, Company> companies = db.readCompanies(persons);
+        Map<UUID, Invoice> invoices = db.readInvoices(persons, companies, db.readItems(companies));
+        Map<UUID, long[]> live = new TreeMap<>();
+        for (Invoice invoice : invoices.values()) {
+            PricedInvoice priced = PricedInvoice.of(invoice);
+            long[] totals = live.computeIfAbsent(invoice.getCompany().getUuid(), k -> new long[4]);
+            totals[0]++;
+            totals[1] += priced.getItemCount();
+            totals[2] += priced.getSubtotalCents();
+            totals[3] += priced.getTaxCents();
+        }
+        Map<UUID, String> expected = new TreeMap<>();
+        live.forEach((company, t) -> expected.put(company, format(new InvoiceTotals((int) t[0], (int) t[1], t[2], t[3]))));
+        assertEquals(expected, companyTotals, writer + " vs live pricing");
+
+        SummaryTables.rebuild();
+        assertEquals(companyTotals, format(DBReaderUtil.readCompanyTotals()), writer + " vs rebuild");
+        assertEquals(salespersonTotals, format(DBReaderUtil.readSalespersonTotals()), writer + " vs rebuild");
+        assertEquals(dailyTotals, format(DBReaderUtil.readDailyTotals(ALL_FROM, ALL_TO)).toString(), writer + " vs rebuild");
+    }
+
+    private static <K> Map<K, String> format(Map<K, InvoiceTotals> totals) {
+        Map<K, String> formatted = new TreeMap<>();
+        totals.forEach((key, t) -> formatted.put(key, format(t)));
+        return formatted;
+    }
+
+    private static String format(InvoiceTotals t) {
+        return t.getInvoiceCount() + " invoices, " + t.getItemCount() + " items, "
+                + t.getSubtotalCents() + " + " + t.getTaxCents();
+    }
+}
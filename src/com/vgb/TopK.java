@@ -0,0 +1,70 @@
+package com.vgb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first <code>k</code> elements, by a comparator, of everything
+ * offered to it, without sorting the whole input.
+ *
+ * Elements are held in a heap of at most <code>k</code> entries whose head is
+ * the worst one kept, so each offer is O(log k) and memory is O(k).
+ */
+public class TopK<E> {
+    private final int k;
+    private final Comparator<? super E> comparator;
+    private final PriorityQueue<E> heap;
+
+    /**
+     * @param k          how many elements to keep
+     * @param comparator ordering in which the first elements are the ones wanted
+     */
+    public TopK(int k, Comparator<? super E> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.comparator = comparator;
+        // Grows with what is offered, so a k larger than the input costs nothing
+        this.heap = new PriorityQueue<>(comparator.reversed());
+    }
+
+    /**
+     * Returns the first <code>k</code> elements of the input in comparator order.
+     */
+    public static <E> List<E> of(Iterable<? extends E> elements, int k, Comparator<? super E> comparator) {
+        TopK<E> top = new TopK<>(k, comparator);
+        for (E element : elements) {
+            top.offer(element);
+        }
+        return top.toList();
+    }
+
+    /**
+     * Offers an element, keeping it only if it ranks among the first k so far.
+     */
+    public void offer(E element) {
+        if (heap.size() < k) {
+            heap.add(element);
+        } else if (k > 0 && comparator.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Returns the kept elements in comparator order.
+     */
+    public List<E> toList() {
+        List<E> result = new ArrayList<>(heap);
+        Collections.sort(result, comparator);
+        return result;
+    }
+}